@@ -1,6 +1,8 @@
 plugins {
     id("java")
+    id("java-test-fixtures")
     id("application")
+    id("maven-publish")
 }
 
 group = "com.takeico"
@@ -14,6 +16,15 @@ repositories {
     mavenCentral()
 }
 
+// JMH benchmarks live in their own source set, see src/jmh; they share the generator of synthetic
+// JAR files in src/testFixtures with the tests
+val jmh: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output + sourceSets.testFixtures.get().output
+    runtimeClasspath += sourceSets.main.get().output + sourceSets.testFixtures.get().output
+}
+
+configurations[jmh.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+
 dependencies {
     testImplementation(platform("org.junit:junit-bom:5.10.0"))
     testImplementation("org.junit.jupiter:junit-jupiter")
@@ -21,12 +32,34 @@ dependencies {
     // ASM dependencies for class file analysis
     implementation("org.ow2.asm:asm:9.5")
     implementation("org.ow2.asm:asm-commons:9.5")
+    testFixturesImplementation("org.ow2.asm:asm:9.5")
+
+    // JMH for the benchmarks
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.37")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
 }
 
 tasks.test {
     useJUnitPlatform()
 }
 
+// Runs the benchmarks with the GC profiler. JMH options can be given with -PjmhArgs, e.g.
+// ./gradlew jmh -PjmhArgs="-p jar=10000 -p threads=8 collect"
+tasks.register<JavaExec>("jmh") {
+    description = "Runs the JMH benchmarks."
+    group = "verification"
+    classpath = jmh.runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+
+    // The realistic fixture is the ASM library the inspector itself is built with;
+    // the forked benchmark JVMs inherit the system property
+    val fixture = configurations.runtimeClasspath.get().filter { Regex("asm-[0-9].*\\.jar").matches(it.name) }
+    jvmArgumentProviders.add(CommandLineArgumentProvider { listOf("-Dinspector.fixture=" + fixture.singleFile) })
+
+    args("-prof", "gc")
+    (project.findProperty("jmhArgs") as String?)?.let { args(it.split(" ").filter(String::isNotEmpty)) }
+}
+
 tasks.jar {
     manifest {
         attributes["Main-Class"] = "com.takeico.inspector.Main"
@@ -37,3 +70,17 @@ tasks.jar {
 
     duplicatesStrategy = DuplicatesStrategy.EXCLUDE
 }
+
+// The Gradle plugin in gradle-plugin runs the published JAR file, see ./gradlew publishToMavenLocal
+publishing {
+    // The test fixtures are not part of the published library
+    val javaComponent = components["java"] as AdhocComponentWithVariants
+    javaComponent.withVariantsFromConfiguration(configurations.testFixturesApiElements.get()) { skip() }
+    javaComponent.withVariantsFromConfiguration(configurations.testFixturesRuntimeElements.get()) { skip() }
+
+    publications {
+        create<MavenPublication>("maven") {
+            from(components["java"])
+        }
+    }
+}
@@ -0,0 +1,49 @@
+plugins {
+    id("java-gradle-plugin")
+    id("maven-publish")
+}
+
+group = "com.takeico"
+version = "1.0-SNAPSHOT"
+
+repositories {
+    mavenCentral()
+}
+
+// The JAR file of the inspector, with its dependencies, that the functional tests run
+val inspectorJar: Configuration by configurations.creating {
+    isCanBeConsumed = false
+    isTransitive = false
+}
+
+dependencies {
+    // The inspector runs in isolated worker class loaders, so the plugin only compiles against it
+    compileOnly(project(":"))
+    inspectorJar(project(":"))
+
+    testImplementation(platform("org.junit:junit-bom:5.10.0"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+}
+
+// The functional tests run the plugin through Gradle TestKit, which java-gradle-plugin adds to the tests
+tasks.test {
+    useJUnitPlatform()
+    inputs.files(inspectorJar).withPropertyName("inspectorJar").withNormalizer(ClasspathNormalizer::class)
+    jvmArgumentProviders.add(CommandLineArgumentProvider { listOf("-Dinspector.jar=" + inspectorJar.singleFile) })
+}
+
+gradlePlugin {
+    plugins {
+        create("classInspector") {
+            id = "com.takeico.class-inspector"
+            implementationClass = "com.takeico.inspector.gradle.ClassInspectorPlugin"
+        }
+    }
+}
+
+tasks.jar {
+    manifest {
+        // The version of the inspector the plugin runs by default
+        attributes["Implementation-Version"] = project.version
+    }
+}
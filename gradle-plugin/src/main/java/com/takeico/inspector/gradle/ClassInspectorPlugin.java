@@ -0,0 +1,62 @@
+package com.takeico.inspector.gradle;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.Plugin;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.tasks.TaskProvider;
+
+/**
+ * Adds the {@code inspectClasses} task, which inspects the JAR file of a Java project, or any JAR
+ * files added to {@link InspectClasses#getJars()}, and the {@code classInspector} configuration
+ * holding the inspector it runs. The configuration defaults to the inspector of the plugin's version.
+ * <pre>
+ * plugins {
+ *     id("com.takeico.class-inspector")
+ * }
+ *
+ * tasks.inspectClasses {
+ *     jars.from(configurations.runtimeClasspath)
+ *     format.set("jsonl")
+ * }
+ * </pre>
+ */
+public class ClassInspectorPlugin implements Plugin<Project> {
+    public static final String TASK_NAME = "inspectClasses";
+    public static final String CONFIGURATION_NAME = "classInspector";
+
+    @Override
+    public void apply(Project project) {
+        Configuration inspector = project.getConfigurations().create(CONFIGURATION_NAME, configuration -> {
+            configuration.setDescription("The class inspector run by the " + TASK_NAME + " task.");
+            configuration.setCanBeConsumed(false);
+            configuration.defaultDependencies(dependencies -> dependencies.add(
+                    project.getDependencies().create("com.takeico:class_inspector:" + getInspectorVersion())));
+        });
+
+        TaskProvider<InspectClasses> task = project.getTasks().register(TASK_NAME, InspectClasses.class, t -> {
+            t.setGroup("verification");
+            t.setDescription("Reports the unreferenced classes, methods, and fields of JAR files.");
+            t.getInspectorClasspath().from(inspector);
+            t.getFormat().convention("text");
+            t.getUnusedOnly().convention(false);
+            t.getThreads().convention(1);
+            t.getOutputDirectory().convention(project.getLayout().getBuildDirectory().dir("reports/class-inspector"));
+        });
+
+        project.getPluginManager().withPlugin("java", plugin ->
+                task.configure(t -> t.getJars().from(project.getTasks().named("jar"))));
+    }
+
+    /**
+     * Returns the version of the inspector the plugin was built with.
+     */
+    private static String getInspectorVersion() {
+        String version = ClassInspectorPlugin.class.getPackage().getImplementationVersion();
+        if (version == null) {
+            throw new GradleException("The version of the class inspector is unknown; add it to the "
+                    + CONFIGURATION_NAME + " configuration");
+        }
+        return version;
+    }
+}
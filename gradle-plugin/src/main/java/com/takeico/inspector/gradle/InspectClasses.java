@@ -0,0 +1,142 @@
+package com.takeico.inspector.gradle;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.file.FileType;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.work.ChangeType;
+import org.gradle.work.FileChange;
+import org.gradle.work.Incremental;
+import org.gradle.work.InputChanges;
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutor;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inspects JAR files and writes the report of each of them to the output directory, named after
+ * the JAR file, e.g. {@code app.jar.txt}. The JAR files are inspected in parallel by Gradle workers,
+ * each in a class loader holding only the inspector, so its dependencies can't clash with those of the
+ * build, and without forking a JVM per run.
+ *
+ * The reports depend only on the contents and file names of the JAR files and on the options, so
+ * they can be taken from the build cache, also on another machine. When only some JAR files change,
+ * only those are inspected again, and the reports of removed JAR files are deleted.
+ */
+@CacheableTask
+public abstract class InspectClasses extends DefaultTask {
+    private static final Map<String, String> EXTENSIONS = new HashMap<>();
+
+    static {
+        EXTENSIONS.put("text", ".txt");
+        EXTENSIONS.put("jsonl", ".jsonl");
+        EXTENSIONS.put("json", ".json");
+        EXTENSIONS.put("binary", ".bin");
+    }
+
+    /**
+     * The JAR files to inspect, each with the archives nested in it. Directories are ignored.
+     */
+    @InputFiles
+    @Incremental
+    @PathSensitive(PathSensitivity.NAME_ONLY)
+    public abstract ConfigurableFileCollection getJars();
+
+    /**
+     * The inspector and its dependencies.
+     */
+    @Classpath
+    public abstract ConfigurableFileCollection getInspectorClasspath();
+
+    /**
+     * The format of the reports: text, jsonl, json, or binary.
+     */
+    @Input
+    public abstract Property<String> getFormat();
+
+    /**
+     * The packages to report, with their subpackages; all packages if empty.
+     */
+    @Input
+    public abstract ListProperty<String> getPackages();
+
+    /**
+     * Whether to report only the unreferenced members.
+     */
+    @Input
+    public abstract Property<Boolean> getUnusedOnly();
+
+    /**
+     * The number of threads to inspect each JAR file with; the JAR files themselves are inspected
+     * by as many workers as Gradle runs at a time.
+     */
+    @Internal
+    public abstract Property<Integer> getThreads();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDirectory();
+
+    @Inject
+    protected abstract WorkerExecutor getWorkerExecutor();
+
+    @Inject
+    protected abstract FileSystemOperations getFileSystemOperations();
+
+    @TaskAction
+    public void inspect(InputChanges inputChanges) {
+        String format = getFormat().get();
+        String extension = EXTENSIONS.get(format);
+        if (extension == null) {
+            throw new GradleException("Unknown format: " + format + " (expected one of text, jsonl, json, binary)");
+        }
+        Set<String> names = new HashSet<>();
+        for (File jar : getJars()) {
+            if (jar.isFile() && !names.add(jar.getName())) {
+                throw new GradleException("Several JAR files are named " + jar.getName()
+                        + ", so their reports would overwrite each other");
+            }
+        }
+        if (!inputChanges.isIncremental()) {
+            getFileSystemOperations().delete(spec -> spec.delete(getOutputDirectory().get().getAsFileTree()));
+        }
+
+        WorkQueue queue = getWorkerExecutor().classLoaderIsolation(spec ->
+                spec.getClasspath().from(getInspectorClasspath()));
+        for (FileChange change : inputChanges.getFileChanges(getJars())) {
+            if (change.getFileType() == FileType.DIRECTORY) {
+                continue;
+            }
+            File report = getOutputDirectory().file(change.getFile().getName() + extension).get().getAsFile();
+            if (change.getChangeType() == ChangeType.REMOVED) {
+                getFileSystemOperations().delete(spec -> spec.delete(report));
+                continue;
+            }
+            queue.submit(InspectJar.class, parameters -> {
+                parameters.getJar().set(change.getFile());
+                parameters.getReport().set(report);
+                parameters.getFormat().set(format);
+                parameters.getPackages().set(getPackages());
+                parameters.getUnusedOnly().set(getUnusedOnly());
+                parameters.getThreads().set(getThreads());
+            });
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.takeico.inspector.gradle;
+
+import com.takeico.inspector.Inspector;
+import com.takeico.inspector.Query;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+
+/**
+ * Inspects one JAR file in a worker and writes its report. Runs in the isolated class loader of
+ * the inspector, so it is the only class of the plugin that refers to the inspector.
+ */
+public abstract class InspectJar implements WorkAction<InspectJar.Parameters> {
+
+    public interface Parameters extends WorkParameters {
+        RegularFileProperty getJar();
+
+        RegularFileProperty getReport();
+
+        Property<String> getFormat();
+
+        ListProperty<String> getPackages();
+
+        Property<Boolean> getUnusedOnly();
+
+        Property<Integer> getThreads();
+    }
+
+    @Override
+    public void execute() {
+        Parameters parameters = getParameters();
+        Query query = Query.all();
+        for (String packageName : parameters.getPackages().get()) {
+            query = query.inPackage(packageName);
+        }
+        if (parameters.getUnusedOnly().get()) {
+            query = query.unreferencedOnly();
+        }
+
+        File jar = parameters.getJar().get().getAsFile();
+        File report = parameters.getReport().get().getAsFile();
+        try {
+            Inspector.writeReport(jar.toPath(), query, parameters.getFormat().get(),
+                    Files.newOutputStream(report.toPath()), parameters.getThreads().get());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot inspect " + jar + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.takeico.inspector.gradle;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the {@code inspectClasses} task in generated builds through Gradle TestKit. The builds only
+ * use local files, so the tests run offline; the inspector is the JAR file of the root project,
+ * given by the {@code inspector.jar} system property.
+ */
+class ClassInspectorPluginFunctionalTest {
+    private static final String TASK = ":" + ClassInspectorPlugin.TASK_NAME;
+    private static final FileTime LONG_AGO = FileTime.fromMillis(946684800000L);  // 2000-01-01
+
+    @TempDir
+    Path projectDir;
+
+    private Path reports;
+
+    @BeforeEach
+    void writeSettings() throws IOException {
+        write("settings.gradle.kts",
+                "rootProject.name = \"fixture\"\n"
+                        + "buildCache {\n"
+                        + "    local {\n"
+                        + "        directory = file(\"build-cache\")\n"
+                        + "    }\n"
+                        + "}\n");
+        reports = projectDir.resolve("build/reports/class-inspector");
+    }
+
+    @Test
+    void inspectsJarsInIsolatedWorkersAndRestoresReportsFromTheBuildCache() throws IOException {
+        // The plugin classpath of TestKit holds only the plugin, so a report shows that the worker
+        // loaded InspectJar next to the inspector in its own class loader
+        assertNull(getClass().getClassLoader().getResource("com/takeico/inspector/Inspector.class"));
+        writeBuild("fileTree(\"libs\")");
+        writeJar("libs/a.jar", "Alpha");
+        writeJar("libs/b.jar", "Beta");
+
+        assertEquals(TaskOutcome.SUCCESS, run("--build-cache").task(TASK).getOutcome());
+        String report = read(reports.resolve("a.jar.txt"));
+        assertTrue(report.startsWith("Inspecting classes in a.jar:"), report);
+        assertTrue(report.contains("Class: fixture.Alpha"), report);
+        assertTrue(read(reports.resolve("b.jar.txt")).contains("Class: fixture.Beta"));
+
+        assertEquals(TaskOutcome.UP_TO_DATE, run("--build-cache").task(TASK).getOutcome());
+
+        deleteReports();
+        assertEquals(TaskOutcome.FROM_CACHE, run("--build-cache").task(TASK).getOutcome());
+        assertEquals(report, read(reports.resolve("a.jar.txt")));
+        assertTrue(Files.exists(reports.resolve("b.jar.txt")));
+    }
+
+    @Test
+    void inspectsOnlyChangedJarsAgain() throws IOException {
+        writeBuild("fileTree(\"libs\")");
+        writeJar("libs/a.jar", "Alpha");
+        writeJar("libs/b.jar", "Beta");
+        assertEquals(TaskOutcome.SUCCESS, run().task(TASK).getOutcome());
+
+        // A report that is written again gets a new modification time
+        Files.setLastModifiedTime(reports.resolve("a.jar.txt"), LONG_AGO);
+        writeJar("libs/b.jar", "Gamma");
+        assertEquals(TaskOutcome.SUCCESS, run().task(TASK).getOutcome());
+
+        assertEquals(LONG_AGO, Files.getLastModifiedTime(reports.resolve("a.jar.txt")));
+        String report = read(reports.resolve("b.jar.txt"));
+        assertTrue(report.contains("Class: fixture.Gamma"), report);
+        assertFalse(report.contains("Class: fixture.Beta"), report);
+    }
+
+    @Test
+    void deletesTheReportsOfRemovedJars() throws IOException {
+        writeBuild("fileTree(\"libs\")");
+        writeJar("libs/a.jar", "Alpha");
+        writeJar("libs/b.jar", "Beta");
+        run();
+        assertTrue(Files.exists(reports.resolve("b.jar.txt")));
+
+        Files.delete(projectDir.resolve("libs/b.jar"));
+        assertEquals(TaskOutcome.SUCCESS, run().task(TASK).getOutcome());
+        assertFalse(Files.exists(reports.resolve("b.jar.txt")));
+        assertTrue(Files.exists(reports.resolve("a.jar.txt")));
+    }
+
+    @Test
+    void failsOnJarsWithTheSameName() throws IOException {
+        writeBuild("fileTree(\"libs\"), fileTree(\"other\")");
+        writeJar("libs/a.jar", "Alpha");
+        writeJar("other/a.jar", "Beta");
+
+        BuildResult result = runner().buildAndFail();
+        assertTrue(result.getOutput().contains("Several JAR files are named a.jar"), result.getOutput());
+    }
+
+    @Test
+    void failsWithoutAnInspectorWhenItsVersionIsUnknown() throws IOException {
+        // Run from class directories, as by TestKit, the plugin has no version to default to
+        write("build.gradle.kts",
+                "plugins {\n"
+                        + "    id(\"com.takeico.class-inspector\")\n"
+                        + "}\n"
+                        + "\n"
+                        + "tasks.inspectClasses {\n"
+                        + "    jars.from(fileTree(\"libs\"))\n"
+                        + "}\n");
+        writeJar("libs/a.jar", "Alpha");
+
+        BuildResult result = runner().buildAndFail();
+        assertTrue(result.getOutput().contains("The version of the class inspector is unknown; add it to the "
+                + ClassInspectorPlugin.CONFIGURATION_NAME + " configuration"), result.getOutput());
+    }
+
+    private BuildResult run(String... options) {
+        return runner(options).build();
+    }
+
+    private GradleRunner runner(String... options) {
+        String[] arguments = new String[options.length + 1];
+        arguments[0] = ClassInspectorPlugin.TASK_NAME;
+        System.arraycopy(options, 0, arguments, 1, options.length);
+        return GradleRunner.create()
+                .withProjectDir(projectDir.toFile())
+                .withPluginClasspath()
+                .withArguments(arguments);
+    }
+
+    /**
+     * Writes a build applying the plugin to the given JAR files, run by the inspector under test.
+     */
+    private void writeBuild(String jars) throws IOException {
+        String inspectorJar = System.getProperty("inspector.jar");
+        assertNotNull(inspectorJar, "inspector.jar");
+        write("build.gradle.kts",
+                "plugins {\n"
+                        + "    id(\"com.takeico.class-inspector\")\n"
+                        + "}\n"
+                        + "\n"
+                        + "dependencies {\n"
+                        + "    classInspector(files(\"" + inspectorJar.replace('\\', '/') + "\"))\n"
+                        + "}\n"
+                        + "\n"
+                        + "tasks.inspectClasses {\n"
+                        + "    jars.from(" + jars + ")\n"
+                        + "}\n");
+    }
+
+    /**
+     * Writes a JAR file with the class {@code fixture.<simpleName>}, compiled from a small source file.
+     */
+    private void writeJar(String path, String simpleName) throws IOException {
+        Path sources = Files.createTempDirectory(projectDir, "sources");
+        Path source = sources.resolve(simpleName + ".java");
+        Files.write(source, ("package fixture;\n"
+                + "\n"
+                + "public class " + simpleName + " {\n"
+                + "    private int count;\n"
+                + "\n"
+                + "    public int next() {\n"
+                + "        return ++count;\n"
+                + "    }\n"
+                + "}\n").getBytes(StandardCharsets.UTF_8));
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertEquals(0, compiler.run(null, null, null, "-d", sources.toString(), source.toString()));
+
+        Path jar = projectDir.resolve(path);
+        Files.createDirectories(jar.getParent());
+        try (OutputStream out = Files.newOutputStream(jar);
+             JarOutputStream jarOut = new JarOutputStream(out)) {
+            jarOut.putNextEntry(new JarEntry("fixture/" + simpleName + ".class"));
+            jarOut.write(Files.readAllBytes(sources.resolve("fixture/" + simpleName + ".class")));
+            jarOut.closeEntry();
+        }
+    }
+
+    private void deleteReports() throws IOException {
+        try (Stream<Path> files = Files.list(reports)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private void write(String path, String content) throws IOException {
+        Path file = projectDir.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+}
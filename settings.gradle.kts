@@ -1 +1,3 @@
-rootProject.name = "class_inspector"
\ No newline at end of file
+rootProject.name = "class_inspector"
+
+include("gradle-plugin")
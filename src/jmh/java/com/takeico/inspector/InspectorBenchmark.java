@@ -0,0 +1,162 @@
+package com.takeico.inspector;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the three phases of the inspector, each on its own, and of the whole run of one JAR file:
+ * Step 1 reads and parses the class files, Step 2 resolves the references, and Step 3 writes the report.
+ *
+ * The {@code jar} parameter is the number of classes of a generated {@link SyntheticJar}, or
+ * {@code fixture} for the real JAR file given by the {@code inspector.fixture} system property
+ * (the Gradle task passes the ASM library the inspector is built with). Besides the invocation
+ * throughput, each benchmark reports the number of classes processed per second as the
+ * {@code classes} counter; run with {@code -prof gc} to see the allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class InspectorBenchmark {
+
+    /**
+     * Counts the classes processed by an invocation, so that JMH reports classes per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long classes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            classes = 0;
+        }
+    }
+
+    @Param({"1000", "10000", "100000", "fixture"})
+    public String jar;
+
+    @Param({"1"})
+    public int threads;
+
+    private Path jarPath;
+    private boolean generated;
+    private ScanExecutor executor;
+    private JarArchive archive;
+    private List<JarArchive> sources;
+    private int[] offsets;
+    private ClassInfo[] collected;
+    private Analysis analysis;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if (jar.equals("fixture")) {
+            String fixture = System.getProperty("inspector.fixture");
+            if (fixture == null) {
+                throw new IllegalStateException("The inspector.fixture system property is not set");
+            }
+            jarPath = Paths.get(fixture);
+        } else {
+            jarPath = Files.createTempFile("inspector-benchmark-" + jar + "-", ".jar");
+            generated = true;
+            SyntheticJar.generate(jarPath, Integer.parseInt(jar));
+        }
+
+        executor = new ScanExecutor(threads);
+        archive = JarArchive.open(jarPath);
+        sources = Collections.singletonList(archive);
+        offsets = Analyzer.entryOffsets(sources);
+        analysis = new Analyzer(executor).analyze(sources);
+        collected = analysis.getArtifacts().get(0).classes;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        archive.close();
+        executor.close();
+        if (generated) {
+            Files.deleteIfExists(jarPath);
+        }
+    }
+
+    /**
+     * Step 1: reads and parses every class file, collecting the classes and their raw references.
+     */
+    @Benchmark
+    public void collect(Counters counters, Blackhole blackhole) {
+        SymbolTable symbols = new SymbolTable();
+        List<JarArchive.Entry> entries = archive.getClassEntries();
+        ClassInfo[] classes = new ClassInfo[entries.size()];
+        boolean[] failed = new boolean[1];
+        executor.forEach(classes.length,
+                i -> classes[i] = Analyzer.collect(symbols, archive, entries.get(i), 0, failed));
+        blackhole.consume(classes);
+        counters.classes += classes.length;
+    }
+
+    /**
+     * Step 2: registers the collected classes in a new class table and resolves their references.
+     */
+    @Benchmark
+    public void resolve(Counters counters, Blackhole blackhole) {
+        for (ClassInfo classInfo : collected) {
+            if (classInfo != null) {
+                classInfo.clearReferrers();
+            }
+        }
+        ClassTable classTable = new ClassTable(analysis.getClassTable().getSymbols());
+        blackhole.consume(new Analyzer(executor).link(classTable, sources, offsets, collected));
+        counters.classes += collected.length;
+    }
+
+    /**
+     * Step 3: writes the text report of the analyzed JAR file.
+     */
+    @Benchmark
+    public void report(Counters counters) throws IOException {
+        try (ReportWriter report = newReportWriter()) {
+            Main.writeArtifactReport(analysis, analysis.getArtifacts().get(0), false, Query.all(), report);
+        }
+        counters.classes += collected.length;
+    }
+
+    /**
+     * All steps for one JAR file, as run by the command line.
+     */
+    @Benchmark
+    public void endToEnd(Counters counters) throws IOException {
+        try (ReportWriter report = newReportWriter()) {
+            Main.listClassesInJar(jarPath.toString(), executor, null, null, null, null, Query.all(), report);
+        }
+        counters.classes += collected.length;
+    }
+
+    private static ReportWriter newReportWriter() {
+        return new TextReportWriter(new BufferedWriter(Writer.nullWriter(), 1 << 16));
+    }
+}
@@ -0,0 +1,26 @@
+package com.takeico.inspector;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of analyzing one or more artifacts as a single universe: the shared class table
+ * with the resolved references, and the artifacts with the classes read from each of them.
+ */
+class Analysis {
+    private final ClassTable classTable;
+    private final List<Artifact> artifacts;
+
+    Analysis(ClassTable classTable, List<Artifact> artifacts) {
+        this.classTable = classTable;
+        this.artifacts = Collections.unmodifiableList(artifacts);
+    }
+
+    public ClassTable getClassTable() {
+        return classTable;
+    }
+
+    public List<Artifact> getArtifacts() {
+        return artifacts;
+    }
+}
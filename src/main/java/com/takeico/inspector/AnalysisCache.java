@@ -0,0 +1,393 @@
+package com.takeico.inspector;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A persistent cache of the Step 1 results of JAR files: the collected classes with their
+ * members and their raw outgoing references. Unchanged JAR files are loaded from the cache
+ * instead of being parsed again; references are still resolved against the current class table.
+ *
+ * Entries are keyed by the fingerprint of the JAR's central directory, which covers the
+ * CRC-32 of every entry, so a changed JAR file simply gets a new key. The format version is part
+ * of the file name, so entries written by another version of the format are never read, and
+ * unreadable entries are deleted and treated as misses. Entries are written to a temporary file
+ * and moved into place, so concurrent runs sharing a cache directory never see partial files.
+ * When the cache grows beyond its size limit, the least recently used entries are evicted.
+ *
+ * The format is a string pool of all symbols used by the artifact, followed by the classes in
+ * entry order with their symbols given as indexes into the pool.
+ */
+class AnalysisCache {
+    private static final int MAGIC = 0x43494341;  // "CICA"
+    private static final int VERSION = 4;
+    private static final String SUFFIX = ".cache";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final long STALE_TEMP_FILE_AGE_MILLIS = 24L * 60 * 60 * 1000;
+
+    private final Path directory;
+    private final long maxSize;
+
+    /**
+     * Opens the cache and evicts old entries if the cache is larger than the given size.
+     *
+     * @param directory The cache directory; it is created if necessary
+     * @param maxSize   The maximum total size of the cache files in bytes
+     */
+    public AnalysisCache(Path directory, long maxSize) throws IOException {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        Files.createDirectories(directory);
+        evict();
+    }
+
+    /**
+     * Loads the classes of the given JAR file from the cache.
+     *
+     * @param jar           The JAR file
+     * @param symbols       The symbol table to intern the loaded symbols into
+     * @param artifactIndex The index of the JAR file in the analysis
+     * @return The classes in entry order, null where the class file couldn't be read;
+     *         or null if the JAR file is not in the cache
+     */
+    public ClassInfo[] load(JarArchive jar, SymbolTable symbols, int artifactIndex) {
+        Path file = fileFor(jar);
+        if (!Files.isRegularFile(file)) {
+            Metrics.add(Metrics.Counter.CACHE_MISSES, 1);
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ClassInfo[] classes = read(buffer, symbols, artifactIndex);
+            if (classes.length != jar.getClassEntries().size()) {
+                throw new IOException("entry count mismatch");
+            }
+            // Mark the entry as recently used for the eviction
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            Metrics.add(Metrics.Counter.CACHE_HITS, 1);
+            return classes;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Warning: Ignoring unreadable cache entry " + file + ": " + e);
+            Metrics.add(Metrics.Counter.CACHE_MISSES, 1);
+            delete(file);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the classes of the given JAR file in the cache. Old entries are not evicted, so that
+     * several JAR files can be stored in parallel; call {@link #evict()} once they are all stored.
+     *
+     * @param jar     The JAR file
+     * @param classes The classes in entry order, as collected by Step 1
+     * @param symbols The symbol table of the classes
+     */
+    public void store(JarArchive jar, ClassInfo[] classes, SymbolTable symbols) {
+        Path file = fileFor(jar);
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(directory, file.getFileName().toString(), TEMP_SUFFIX);
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                write(new DataOutputStream(new BufferedOutputStream(out, 1 << 16)), classes, symbols);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+        } catch (IOException e) {
+            System.err.println("Warning: Failed to write cache entry " + file + ": " + e.getMessage());
+        } finally {
+            if (temp != null) {
+                delete(temp);
+            }
+        }
+    }
+
+    /**
+     * Deletes all entries of the cache.
+     */
+    public synchronized void clear() throws IOException {
+        for (Path file : listFiles()) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache fits into its size limit.
+     */
+    public synchronized void evict() {
+        try {
+            List<Path> files = new ArrayList<>();
+            Map<Path, Long> sizes = new HashMap<>();
+            Map<Path, Long> lastUsed = new HashMap<>();
+            long totalSize = 0;
+            long now = System.currentTimeMillis();
+            for (Path file : listFiles()) {
+                long modified = Files.getLastModifiedTime(file).toMillis();
+                if (file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                    // Left behind by a run that was killed while writing
+                    if (now - modified > STALE_TEMP_FILE_AGE_MILLIS) {
+                        delete(file);
+                    }
+                    continue;
+                }
+                long size = Files.size(file);
+                files.add(file);
+                sizes.put(file, size);
+                lastUsed.put(file, modified);
+                totalSize += size;
+            }
+
+            files.sort(Comparator.comparing(lastUsed::get));
+            for (Path file : files) {
+                if (totalSize <= maxSize) {
+                    break;
+                }
+                delete(file);
+                totalSize -= sizes.get(file);
+            }
+        } catch (IOException e) {
+            System.err.println("Warning: Failed to evict cache entries: " + e.getMessage());
+        }
+    }
+
+    private Path fileFor(JarArchive jar) {
+        StringBuilder name = new StringBuilder("v").append(VERSION).append('-');
+        for (byte b : jar.getFingerprint()) {
+            name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return directory.resolve(name.append(SUFFIX).toString());
+    }
+
+    private List<Path> listFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(SUFFIX) || name.endsWith(TEMP_SUFFIX)) {
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Another run may still be using it; it will be evicted later
+        }
+    }
+
+    private static void write(DataOutputStream out, ClassInfo[] classes, SymbolTable symbols) throws IOException {
+        // Number the symbols and referring methods used by this artifact
+        int[] poolIndexes = new int[symbols.size()];
+        Arrays.fill(poolIndexes, -1);
+        List<String> pool = new ArrayList<>();
+        Map<Integer, Integer> pairIndexes = new HashMap<>();
+        List<Integer> pairs = new ArrayList<>();
+        for (ClassInfo classInfo : classes) {
+            if (classInfo == null) {
+                continue;
+            }
+            addToPool(classInfo.nameId, symbols, poolIndexes, pool);
+            addToPool(classInfo.superNameId, symbols, poolIndexes, pool);
+            for (int interfaceId : classInfo.interfaceIds) {
+                addToPool(interfaceId, symbols, poolIndexes, pool);
+            }
+            addMembersToPool(classInfo.fields, symbols, poolIndexes, pool);
+            addMembersToPool(classInfo.methods, symbols, poolIndexes, pool);
+
+            int[] data = classInfo.references.data();
+            int position = 0;
+            while (position < classInfo.references.length()) {
+                int kind = data[position];
+                addToPool(data[position + 1], symbols, poolIndexes, pool);
+                if (kind != ClassReferences.CLASS) {
+                    addToPool(data[position + 2], symbols, poolIndexes, pool);
+                    addToPool(data[position + 3], symbols, poolIndexes, pool);
+                    int pairId = data[position + 4];
+                    if (!pairIndexes.containsKey(pairId)) {
+                        addToPool(symbols.getFirst(pairId), symbols, poolIndexes, pool);
+                        addToPool(symbols.getSecond(pairId), symbols, poolIndexes, pool);
+                        pairIndexes.put(pairId, pairs.size());
+                        pairs.add(pairId);
+                    }
+                }
+                position += ClassReferences.recordLength(kind);
+            }
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(pool.size());
+        for (String symbol : pool) {
+            byte[] bytes = symbol.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        out.writeInt(pairs.size());
+        for (int pairId : pairs) {
+            out.writeInt(poolIndexes[symbols.getFirst(pairId)]);
+            out.writeInt(poolIndexes[symbols.getSecond(pairId)]);
+        }
+
+        out.writeInt(classes.length);
+        for (ClassInfo classInfo : classes) {
+            out.writeBoolean(classInfo != null);
+            if (classInfo == null) {
+                continue;
+            }
+            out.writeInt(poolIndexes[classInfo.nameId]);
+            out.writeInt(classInfo.access);
+            out.writeInt(classInfo.superNameId != SymbolTable.NONE ? poolIndexes[classInfo.superNameId] : -1);
+            out.writeInt(classInfo.interfaceIds.length);
+            for (int interfaceId : classInfo.interfaceIds) {
+                out.writeInt(poolIndexes[interfaceId]);
+            }
+            writeMembers(out, classInfo.fields, poolIndexes);
+            writeMembers(out, classInfo.methods, poolIndexes);
+
+            int[] data = classInfo.references.data();
+            out.writeInt(classInfo.references.length());
+            int position = 0;
+            while (position < classInfo.references.length()) {
+                int kind = data[position];
+                out.writeInt(kind);
+                out.writeInt(poolIndexes[data[position + 1]]);
+                if (kind != ClassReferences.CLASS) {
+                    out.writeInt(poolIndexes[data[position + 2]]);
+                    out.writeInt(poolIndexes[data[position + 3]]);
+                    out.writeInt(pairIndexes.get(data[position + 4]));
+                }
+                position += ClassReferences.recordLength(kind);
+            }
+        }
+        out.writeInt(MAGIC);
+        out.flush();
+    }
+
+    private static void addToPool(int symbolId, SymbolTable symbols, int[] poolIndexes, List<String> pool) {
+        if (symbolId != SymbolTable.NONE && poolIndexes[symbolId] < 0) {
+            poolIndexes[symbolId] = pool.size();
+            pool.add(symbols.get(symbolId));
+        }
+    }
+
+    private static void addMembersToPool(MemberTable members, SymbolTable symbols, int[] poolIndexes,
+                                         List<String> pool) {
+        for (int i = 0; i < members.size(); i++) {
+            addToPool(SymbolTable.pairFirst(members.keyAt(i)), symbols, poolIndexes, pool);
+            addToPool(SymbolTable.pairSecond(members.keyAt(i)), symbols, poolIndexes, pool);
+        }
+    }
+
+    private static void writeMembers(DataOutputStream out, MemberTable members, int[] poolIndexes) throws IOException {
+        out.writeInt(members.size());
+        for (int i = 0; i < members.size(); i++) {
+            out.writeInt(poolIndexes[SymbolTable.pairFirst(members.keyAt(i))]);
+            out.writeInt(poolIndexes[SymbolTable.pairSecond(members.keyAt(i))]);
+            out.writeInt(members.accessAt(i));
+        }
+    }
+
+    private static ClassInfo[] read(ByteBuffer in, SymbolTable symbols, int artifactIndex) throws IOException {
+        if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+            throw new IOException("not a cache file of this version");
+        }
+
+        String[] pool = new String[in.getInt()];
+        int[] symbolIds = new int[pool.length];
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < pool.length; i++) {
+            int length = in.getInt();
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            in.get(bytes, 0, length);
+            pool[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            symbolIds[i] = symbols.intern(pool[i]);
+        }
+        int[] pairIds = new int[in.getInt()];
+        for (int i = 0; i < pairIds.length; i++) {
+            pairIds[i] = symbols.internPair(symbolIds[in.getInt()], symbolIds[in.getInt()]);
+        }
+
+        ClassInfo[] classes = new ClassInfo[in.getInt()];
+        for (int i = 0; i < classes.length; i++) {
+            if (in.get() == 0) {
+                continue;
+            }
+            int nameIndex = in.getInt();
+            ClassInfo classInfo = new ClassInfo(symbolIds[nameIndex], pool[nameIndex].replace('/', '.'));
+            classInfo.access = in.getInt();
+            int superIndex = in.getInt();
+            classInfo.superNameId = superIndex >= 0 ? symbolIds[superIndex] : SymbolTable.NONE;
+            int interfaceCount = in.getInt();
+            if (interfaceCount > 0) {
+                classInfo.interfaceIds = new int[interfaceCount];
+                for (int j = 0; j < interfaceCount; j++) {
+                    classInfo.interfaceIds[j] = symbolIds[in.getInt()];
+                }
+            }
+            for (int count = in.getInt(); count > 0; count--) {
+                classInfo.addField(symbolIds[in.getInt()], symbolIds[in.getInt()], in.getInt());
+            }
+            for (int count = in.getInt(); count > 0; count--) {
+                classInfo.addMethod(symbolIds[in.getInt()], symbolIds[in.getInt()], in.getInt());
+            }
+            classInfo.freeze();
+
+            int length = in.getInt();
+            ClassReferences references = new ClassReferences(length);
+            int read = 0;
+            while (read < length) {
+                int kind = in.getInt();
+                int owner = symbolIds[in.getInt()];
+                if (kind == ClassReferences.CLASS) {
+                    references.addClass(owner);
+                } else {
+                    int name = symbolIds[in.getInt()];
+                    int descriptor = symbolIds[in.getInt()];
+                    int method = pairIds[in.getInt()];
+                    if (kind == ClassReferences.FIELD) {
+                        references.addField(owner, name, descriptor, method);
+                    } else {
+                        references.addMethod(owner, name, descriptor, method);
+                    }
+                }
+                read += ClassReferences.recordLength(kind);
+            }
+            classInfo.references = references;
+            classInfo.artifactIndex = artifactIndex;
+            classes[i] = classInfo;
+        }
+
+        if (in.getInt() != MAGIC || in.hasRemaining()) {
+            throw new IOException("truncated cache file");
+        }
+        return classes;
+    }
+}
@@ -0,0 +1,240 @@
+package com.takeico.inspector;
+
+import org.objectweb.asm.ClassReader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the analysis passes over one or more class sources:
+ * Step 1 reads and parses every class file once, collecting the class table and the raw outgoing
+ * references of each class in the same pass; Step 2 resolves the references against the table.
+ * Both steps run on the given executor. All sources share one class table, so references
+ * between artifacts are resolved; when several artifacts contain a class with the same name,
+ * the first artifact wins, like on a class path.
+ * With a cache, Step 1 is skipped for JAR files whose results are already cached.
+ * With a spill, Step 1 keeps only the compact class data and as many raw references as the
+ * memory budget allows on the heap; Step 2 reads the other references back from the spill file.
+ */
+class Analyzer {
+    private final ScanExecutor executor;
+    private final AnalysisCache cache;
+    private final ReferenceSpill spill;
+
+    public Analyzer(ScanExecutor executor) {
+        this(executor, null);
+    }
+
+    public Analyzer(ScanExecutor executor, AnalysisCache cache) {
+        this(executor, cache, null);
+    }
+
+    /**
+     * @param executor The executor to run the passes on
+     * @param cache    The cache of Step 1 results, or null to parse every class file
+     * @param spill    The spill for the references beyond the memory budget, or null to keep all on the heap
+     */
+    public Analyzer(ScanExecutor executor, AnalysisCache cache, ReferenceSpill spill) {
+        this.executor = executor;
+        this.cache = cache;
+        this.spill = spill;
+    }
+
+    /**
+     * Analyzes the given sources as a single universe.
+     *
+     * @param sources The JAR files and class directories, in class path order
+     * @return The analysis
+     */
+    public Analysis analyze(List<? extends ClassSource> sources) {
+        ClassTable classTable = new ClassTable();
+
+        // Flatten the entries of all sources, so that the workers are balanced across artifacts
+        int[] offsets = entryOffsets(sources);
+
+        // Load the cached artifacts
+        ClassInfo[] collected = new ClassInfo[offsets[sources.size()]];
+        boolean[] cached = new boolean[sources.size()];
+        if (cache != null) {
+            Metrics.start(Metrics.Phase.CACHE);
+            executor.forEach(sources.size(), artifactIndex -> {
+                ClassSource source = sources.get(artifactIndex);
+                if (source instanceof JarArchive) {
+                    ClassInfo[] classes = cache.load((JarArchive) source, classTable.getSymbols(), artifactIndex);
+                    if (classes != null) {
+                        for (ClassInfo classInfo : classes) {
+                            offer(classInfo);
+                        }
+                        System.arraycopy(classes, 0, collected, offsets[artifactIndex], classes.length);
+                        cached[artifactIndex] = true;
+                    }
+                }
+            });
+            Metrics.stop(Metrics.Phase.CACHE);
+        }
+
+        // Step 1: Collect information about all classes, fields, and methods, and detect their references
+        Metrics.start(Metrics.Phase.COLLECT);
+        boolean[] failed = new boolean[sources.size()];
+        executor.forEach(collected.length, i -> {
+            int artifactIndex = findArtifact(offsets, i);
+            if (cached[artifactIndex]) {
+                return;
+            }
+            ClassSource source = sources.get(artifactIndex);
+            ClassSource.Entry entry = source.getClassEntries().get(i - offsets[artifactIndex]);
+            collected[i] = collect(classTable.getSymbols(), source, entry, artifactIndex, failed);
+            offer(collected[i]);
+        });
+        Metrics.stop(Metrics.Phase.COLLECT);
+
+        // Store the parsed artifacts; artifacts with unreadable classes are parsed again next time,
+        // so that their errors are reported on every run
+        if (cache != null) {
+            Metrics.start(Metrics.Phase.CACHE);
+            boolean[] stored = new boolean[sources.size()];
+            executor.forEach(sources.size(), artifactIndex -> {
+                ClassSource source = sources.get(artifactIndex);
+                if (source instanceof JarArchive && !cached[artifactIndex] && !failed[artifactIndex]) {
+                    cache.store((JarArchive) source,
+                            Arrays.copyOfRange(collected, offsets[artifactIndex], offsets[artifactIndex + 1]),
+                            classTable.getSymbols());
+                    stored[artifactIndex] = true;
+                }
+            });
+            // Evict once for all stored artifacts, rather than scanning the cache directory per artifact
+            for (boolean artifactStored : stored) {
+                if (artifactStored) {
+                    cache.evict();
+                    break;
+                }
+            }
+            Metrics.stop(Metrics.Phase.CACHE);
+        }
+
+        return link(classTable, sources, offsets, collected);
+    }
+
+    /**
+     * Accounts the references of a newly collected class against the memory budget, if any.
+     *
+     * @param classInfo The collected class, or null if its class file couldn't be read
+     */
+    void offer(ClassInfo classInfo) {
+        if (spill != null && classInfo != null) {
+            spill.offer(classInfo.references);
+        }
+    }
+
+    /**
+     * Registers the collected classes in the class table and resolves their references (Step 2).
+     *
+     * @param classTable An empty class table using the symbol table of the collected classes
+     * @param sources    The JAR files and class directories, in class path order
+     * @param offsets    The index of the first entry of each source in the collected classes
+     * @param collected  The collected classes of all sources in entry order; null where the class file
+     *                   couldn't be read. The classes must not hold any referrers yet.
+     * @return The analysis
+     */
+    Analysis link(ClassTable classTable, List<? extends ClassSource> sources, int[] offsets, ClassInfo[] collected) {
+        Metrics.start(Metrics.Phase.RESOLVE);
+        // Register the classes in class path and entry order, so that duplicates resolve the same way in every mode
+        for (ClassInfo classInfo : collected) {
+            if (classInfo != null) {
+                ClassInfo registered = classTable.get(classInfo.nameId);
+                // Within an artifact the last entry wins; an earlier artifact shadows later ones
+                if (registered == null || registered.artifactIndex == classInfo.artifactIndex) {
+                    classTable.add(classInfo);
+                }
+            }
+        }
+
+        // Step 2: Resolve references between classes, fields, and methods
+        ReferenceResolver resolver = new ReferenceResolver(classTable);
+        executor.forEach(collected.length, i -> {
+            ClassInfo classInfo = collected[i];
+            if (classInfo != null && classInfo.references != null) {
+                resolver.resolve(classInfo.nameId, classInfo.references);
+            }
+        });
+        if (classTable.hasPlatformClasses()) {
+            executor.forEach(collected.length, i -> {
+                ClassInfo classInfo = collected[i];
+                if (classInfo != null && classTable.get(classInfo.nameId) == classInfo) {
+                    resolver.resolveOverrides(classInfo);
+                }
+            });
+        }
+        Metrics.stop(Metrics.Phase.RESOLVE);
+
+        List<Artifact> artifacts = new ArrayList<>(sources.size());
+        for (int i = 0; i < sources.size(); i++) {
+            List<String> entryNames = new ArrayList<>(offsets[i + 1] - offsets[i]);
+            for (ClassSource.Entry entry : sources.get(i).getClassEntries()) {
+                entryNames.add(entry.getName());
+            }
+            artifacts.add(new Artifact(i, sources.get(i).getPath().toString(), entryNames,
+                    Arrays.copyOfRange(collected, offsets[i], offsets[i + 1])));
+        }
+        return new Analysis(classTable, artifacts);
+    }
+
+    /**
+     * Returns the index of the first entry of each source in the flattened entries of all sources,
+     * followed by the total number of entries.
+     */
+    static int[] entryOffsets(List<? extends ClassSource> sources) {
+        int[] offsets = new int[sources.size() + 1];
+        for (int i = 0; i < sources.size(); i++) {
+            offsets[i + 1] = offsets[i] + sources.get(i).getClassEntries().size();
+        }
+        return offsets;
+    }
+
+    /**
+     * Reads and parses a single class file.
+     *
+     * @param failed Set for the artifact if the class file couldn't be read completely
+     * @return The collected class with its references, or null if the class file couldn't be read
+     */
+    static ClassInfo collect(SymbolTable symbols, ClassSource source, ClassSource.Entry entry,
+                                     int artifactIndex, boolean[] failed) {
+        ReferenceDetector detector = new ReferenceDetector(symbols);
+        ClassInfoCollector collector = new ClassInfoCollector(symbols, detector);
+        try {
+            long start = Metrics.nanoTime();
+            byte[] bytes = source.read(entry);
+            Metrics.addElapsed(Metrics.Counter.READ_NANOS, start);
+            Metrics.add(Metrics.Counter.CLASS_BYTES, bytes.length);
+
+            start = Metrics.nanoTime();
+            ClassReader reader = new ClassReader(bytes);
+            reader.accept(collector, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            Metrics.addElapsed(Metrics.Counter.PARSE_NANOS, start);
+        } catch (Exception e) {
+            System.err.println("Error collecting class info for " + entry.getName() + ": " + e.getMessage());
+            failed[artifactIndex] = true;
+        }
+
+        ClassInfo classInfo = collector.getClassInfo();
+        if (classInfo != null) {
+            classInfo.artifactIndex = artifactIndex;
+            classInfo.references = detector.getReferences();
+            Metrics.add(Metrics.Counter.CLASSES, 1);
+        }
+        return classInfo;
+    }
+
+    static int findArtifact(int[] offsets, int index) {
+        int position = Arrays.binarySearch(offsets, index);
+        if (position < 0) {
+            return -position - 2;
+        }
+        // Skip artifacts without class files, which share their offset with the next one
+        while (offsets[position + 1] == index) {
+            position++;
+        }
+        return position;
+    }
+}
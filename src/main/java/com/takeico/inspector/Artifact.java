@@ -0,0 +1,21 @@
+package com.takeico.inspector;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A JAR file or class directory of an analysis, together with the classes read from it.
+ */
+class Artifact {
+    final int index;
+    final String path;
+    final List<String> entryNames;
+    final ClassInfo[] classes;  // In entry order; null where the class file couldn't be read
+
+    Artifact(int index, String path, List<String> entryNames, ClassInfo[] classes) {
+        this.index = index;
+        this.path = path;
+        this.entryNames = Collections.unmodifiableList(entryNames);
+        this.classes = classes;
+    }
+}
@@ -0,0 +1,221 @@
+package com.takeico.inspector;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes the report as a stream of length-delimited Protocol Buffers messages, the format read by
+ * {@code parseDelimitedFrom} of the generated Java classes, so that tools can read the report without
+ * a text parser. Each record is a varint length followed by a {@code Record} message of this schema:
+ * <pre>
+ * message Record {
+ *   oneof record {
+ *     Jar jar = 1;
+ *     Class class = 2;
+ *     Member method = 3;
+ *     Member field = 4;
+ *     Statistics statistics = 5;
+ *   }
+ * }
+ * message Jar { string path = 1; }
+ * message Class { string name = 1; bool interface = 2; string superclass = 3; optional bool reachable = 4; }
+ * message Member {
+ *   string class = 1; string name = 2; string descriptor = 3; bool referenced = 4;
+ *   repeated string referrers = 5; optional bool reachable = 6;
+ * }
+ * message Statistics {
+ *   uint32 classes = 1; uint32 methods = 2; uint32 live_methods = 3; uint32 fields = 4; uint32 live_fields = 5;
+ * }
+ * </pre>
+ * The records follow each other like the lines of the JSON Lines report. The reachable flags are
+ * only present in reachability mode, where the live counts of the statistics are the reachable
+ * members instead of the referenced ones.
+ */
+class BinaryReportWriter extends RecordReportWriter {
+    private static final int JAR = 1;
+    private static final int CLASS = 2;
+    private static final int METHOD = 3;
+    private static final int FIELD = 4;
+    private static final int STATISTICS = 5;
+
+    private static final int VARINT = 0;
+    private static final int LENGTH_DELIMITED = 2;
+
+    private final OutputStream out;
+
+    // The message of the current record, reused for all records
+    private byte[] message = new byte[256];
+    private int length;
+    private final byte[] header = new byte[16];
+
+    /**
+     * @param out          The stream to write the report to; it should be buffered
+     * @param reachability Whether the records include the reachability of classes and members
+     */
+    public BinaryReportWriter(OutputStream out, boolean reachability) {
+        super(reachability);
+        this.out = out;
+    }
+
+    @Override
+    public void startJar(String jarPath) throws IOException {
+        writeString(1, jarPath);
+        writeRecord(JAR);
+    }
+
+    @Override
+    protected void startClass(String className, boolean isInterface, String superclassName, boolean reachable)
+            throws IOException {
+        writeString(1, className);
+        writeBoolean(2, isInterface);
+        if (superclassName != null) {
+            writeString(3, superclassName);
+        }
+        if (reachability) {
+            writeBoolean(4, reachable);
+        }
+        writeRecord(CLASS);
+    }
+
+    @Override
+    protected void writeMethod(String className, String name, String descriptor, boolean referenced,
+                               boolean reachable, List<String> referrers) throws IOException {
+        writeMember(className, name, descriptor, referenced, reachable, referrers);
+        writeRecord(METHOD);
+    }
+
+    @Override
+    protected void writeField(String className, String name, String descriptor, boolean referenced,
+                              boolean reachable, List<String> referrers) throws IOException {
+        writeMember(className, name, descriptor, referenced, reachable, referrers);
+        writeRecord(FIELD);
+    }
+
+    private void writeMember(String className, String name, String descriptor, boolean referenced,
+                             boolean reachable, List<String> referrers) {
+        writeString(1, className);
+        writeString(2, name);
+        writeString(3, descriptor);
+        writeBoolean(4, referenced);
+        for (String referrer : referrers) {
+            writeString(5, referrer);
+        }
+        if (reachability) {
+            writeBoolean(6, reachable);
+        }
+    }
+
+    @Override
+    protected void endClass() {
+        // Members are records of their own
+    }
+
+    @Override
+    public void writeStatistics(int totalClasses, int totalMethods, int totalReferencedMethods,
+                                int totalFields, int totalReferencedFields) throws IOException {
+        writeUInt32(1, totalClasses);
+        writeUInt32(2, totalMethods);
+        writeUInt32(3, totalReferencedMethods);
+        writeUInt32(4, totalFields);
+        writeUInt32(5, totalReferencedFields);
+        writeRecord(STATISTICS);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Writes the collected message as the given field of a Record message, preceded by the record length.
+     */
+    private void writeRecord(int recordField) throws IOException {
+        int fieldHeader = putVarint(header, 5, recordField << 3 | LENGTH_DELIMITED);
+        fieldHeader = putVarint(header, fieldHeader, length);
+        // The record length goes in front of the field header, which takes at most 10 bytes
+        int recordLength = fieldHeader - 5 + length;
+        int start = 5 - varintSize(recordLength);
+        putVarint(header, start, recordLength);
+        out.write(header, start, fieldHeader - start);
+        out.write(message, 0, length);
+        length = 0;
+    }
+
+    private void writeString(int field, String value) {
+        writeTag(field, LENGTH_DELIMITED);
+        if (isAscii(value)) {
+            ensureCapacity(5 + value.length());
+            length = putVarint(message, length, value.length());
+            for (int i = 0; i < value.length(); i++) {
+                message[length++] = (byte) value.charAt(i);
+            }
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ensureCapacity(5 + bytes.length);
+            length = putVarint(message, length, bytes.length);
+            System.arraycopy(bytes, 0, message, length, bytes.length);
+            length += bytes.length;
+        }
+    }
+
+    private void writeBoolean(int field, boolean value) {
+        writeUInt32(field, value ? 1 : 0);
+    }
+
+    private void writeUInt32(int field, int value) {
+        writeTag(field, VARINT);
+        ensureCapacity(5);
+        length = putVarint(message, length, value);
+    }
+
+    private void writeTag(int field, int wireType) {
+        ensureCapacity(5);
+        length = putVarint(message, length, field << 3 | wireType);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > message.length) {
+            message = Arrays.copyOf(message, Math.max(message.length * 2, length + extra));
+        }
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes an unsigned varint at the given position.
+     *
+     * @return The position following the varint
+     */
+    private static int putVarint(byte[] buffer, int position, int value) {
+        while ((value & ~0x7f) != 0) {
+            buffer[position++] = (byte) (value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7f) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,123 @@
+package com.takeico.inspector;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An exploded class directory, such as the classes output directory of a build.
+ */
+class ClassDirectory implements ClassSource {
+
+    /**
+     * A class file in the directory.
+     */
+    static class Entry implements ClassSource.Entry {
+        private final String name;
+        private final Path file;
+        private final long size;
+        private final long lastModified;
+
+        Entry(String name, Path file, long size, long lastModified) {
+            this.name = name;
+            this.file = file;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public long getStamp() {
+            return lastModified * 31 + size;
+        }
+    }
+
+    private final Path path;
+    private final List<Entry> entries;
+
+    private ClassDirectory(Path path, List<Entry> entries) {
+        this.path = path;
+        this.entries = entries;
+    }
+
+    /**
+     * Lists the class files below the given directory.
+     *
+     * @param path Path to the directory
+     * @return The opened directory
+     * @throws IOException If the directory can't be listed
+     */
+    public static ClassDirectory open(Path path) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(path)) {
+            files = walk.filter(file -> file.getFileName().toString().endsWith(".class") && Files.isRegularFile(file))
+                    .collect(Collectors.toList());
+        }
+
+        List<Entry> entries = new ArrayList<>(files.size());
+        for (Path file : files) {
+            String name = path.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            entries.add(new Entry(name, file, attributes.size(), attributes.lastModifiedTime().toMillis()));
+        }
+        // Sort by name, so that the report doesn't depend on the order of the file system
+        entries.sort(Comparator.comparing(Entry::getName));
+        return new ClassDirectory(path, Collections.unmodifiableList(entries));
+    }
+
+    @Override
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public List<Entry> getClassEntries() {
+        return entries;
+    }
+
+    @Override
+    public byte[] read(ClassSource.Entry entry) throws IOException {
+        return Files.readAllBytes(((Entry) entry).file);
+    }
+
+    @Override
+    public byte[] readResource(String name) throws IOException {
+        Path file = path.resolve(name);
+        return Files.isRegularFile(file) ? Files.readAllBytes(file) : null;
+    }
+
+    @Override
+    public List<String> listResources(String directory) throws IOException {
+        Path dir = path.resolve(directory);
+        if (!Files.isDirectory(dir)) {
+            return Collections.emptyList();
+        }
+        try (Stream<Path> list = Files.list(dir)) {
+            return list.filter(Files::isRegularFile)
+                    .map(file -> directory + file.getFileName())
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public void close() {
+        // Class files are opened and closed on each read
+    }
+}
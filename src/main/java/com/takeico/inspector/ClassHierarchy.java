@@ -0,0 +1,317 @@
+package com.takeico.inspector;
+
+import org.objectweb.asm.Opcodes;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The class hierarchy of a class table, including the superinterfaces of each class, with
+ * field and method resolution following the rules of the JVM specification (JVMS 5.4.3.2 to 5.4.3.4).
+ * Supertypes that are not part of the analysis end the search, like the superclass chain did before,
+ * unless they are {@link PlatformClasses}: then a member inherited from a JDK class such as
+ * {@code java.util.AbstractList} resolves to its declaration in the JDK, which is not part of the analysis.
+ *
+ * Resolved members and the superinterfaces of each class are memoized, so every distinct
+ * (owner, name, descriptor) is resolved once no matter how many call sites refer to it.
+ * The hierarchy only reads the class table and can be used from several threads at the same time;
+ * it must not be used any more once the table changes.
+ */
+class ClassHierarchy {
+    static final long NOT_FOUND = -1;
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final int PLATFORM_DEPTH = 32;  // Deeper than any supertype chain of the JDK
+    private static final ClassInfo[] NO_CLASSES = new ClassInfo[0];
+
+    /**
+     * A member reference: the owner named by the reference, and the packed (name id, descriptor id) key.
+     */
+    private static final class MemberRef {
+        final int ownerId;
+        final long memberKey;
+
+        MemberRef(int ownerId, long memberKey) {
+            this.ownerId = ownerId;
+            this.memberKey = memberKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof MemberRef)) {
+                return false;
+            }
+            MemberRef other = (MemberRef) o;
+            return ownerId == other.ownerId && memberKey == other.memberKey;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * ownerId + Long.hashCode(memberKey);
+        }
+    }
+
+    private final ClassTable classTable;
+    private final int maxDepth;  // Guards against the cycles of malformed class files
+    private final ConcurrentHashMap<MemberRef, Long> resolvedFields = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<MemberRef, Long> resolvedMethods = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, ClassInfo[]> superinterfaces = new ConcurrentHashMap<>();
+
+    public ClassHierarchy(ClassTable classTable) {
+        this.classTable = classTable;
+        this.maxDepth = classTable.size() + (classTable.hasPlatformClasses() ? PLATFORM_DEPTH : 0);
+    }
+
+    /**
+     * Resolves a method reference.
+     *
+     * @param owner     The class named by the reference
+     * @param methodKey The packed (name id, descriptor id) key of the method
+     * @return The resolved method packed as (name id of the declaring class, method index), or {@link #NOT_FOUND}
+     */
+    public long resolveMethod(ClassInfo owner, long methodKey) {
+        // Most references name the declaring class, which doesn't need a memoized lookup
+        int methodIndex = owner.methods.indexOf(methodKey);
+        if (methodIndex >= 0) {
+            return SymbolTable.pairKey(owner.nameId, methodIndex);
+        }
+        return resolvedMethods.computeIfAbsent(new MemberRef(owner.nameId, methodKey),
+                ref -> resolveInherited(owner, ref.memberKey));
+    }
+
+    /**
+     * Resolves a field reference.
+     *
+     * @param owner    The class named by the reference
+     * @param fieldKey The packed (name id, descriptor id) key of the field
+     * @return The resolved field packed as (name id of the declaring class, field index), or {@link #NOT_FOUND}
+     */
+    public long resolveField(ClassInfo owner, long fieldKey) {
+        int fieldIndex = owner.fields.indexOf(fieldKey);
+        if (fieldIndex >= 0) {
+            return SymbolTable.pairKey(owner.nameId, fieldIndex);
+        }
+        return resolvedFields.computeIfAbsent(new MemberRef(owner.nameId, fieldKey),
+                ref -> resolveInheritedField(owner, ref.memberKey));
+    }
+
+    /**
+     * Field resolution: a class is searched before its direct superinterfaces (depth-first, in
+     * declaration order), and those before its superclass.
+     */
+    private long resolveInheritedField(ClassInfo owner, long fieldKey) {
+        Metrics.add(Metrics.Counter.HIERARCHY_WALKS, 1);
+        ArrayDeque<ClassInfo> stack = new ArrayDeque<>();
+        ClassInfo classInfo = owner;
+        for (int depth = maxDepth; classInfo != null && depth > 0; depth--) {
+            pushInterfaces(classInfo, stack);
+            LongSet visited = new LongSet();
+            while (!stack.isEmpty()) {
+                ClassInfo type = stack.pop();
+                if (visited.add(type.nameId)) {
+                    int fieldIndex = type.fields.indexOf(fieldKey);
+                    if (fieldIndex >= 0) {
+                        return SymbolTable.pairKey(type.nameId, fieldIndex);
+                    }
+                    pushInterfaces(type, stack);
+                }
+            }
+
+            classInfo = classTable.lookup(classInfo.superNameId);
+            if (classInfo != null) {
+                int fieldIndex = classInfo.fields.indexOf(fieldKey);
+                if (fieldIndex >= 0) {
+                    return SymbolTable.pairKey(classInfo.nameId, fieldIndex);
+                }
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    private void pushInterfaces(ClassInfo classInfo, ArrayDeque<ClassInfo> stack) {
+        // Pushed in reverse, so that the first interface is searched first
+        for (int i = classInfo.interfaceIds.length - 1; i >= 0; i--) {
+            ClassInfo superinterface = classTable.lookup(classInfo.interfaceIds[i]);
+            if (superinterface != null) {
+                stack.push(superinterface);
+            }
+        }
+    }
+
+    private long resolveInherited(ClassInfo owner, long methodKey) {
+        Metrics.add(Metrics.Counter.HIERARCHY_WALKS, 1);
+        if (owner.isInterface()) {
+            // Interface method resolution: the public instance methods of Object come before superinterfaces
+            ClassInfo object = classTable.lookup(classTable.getSymbols().lookup(OBJECT));
+            if (object != null) {
+                int methodIndex = object.methods.indexOf(methodKey);
+                if (methodIndex >= 0 && (object.methods.accessAt(methodIndex) & Opcodes.ACC_PUBLIC) != 0
+                        && (object.methods.accessAt(methodIndex) & Opcodes.ACC_STATIC) == 0) {
+                    return SymbolTable.pairKey(object.nameId, methodIndex);
+                }
+            }
+        } else {
+            // Method resolution: the superclasses come before superinterfaces
+            ClassInfo classInfo = classTable.lookup(owner.superNameId);
+            for (int depth = maxDepth; classInfo != null && depth > 0; depth--) {
+                int methodIndex = classInfo.methods.indexOf(methodKey);
+                if (methodIndex >= 0) {
+                    return SymbolTable.pairKey(classInfo.nameId, methodIndex);
+                }
+                classInfo = classTable.lookup(classInfo.superNameId);
+            }
+        }
+        return resolveInSuperinterfaces(owner, methodKey);
+    }
+
+    /**
+     * Selects a method declared in a superinterface: the only maximally-specific non-abstract method
+     * if there is one, and otherwise the first maximally-specific method, where the JVM may choose any.
+     */
+    private long resolveInSuperinterfaces(ClassInfo owner, long methodKey) {
+        List<ClassInfo> candidates = new ArrayList<>();
+        for (ClassInfo superinterface : getSuperinterfaces(owner)) {
+            int methodIndex = superinterface.methods.indexOf(methodKey);
+            if (methodIndex >= 0
+                    && (superinterface.methods.accessAt(methodIndex) & (Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC)) == 0) {
+                candidates.add(superinterface);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return NOT_FOUND;
+        }
+
+        ClassInfo selected = null;
+        ClassInfo nonAbstract = null;
+        int nonAbstractCount = 0;
+        for (ClassInfo candidate : candidates) {
+            if (isMaximallySpecific(candidate, candidates)) {
+                if (selected == null) {
+                    selected = candidate;
+                }
+                int methodIndex = candidate.methods.indexOf(methodKey);
+                if ((candidate.methods.accessAt(methodIndex) & Opcodes.ACC_ABSTRACT) == 0) {
+                    nonAbstract = candidate;
+                    nonAbstractCount++;
+                }
+            }
+        }
+        if (nonAbstractCount == 1) {
+            selected = nonAbstract;
+        }
+        return SymbolTable.pairKey(selected.nameId, selected.methods.indexOf(methodKey));
+    }
+
+    private boolean isMaximallySpecific(ClassInfo candidate, List<ClassInfo> candidates) {
+        for (ClassInfo other : candidates) {
+            if (other != candidate) {
+                for (ClassInfo superinterface : getSuperinterfaces(other)) {
+                    if (superinterface.nameId == candidate.nameId) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the superinterfaces of a class or interface that are part of the analysis or platform classes:
+     * the interfaces it implements directly or through its superclasses, and their superinterfaces, in
+     * breadth-first order.
+     */
+    public ClassInfo[] getSuperinterfaces(ClassInfo classInfo) {
+        ClassInfo[] result = superinterfaces.get(classInfo.nameId);
+        if (result == null) {
+            result = computeSuperinterfaces(classInfo);
+            superinterfaces.putIfAbsent(classInfo.nameId, result);
+        }
+        return result;
+    }
+
+    private ClassInfo[] computeSuperinterfaces(ClassInfo classInfo) {
+        ArrayDeque<ClassInfo> queue = new ArrayDeque<>();
+        ClassInfo type = classInfo;
+        for (int depth = maxDepth; type != null && depth > 0; depth--) {
+            addInterfaces(type, queue);
+            if (type.isInterface()) {
+                break;
+            }
+            type = classTable.lookup(type.superNameId);
+        }
+
+        List<ClassInfo> result = new ArrayList<>();
+        LongSet visited = new LongSet();
+        while (!queue.isEmpty()) {
+            ClassInfo superinterface = queue.poll();
+            if (visited.add(superinterface.nameId)) {
+                result.add(superinterface);
+                addInterfaces(superinterface, queue);
+            }
+        }
+        return result.isEmpty() ? NO_CLASSES : result.toArray(NO_CLASSES);
+    }
+
+    /**
+     * Returns the supertypes of a class that are platform classes, superclasses first.
+     */
+    public ClassInfo[] getPlatformSupertypes(ClassInfo classInfo) {
+        List<ClassInfo> result = new ArrayList<>();
+        ClassInfo type = classTable.lookup(classInfo.superNameId);
+        for (int depth = maxDepth; type != null && depth > 0; depth--) {
+            if (classTable.get(type.nameId) == null) {
+                result.add(type);
+            }
+            type = classTable.lookup(type.superNameId);
+        }
+        for (ClassInfo superinterface : getSuperinterfaces(classInfo)) {
+            if (classTable.get(superinterface.nameId) == null) {
+                result.add(superinterface);
+            }
+        }
+        return result.isEmpty() ? NO_CLASSES : result.toArray(NO_CLASSES);
+    }
+
+    /**
+     * Returns whether one of the supertypes of a class is neither part of the analysis nor a platform class.
+     */
+    public boolean hasUnknownSupertypes(ClassInfo classInfo) {
+        ClassInfo type = classInfo;
+        for (int depth = maxDepth; depth > 0 && type.superNameId != SymbolTable.NONE; depth--) {
+            if (hasUnknownInterface(type)) {
+                return true;
+            }
+            type = classTable.lookup(type.superNameId);
+            if (type == null) {
+                return true;
+            }
+        }
+        // Superinterfaces that can't be looked up are left out of the superinterfaces
+        for (ClassInfo superinterface : getSuperinterfaces(classInfo)) {
+            if (hasUnknownInterface(superinterface)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasUnknownInterface(ClassInfo classInfo) {
+        for (int interfaceId : classInfo.interfaceIds) {
+            if (classTable.lookup(interfaceId) == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addInterfaces(ClassInfo classInfo, ArrayDeque<ClassInfo> queue) {
+        for (int interfaceId : classInfo.interfaceIds) {
+            ClassInfo superinterface = classTable.lookup(interfaceId);
+            if (superinterface != null) {
+                queue.add(superinterface);
+            }
+        }
+    }
+}
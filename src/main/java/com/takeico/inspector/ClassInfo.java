@@ -0,0 +1,224 @@
+package com.takeico.inspector;
+
+import org.objectweb.asm.Opcodes;
+
+import java.util.Arrays;
+
+/**
+ * Represents information about a class, including its fields and methods.
+ * Names and descriptors are kept as ids of the {@link SymbolTable} of the analysis, and fields
+ * and methods are identified by their index in the class's {@link MemberTable}.
+ * The reference state may be updated concurrently by several reference detectors.
+ */
+class ClassInfo {
+    static final int[] NO_INTERFACES = new int[0];
+
+    final int nameId;  // Symbol id of the internal class name
+    String className;
+    int access;
+    int superNameId = SymbolTable.NONE;  // Symbol id of the internal superclass name
+    int[] interfaceIds = NO_INTERFACES;  // Symbol ids of the internal names of the direct superinterfaces
+    final MemberTable fields = new MemberTable();
+    final MemberTable methods = new MemberTable();
+    int artifactIndex;  // Index of the JAR file or class directory the class was read from
+    ClassReferences references;  // Outgoing references detected in the class file
+
+    // Reverse index: name ids of the referring classes, and member index -> referrers,
+    // each packed as (referring class id, referring method id)
+    private LongSet classReferrers;
+    private LongSet[] fieldReferrers;
+    private LongSet[] methodReferrers;
+    private int referencedFieldCount = 0;
+    private int referencedMethodCount = 0;
+
+    // Reachability state, set by the ReachabilityAnalyzer; null if reachability wasn't analyzed
+    private boolean[] reachableFields;
+    private boolean[] reachableMethods;
+    private boolean reachable;
+
+    public ClassInfo(int nameId, String className) {
+        this.nameId = nameId;
+        this.className = className;
+    }
+
+    public void addField(int nameId, int descriptorId, int access) {
+        fields.add(SymbolTable.pairKey(nameId, descriptorId), access);
+    }
+
+    public void addMethod(int nameId, int descriptorId, int access) {
+        methods.add(SymbolTable.pairKey(nameId, descriptorId), access);
+    }
+
+    public boolean isInterface() {
+        return (access & Opcodes.ACC_INTERFACE) != 0;
+    }
+
+    /**
+     * Finishes collection: builds the member lookup index and the reference state.
+     * Calling it again has no effect.
+     */
+    public void freeze() {
+        if (fieldReferrers == null) {
+            fields.freeze();
+            methods.freeze();
+            fieldReferrers = new LongSet[fields.size()];
+            methodReferrers = new LongSet[methods.size()];
+        }
+    }
+
+    /**
+     * Returns a hash of the shape of the class: its name, access flags, supertypes, and the keys and
+     * access flags of its fields and methods in declaration order. Hashes can only be compared
+     * between classes sharing a symbol table.
+     */
+    public long shapeHash() {
+        long hash = nameId;
+        hash = hash * 31 + access;
+        hash = hash * 31 + superNameId;
+        for (int interfaceId : interfaceIds) {
+            hash = hash * 31 + interfaceId;
+        }
+        for (MemberTable members : new MemberTable[] {fields, methods}) {
+            hash = hash * 31 + members.size();
+            for (int i = 0; i < members.size(); i++) {
+                hash = (hash * 31 + members.keyAt(i)) * 31 + members.accessAt(i);
+            }
+        }
+        return hash;
+    }
+
+    public synchronized void addClassReferrer(int referrerClassId) {
+        if (classReferrers == null) {
+            classReferrers = new LongSet();
+        }
+        classReferrers.add(referrerClassId);
+    }
+
+    public synchronized void removeClassReferrer(int referrerClassId) {
+        if (classReferrers != null && classReferrers.remove(referrerClassId) && classReferrers.isEmpty()) {
+            classReferrers = null;
+        }
+    }
+
+    public synchronized boolean isReferenced() {
+        return classReferrers != null;
+    }
+
+    public synchronized void addFieldReferrer(int fieldIndex, int referrerClassId, int referrerMethodId) {
+        if (fieldReferrers[fieldIndex] == null) {
+            fieldReferrers[fieldIndex] = new LongSet();
+            referencedFieldCount++;
+        }
+        fieldReferrers[fieldIndex].add(SymbolTable.pairKey(referrerClassId, referrerMethodId));
+    }
+
+    public synchronized void addMethodReferrer(int methodIndex, int referrerClassId, int referrerMethodId) {
+        if (methodReferrers[methodIndex] == null) {
+            methodReferrers[methodIndex] = new LongSet();
+            referencedMethodCount++;
+        }
+        methodReferrers[methodIndex].add(SymbolTable.pairKey(referrerClassId, referrerMethodId));
+    }
+
+    public synchronized void removeFieldReferrer(int fieldIndex, int referrerClassId, int referrerMethodId) {
+        LongSet referrers = fieldReferrers[fieldIndex];
+        if (referrers != null && referrers.remove(SymbolTable.pairKey(referrerClassId, referrerMethodId))
+                && referrers.isEmpty()) {
+            fieldReferrers[fieldIndex] = null;
+            referencedFieldCount--;
+        }
+    }
+
+    public synchronized void removeMethodReferrer(int methodIndex, int referrerClassId, int referrerMethodId) {
+        LongSet referrers = methodReferrers[methodIndex];
+        if (referrers != null && referrers.remove(SymbolTable.pairKey(referrerClassId, referrerMethodId))
+                && referrers.isEmpty()) {
+            methodReferrers[methodIndex] = null;
+            referencedMethodCount--;
+        }
+    }
+
+    /**
+     * Forgets all referrers of the class and its members, so that the references can be resolved again.
+     */
+    public synchronized void clearReferrers() {
+        classReferrers = null;
+        Arrays.fill(fieldReferrers, null);
+        Arrays.fill(methodReferrers, null);
+        referencedFieldCount = 0;
+        referencedMethodCount = 0;
+    }
+
+    public synchronized boolean isFieldReferenced(int fieldIndex) {
+        return fieldReferrers[fieldIndex] != null;
+    }
+
+    public synchronized boolean isMethodReferenced(int methodIndex) {
+        return methodReferrers[methodIndex] != null;
+    }
+
+    /**
+     * Returns the referrers of the given field, each packed as (referring class id, referring method id).
+     */
+    public synchronized long[] getFieldReferrers(int fieldIndex) {
+        LongSet referrers = fieldReferrers[fieldIndex];
+        return referrers != null ? referrers.toArray() : new long[0];
+    }
+
+    /**
+     * Returns the referrers of the given method, each packed as (referring class id, referring method id).
+     */
+    public synchronized long[] getMethodReferrers(int methodIndex) {
+        LongSet referrers = methodReferrers[methodIndex];
+        return referrers != null ? referrers.toArray() : new long[0];
+    }
+
+    /**
+     * Sets the reachability of the class and its members.
+     */
+    public synchronized void setReachability(boolean reachable, boolean[] reachableMethods, boolean[] reachableFields) {
+        this.reachable = reachable;
+        this.reachableMethods = reachableMethods;
+        this.reachableFields = reachableFields;
+    }
+
+    public synchronized boolean isReachable() {
+        return reachable;
+    }
+
+    public synchronized boolean isMethodReachable(int methodIndex) {
+        return reachableMethods != null && reachableMethods[methodIndex];
+    }
+
+    public synchronized boolean isFieldReachable(int fieldIndex) {
+        return reachableFields != null && reachableFields[fieldIndex];
+    }
+
+    public synchronized int getReachableMethodCount() {
+        return count(reachableMethods);
+    }
+
+    public synchronized int getReachableFieldCount() {
+        return count(reachableFields);
+    }
+
+    private static int count(boolean[] flags) {
+        int count = 0;
+        if (flags != null) {
+            for (boolean flag : flags) {
+                if (flag) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    public synchronized int getReferencedFieldCount() {
+        return referencedFieldCount;
+    }
+
+    public synchronized int getReferencedMethodCount() {
+        return referencedMethodCount;
+    }
+}
@@ -0,0 +1,71 @@
+package com.takeico.inspector;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * A ClassVisitor implementation that collects information about classes, fields, and methods.
+ * The collected ClassInfo is registered in the class table by the caller, so that several
+ * collectors can run in parallel and still be registered in JAR entry order.
+ * All events are passed on to an optional delegate, so other visitors can share the same parse.
+ */
+class ClassInfoCollector extends ClassVisitor {
+    private final SymbolTable symbols;
+    private ClassInfo currentClass;
+
+    public ClassInfoCollector(SymbolTable symbols) {
+        this(symbols, null);
+    }
+
+    public ClassInfoCollector(SymbolTable symbols, ClassVisitor delegate) {
+        super(Opcodes.ASM9, delegate);
+        this.symbols = symbols;
+    }
+
+    /**
+     * Returns the information collected for the visited class, or null if nothing was visited.
+     */
+    public ClassInfo getClassInfo() {
+        if (currentClass != null) {
+            currentClass.freeze();
+        }
+        return currentClass;
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, 
+                      String superName, String[] interfaces) {
+        currentClass = new ClassInfo(symbols.intern(name), name.replace('/', '.'));
+        currentClass.access = access;
+        if (superName != null) {
+            currentClass.superNameId = symbols.intern(superName);
+        }
+        if (interfaces != null && interfaces.length > 0) {
+            currentClass.interfaceIds = new int[interfaces.length];
+            for (int i = 0; i < interfaces.length; i++) {
+                currentClass.interfaceIds[i] = symbols.intern(interfaces[i]);
+            }
+        }
+        super.visit(version, access, name, signature, superName, interfaces);
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String descriptor, 
+                                  String signature, Object value) {
+        currentClass.addField(symbols.intern(name), symbols.intern(descriptor), access);
+        return super.visitField(access, name, descriptor, signature, value);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String descriptor, 
+                                    String signature, String[] exceptions) {
+        // Only add methods that are actually defined in this class, not inherited ones
+        // Bridge and synthetic methods are generated by the compiler, not directly defined in the source code
+        if ((access & (Opcodes.ACC_BRIDGE | Opcodes.ACC_SYNTHETIC)) == 0) {
+            currentClass.addMethod(symbols.intern(name), symbols.intern(descriptor), access);
+        }
+        return super.visitMethod(access, name, descriptor, signature, exceptions);
+    }
+}
@@ -0,0 +1,115 @@
+package com.takeico.inspector;
+
+import java.util.Arrays;
+
+/**
+ * The outgoing references of one class as extracted from its bytecode, before they are resolved
+ * against a class table. References are stored as records of symbol ids in a single int array:
+ * a class reference is (CLASS, owner), and field and method references are
+ * (kind, owner, name, descriptor, referring method), where the referring method is a pair id
+ * of the symbol table.
+ *
+ * Keeping the raw references lets the class be resolved against any class table without
+ * parsing its class file again. In low-memory mode the records may be moved to a
+ * {@link ReferenceSpill} once the class is collected; they are read back on each access.
+ */
+class ClassReferences {
+    static final int CLASS = 0;
+    static final int FIELD = 1;
+    static final int METHOD = 2;
+
+    /**
+     * The name and descriptor of the referring method of references made by the class itself rather
+     * than by one of its methods, such as the enum constants in its annotations. No method has an
+     * empty name, so such a referrer never matches a member of the class.
+     */
+    static final String CLASS_REFERRER = "";
+
+    private int[] data;
+    private int length = 0;
+    private ReferenceSpill spill;  // The spill holding the records, or null if they are on the heap
+    private long spillPosition;
+
+    public ClassReferences() {
+        this(16);
+    }
+
+    public ClassReferences(int initialCapacity) {
+        data = new int[Math.max(initialCapacity, 2)];
+    }
+
+    public void addClass(int ownerId) {
+        ensureCapacity(2);
+        data[length++] = CLASS;
+        data[length++] = ownerId;
+    }
+
+    public void addField(int ownerId, int nameId, int descriptorId, int referrerMethodId) {
+        addMember(FIELD, ownerId, nameId, descriptorId, referrerMethodId);
+    }
+
+    public void addMethod(int ownerId, int nameId, int descriptorId, int referrerMethodId) {
+        addMember(METHOD, ownerId, nameId, descriptorId, referrerMethodId);
+    }
+
+    /**
+     * Returns the raw records. Only the first {@link #length()} ints are valid.
+     * Spilled records are read back into a new array on each call.
+     */
+    public int[] data() {
+        return spill != null ? spill.read(spillPosition, length) : data;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Returns the number of ints in a record of the given kind, including the kind itself.
+     */
+    public static int recordLength(int kind) {
+        return kind == CLASS ? 2 : 5;
+    }
+
+    /**
+     * Shrinks the backing array to the recorded references.
+     */
+    public void trim() {
+        if (data.length != length) {
+            data = Arrays.copyOf(data, length);
+        }
+    }
+
+    /**
+     * Moves the records to the given spill file. No references may be added afterwards.
+     */
+    void spill(ReferenceSpill spill) {
+        if (this.spill == null && length > 0) {
+            spillPosition = spill.write(this, data, length);
+            this.spill = spill;
+            data = null;
+        }
+    }
+
+    /**
+     * Records the new position of the spilled records after the spill file was compacted.
+     */
+    void moveSpill(long position) {
+        spillPosition = position;
+    }
+
+    private void addMember(int kind, int ownerId, int nameId, int descriptorId, int referrerMethodId) {
+        ensureCapacity(5);
+        data[length++] = kind;
+        data[length++] = ownerId;
+        data[length++] = nameId;
+        data[length++] = descriptorId;
+        data[length++] = referrerMethodId;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, length + extra));
+        }
+    }
+}
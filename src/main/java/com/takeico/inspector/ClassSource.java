@@ -0,0 +1,108 @@
+package com.takeico.inspector;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A container of class files: a JAR file or an exploded class directory.
+ */
+interface ClassSource extends AutoCloseable {
+
+    /**
+     * A class file in a source.
+     */
+    interface Entry {
+        /**
+         * Returns the path of the class file relative to the root of the source, using '/' as separator.
+         */
+        String getName();
+
+        /**
+         * Returns the size of the class file in bytes.
+         */
+        long getSize();
+
+        /**
+         * Returns a value that changes whenever the class file changes: the CRC-32 and size of an
+         * archive entry, or the modification time and size of a file.
+         */
+        long getStamp();
+    }
+
+    /**
+     * Returns the path of the JAR file or class directory.
+     */
+    Path getPath();
+
+    /**
+     * Returns the class files of the source in a stable order.
+     */
+    List<? extends Entry> getClassEntries();
+
+    /**
+     * Reads the contents of a class file of this source.
+     *
+     * @param entry An entry returned by {@link #getClassEntries()}
+     * @return The contents of the class file
+     * @throws IOException If the class file can't be read
+     */
+    byte[] read(Entry entry) throws IOException;
+
+    /**
+     * Reads a resource, i.e. any file of this source such as {@code META-INF/MANIFEST.MF}.
+     *
+     * @param name The path of the resource relative to the root of the source, using '/' as separator
+     * @return The contents of the resource, or null if the source doesn't contain it
+     * @throws IOException If the resource can't be read
+     */
+    byte[] readResource(String name) throws IOException;
+
+    /**
+     * Returns the names of the resources directly in the given directory of this source, in a stable order.
+     *
+     * @param directory The path of the directory relative to the root of the source, ending with '/'
+     * @throws IOException If the directory can't be listed
+     */
+    List<String> listResources(String directory) throws IOException;
+
+    @Override
+    void close() throws IOException;
+
+    /**
+     * Opens a JAR file or a class directory.
+     *
+     * @param path Path to a JAR file or a directory containing class files
+     * @return The opened source
+     * @throws IOException If the source can't be read
+     */
+    static ClassSource open(Path path) throws IOException {
+        return Files.isDirectory(path) ? ClassDirectory.open(path) : JarArchive.open(path);
+    }
+
+    /**
+     * Opens a class directory, or a JAR file together with the archives nested in it.
+     *
+     * @param path     Path to a JAR file or a directory containing class files
+     * @param executor Executor opening the nested archives
+     * @return The opened source, followed by its nested archives in the order of
+     *         {@link JarArchive#openWithNested(Path, ScanExecutor)}
+     * @throws IOException If the source can't be read
+     */
+    static List<ClassSource> openWithNested(Path path, ScanExecutor executor) throws IOException {
+        if (Files.isDirectory(path)) {
+            Metrics.start(Metrics.Phase.OPEN);
+            try {
+                ClassDirectory directory = ClassDirectory.open(path);
+                Metrics.add(Metrics.Counter.ARCHIVES, 1);
+                return Collections.singletonList(directory);
+            } finally {
+                Metrics.stop(Metrics.Phase.OPEN);
+            }
+        }
+        return new ArrayList<>(JarArchive.openWithNested(path, executor));
+    }
+}
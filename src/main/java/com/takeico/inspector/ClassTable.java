@@ -0,0 +1,141 @@
+package com.takeico.inspector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The classes of an analysis, indexed by the symbol id of their internal name.
+ * Classes are registered from a single thread; once registration is complete the table can be
+ * read from any number of threads. If {@link PlatformClasses} are enabled, the classes of the JDK
+ * can be looked up as well, but they are never part of the analysis.
+ */
+class ClassTable {
+    private final SymbolTable symbols;
+    private ClassInfo[] byNameId = new ClassInfo[0];
+    private final List<ClassInfo> classes = new ArrayList<>();
+    private final PlatformClasses platformClasses;  // Null if not enabled
+
+    public ClassTable() {
+        this(new SymbolTable());
+    }
+
+    public ClassTable(SymbolTable symbols) {
+        this.symbols = symbols;
+        this.platformClasses = PlatformClasses.isEnabled() ? new PlatformClasses(symbols) : null;
+    }
+
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Registers a class. A class registered later replaces an earlier one with the same name.
+     */
+    public void add(ClassInfo classInfo) {
+        if (classInfo.nameId >= byNameId.length) {
+            byNameId = Arrays.copyOf(byNameId, Math.max(classInfo.nameId + 1, symbols.size()));
+        }
+        ClassInfo previous = byNameId[classInfo.nameId];
+        if (previous != null) {
+            classes.set(classes.indexOf(previous), classInfo);
+        } else {
+            classes.add(classInfo);
+        }
+        byNameId[classInfo.nameId] = classInfo;
+    }
+
+    /**
+     * Returns the class with the given name id, or null if it is not part of the analysis.
+     */
+    public ClassInfo get(int nameId) {
+        return nameId >= 0 && nameId < byNameId.length ? byNameId[nameId] : null;
+    }
+
+    /**
+     * Returns the class with the given name id, or else the platform class with that name if platform
+     * classes are enabled, or null.
+     */
+    public ClassInfo lookup(int nameId) {
+        ClassInfo classInfo = get(nameId);
+        if (classInfo == null && platformClasses != null && nameId >= 0) {
+            classInfo = platformClasses.get(nameId);
+        }
+        return classInfo;
+    }
+
+    /**
+     * Returns whether {@link #lookup} finds platform classes.
+     */
+    public boolean hasPlatformClasses() {
+        return platformClasses != null;
+    }
+
+    /**
+     * Returns the class with the given internal name, or null if it is not part of the analysis.
+     */
+    public ClassInfo get(String internalName) {
+        return get(symbols.lookup(internalName));
+    }
+
+    /**
+     * Returns the number of registered classes.
+     */
+    public int size() {
+        return classes.size();
+    }
+
+    /**
+     * Returns all classes in registration order.
+     */
+    public List<ClassInfo> getClasses() {
+        return Collections.unmodifiableList(classes);
+    }
+
+    /**
+     * Returns the key of a member for lookups in a {@link MemberTable}. Members whose name or
+     * descriptor was never interned get a key that no class declares.
+     */
+    public long memberKey(String name, String descriptor) {
+        return SymbolTable.pairKey(symbols.lookup(name), symbols.lookup(descriptor));
+    }
+
+    /**
+     * Returns the dotted name of the class with the given name id.
+     */
+    public String getClassName(int nameId) {
+        ClassInfo classInfo = get(nameId);
+        return classInfo != null ? classInfo.className : symbols.get(nameId).replace('/', '.');
+    }
+
+    /**
+     * Returns the names of the classes in the given referrers of a member, without duplicates and in name order.
+     *
+     * @param referrers Referrers packed as (referring class id, referring method id)
+     */
+    public List<String> getReferrerClassNames(long[] referrers) {
+        int[] classIds = new int[referrers.length];
+        for (int i = 0; i < referrers.length; i++) {
+            classIds[i] = SymbolTable.pairFirst(referrers[i]);
+        }
+        Arrays.sort(classIds);
+
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < classIds.length; i++) {
+            if (i == 0 || classIds[i] != classIds[i - 1]) {
+                names.add(getClassName(classIds[i]));
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * Returns the "name descriptor" key of a referring method from a packed referrer.
+     */
+    public String getReferrerMethodKey(long referrer) {
+        int methodId = SymbolTable.pairSecond(referrer);
+        return symbols.get(symbols.getFirst(methodId)) + " " + symbols.get(symbols.getSecond(methodId));
+    }
+}
@@ -0,0 +1,310 @@
+package com.takeico.inspector;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The dependencies between the classes or packages of an analysis, built from the raw references
+ * of the classes. A class depends on every class of the analysis that it names in a reference; the
+ * references to classes outside the analysis are left out, like in the reverse index.
+ *
+ * The graph is stored in compressed sparse row form: the targets of node i are
+ * {@code targets[offsets[i]]} to {@code targets[offsets[i + 1] - 1]}, sorted and without
+ * duplicates or self-loops. Nodes are the classes in class table order, or the packages in order
+ * of their first class, so even millions of edges take only two int arrays.
+ */
+class DependencyGraph {
+    private final String[] names;  // Dotted class or package names by node
+    private final int[] offsets;
+    private final int[] targets;
+
+    private DependencyGraph(String[] names, int[] offsets, int[] targets) {
+        this.names = names;
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    /**
+     * Builds the dependency graph between the classes of an analysis.
+     */
+    public static DependencyGraph ofClasses(ClassTable classTable) {
+        List<ClassInfo> classes = classTable.getClasses();
+        int classCount = classes.size();
+        int[] indexByNameId = new int[classTable.getSymbols().size()];
+        Arrays.fill(indexByNameId, -1);
+        String[] names = new String[classCount];
+        for (int i = 0; i < classCount; i++) {
+            indexByNameId[classes.get(i).nameId] = i;
+            names[i] = classes.get(i).className;
+        }
+
+        int[] offsets = new int[classCount + 1];
+        int[] targets = new int[Math.max(classCount, 16)];
+        int[] lastSource = new int[classCount];  // Node + 1 of the last source the target was added for
+        int edgeCount = 0;
+        for (int i = 0; i < classCount; i++) {
+            ClassReferences references = classes.get(i).references;
+            if (references != null) {
+                int[] data = references.data();
+                int position = 0;
+                while (position < references.length()) {
+                    int kind = data[position];
+                    int ownerId = data[position + 1];
+                    int target = ownerId < indexByNameId.length ? indexByNameId[ownerId] : -1;
+                    if (target >= 0 && target != i && lastSource[target] != i + 1) {
+                        lastSource[target] = i + 1;
+                        if (edgeCount == targets.length) {
+                            targets = Arrays.copyOf(targets, edgeCount * 2);
+                        }
+                        targets[edgeCount++] = target;
+                    }
+                    position += ClassReferences.recordLength(kind);
+                }
+            }
+            Arrays.sort(targets, offsets[i], edgeCount);
+            offsets[i + 1] = edgeCount;
+        }
+        return new DependencyGraph(names, offsets, Arrays.copyOf(targets, edgeCount));
+    }
+
+    /**
+     * Returns the dependency graph between the packages of the classes of this graph: a package
+     * depends on another one if any of its classes depends on a class of the other one. The classes
+     * without a package form the node {@code (default package)}.
+     */
+    public DependencyGraph toPackages() {
+        // Number the packages in order of their first class
+        int classCount = names.length;
+        int[] packageOf = new int[classCount];
+        Map<String, Integer> packageIndexes = new HashMap<>();
+        List<String> packageNames = new ArrayList<>();
+        for (int i = 0; i < classCount; i++) {
+            int dot = names[i].lastIndexOf('.');
+            String packageName = dot >= 0 ? names[i].substring(0, dot) : "(default package)";
+            Integer index = packageIndexes.get(packageName);
+            if (index == null) {
+                index = packageNames.size();
+                packageIndexes.put(packageName, index);
+                packageNames.add(packageName);
+            }
+            packageOf[i] = index;
+        }
+
+        // Group the classes by package
+        int packageCount = packageNames.size();
+        int[] classOffsets = new int[packageCount + 1];
+        for (int i = 0; i < classCount; i++) {
+            classOffsets[packageOf[i] + 1]++;
+        }
+        for (int p = 0; p < packageCount; p++) {
+            classOffsets[p + 1] += classOffsets[p];
+        }
+        int[] classesByPackage = new int[classCount];
+        int[] next = Arrays.copyOf(classOffsets, packageCount);
+        for (int i = 0; i < classCount; i++) {
+            classesByPackage[next[packageOf[i]]++] = i;
+        }
+
+        int[] packageOffsets = new int[packageCount + 1];
+        int[] packageTargets = new int[Math.max(packageCount, 16)];
+        int[] lastSource = new int[packageCount];
+        int edgeCount = 0;
+        for (int p = 0; p < packageCount; p++) {
+            for (int c = classOffsets[p]; c < classOffsets[p + 1]; c++) {
+                int source = classesByPackage[c];
+                for (int e = offsets[source]; e < offsets[source + 1]; e++) {
+                    int target = packageOf[targets[e]];
+                    if (target != p && lastSource[target] != p + 1) {
+                        lastSource[target] = p + 1;
+                        if (edgeCount == packageTargets.length) {
+                            packageTargets = Arrays.copyOf(packageTargets, edgeCount * 2);
+                        }
+                        packageTargets[edgeCount++] = target;
+                    }
+                }
+            }
+            Arrays.sort(packageTargets, packageOffsets[p], edgeCount);
+            packageOffsets[p + 1] = edgeCount;
+        }
+        return new DependencyGraph(packageNames.toArray(new String[0]), packageOffsets,
+                Arrays.copyOf(packageTargets, edgeCount));
+    }
+
+    public int getNodeCount() {
+        return names.length;
+    }
+
+    public int getEdgeCount() {
+        return targets.length;
+    }
+
+    public String getName(int node) {
+        return names[node];
+    }
+
+    /**
+     * Finds the cycles of the graph: its strongly connected components with more than one node.
+     * Runs Tarjan's algorithm with an explicit stack, so deep dependency chains can't overflow the
+     * thread stack.
+     *
+     * @return The nodes of each cycle in ascending order; the cycles are ordered by their first node
+     */
+    public List<int[]> findCycles() {
+        int nodeCount = names.length;
+        int[] index = new int[nodeCount];
+        Arrays.fill(index, -1);
+        int[] lowLink = new int[nodeCount];
+        boolean[] onStack = new boolean[nodeCount];
+        int[] componentStack = new int[nodeCount];
+        int componentStackSize = 0;
+        int[] callStack = new int[nodeCount];  // Nodes whose edges are being visited
+        int[] nextEdge = new int[nodeCount];  // Position of the next edge to visit of each node on the call stack
+        int nextIndex = 0;
+
+        List<int[]> cycles = new ArrayList<>();
+        for (int root = 0; root < nodeCount; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            int depth = 0;
+            callStack[depth++] = root;
+            index[root] = lowLink[root] = nextIndex++;
+            nextEdge[root] = offsets[root];
+            componentStack[componentStackSize++] = root;
+            onStack[root] = true;
+
+            while (depth > 0) {
+                int node = callStack[depth - 1];
+                if (nextEdge[node] < offsets[node + 1]) {
+                    int target = targets[nextEdge[node]++];
+                    if (index[target] < 0) {
+                        // Descend into the target
+                        callStack[depth++] = target;
+                        index[target] = lowLink[target] = nextIndex++;
+                        nextEdge[target] = offsets[target];
+                        componentStack[componentStackSize++] = target;
+                        onStack[target] = true;
+                    } else if (onStack[target]) {
+                        lowLink[node] = Math.min(lowLink[node], index[target]);
+                    }
+                    continue;
+                }
+
+                // All edges of the node are visited
+                depth--;
+                if (depth > 0) {
+                    int parent = callStack[depth - 1];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+                }
+                if (lowLink[node] == index[node]) {
+                    int start = componentStackSize;
+                    do {
+                        onStack[componentStack[--start]] = false;
+                    } while (componentStack[start] != node);
+                    if (componentStackSize - start > 1) {
+                        int[] cycle = Arrays.copyOfRange(componentStack, start, componentStackSize);
+                        Arrays.sort(cycle);
+                        cycles.add(cycle);
+                    }
+                    componentStackSize = start;
+                }
+            }
+        }
+        cycles.sort((a, b) -> Integer.compare(a[0], b[0]));
+        return cycles;
+    }
+
+    /**
+     * Writes the graph in the DOT language of Graphviz. Each cycle is drawn as a cluster.
+     */
+    public void writeDot(Writer out, List<int[]> cycles) throws IOException {
+        String lineSeparator = System.lineSeparator();
+        out.write("digraph dependencies {");
+        out.write(lineSeparator);
+        for (int node = 0; node < names.length; node++) {
+            out.write("  ");
+            writeDotId(out, names[node]);
+            out.write(';');
+            out.write(lineSeparator);
+        }
+        for (int node = 0; node < names.length; node++) {
+            for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+                out.write("  ");
+                writeDotId(out, names[node]);
+                out.write(" -> ");
+                writeDotId(out, names[targets[e]]);
+                out.write(';');
+                out.write(lineSeparator);
+            }
+        }
+        for (int i = 0; i < cycles.size(); i++) {
+            out.write("  subgraph cluster_cycle_" + i + " {");
+            out.write(lineSeparator);
+            out.write("    label=\"cycle " + (i + 1) + "\"; color=red;");
+            out.write(lineSeparator);
+            for (int node : cycles.get(i)) {
+                out.write("    ");
+                writeDotId(out, names[node]);
+                out.write(';');
+                out.write(lineSeparator);
+            }
+            out.write("  }");
+            out.write(lineSeparator);
+        }
+        out.write('}');
+        out.write(lineSeparator);
+    }
+
+    /**
+     * Writes the graph as a JSON document with the node names, the edges as pairs of node indexes,
+     * and the cycles as arrays of node indexes.
+     */
+    public void writeJson(Writer out, String level, List<int[]> cycles) throws IOException {
+        out.write("{\"level\":");
+        JsonReportWriter.writeString(out, level);
+        out.write(",\"nodes\":[");
+        for (int node = 0; node < names.length; node++) {
+            if (node > 0) {
+                out.write(',');
+            }
+            JsonReportWriter.writeString(out, names[node]);
+        }
+        out.write("],\"edges\":[");
+        boolean first = true;
+        for (int node = 0; node < names.length; node++) {
+            for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+                out.write(first ? "[" : ",[");
+                out.write(Integer.toString(node));
+                out.write(',');
+                out.write(Integer.toString(targets[e]));
+                out.write(']');
+                first = false;
+            }
+        }
+        out.write("],\"cycles\":[");
+        for (int i = 0; i < cycles.size(); i++) {
+            out.write(i > 0 ? ",[" : "[");
+            int[] cycle = cycles.get(i);
+            for (int j = 0; j < cycle.length; j++) {
+                if (j > 0) {
+                    out.write(',');
+                }
+                out.write(Integer.toString(cycle[j]));
+            }
+            out.write(']');
+        }
+        out.write("]}");
+        out.write(System.lineSeparator());
+    }
+
+    private static void writeDotId(Writer out, String name) throws IOException {
+        out.write('"');
+        out.write(name.replace("\\", "\\\\").replace("\"", "\\\""));
+        out.write('"');
+    }
+}
@@ -0,0 +1,274 @@
+package com.takeico.inspector;
+
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Finds the classes that more than one artifact contains, and the packages split across artifacts.
+ * Artifacts are added one at a time and closed again, so hundreds of them can be checked in a single
+ * pass without analyzing their references.
+ *
+ * Each class is fingerprinted by a CRC-32C of its class file together with its size, and by the hash
+ * of its shape ({@link ClassInfo#shapeHash()}), read with a parse that skips the method bodies.
+ * Duplicates are identical if their class files are, and divergent otherwise; divergent duplicates
+ * with different members are the usual cause of a {@link NoSuchMethodError} or {@link NoSuchFieldError}.
+ * The fingerprints are kept in flat arrays and chained by the symbol id of the class name, which
+ * the symbol table hands out densely, so the index is a plain array of chain heads.
+ */
+class DuplicateDetector {
+    private static final String SEPARATOR = "--------------------------------------------------------------------------------";
+    private static final String STATISTICS_SEPARATOR = "================================================================================";
+
+    private final ScanExecutor executor;
+    private final Query query;
+    private final SymbolTable symbols = new SymbolTable();
+    private final List<String> artifactPaths = new ArrayList<>();
+    private int classCount;
+
+    // Fingerprints of the classes, in the order they were added
+    private int[] artifacts = new int[1024];
+    private long[] contentHashes = new long[1024];
+    private long[] shapeHashes = new long[1024];
+    private int[] next = new int[1024];  // The next fingerprint of the same class name, or -1
+    private int[] heads = new int[1024];  // The first fingerprint of each class name id, or -1
+    private int[] tails = new int[1024];  // The last fingerprint of each class name id
+    private int[] names = new int[1024];  // The name ids in order of their first class
+    private int nameCount;
+
+    // The artifacts containing each package, as packed (package name id, artifact) keys
+    private final LongSet packageArtifacts = new LongSet();
+    private int[] packageFirstArtifacts = new int[1024];  // By package name id, or -1
+    private int[] splitPackages = new int[16];  // The name ids of the packages found in a second artifact
+    private int splitPackageCount;
+
+    /**
+     * @param executor Executor fingerprinting the classes of an artifact
+     * @param query    Selects the classes to check by their names
+     */
+    public DuplicateDetector(ScanExecutor executor, Query query) {
+        this.executor = executor;
+        this.query = query;
+        Arrays.fill(heads, -1);
+        Arrays.fill(packageFirstArtifacts, -1);
+    }
+
+    /**
+     * Fingerprints the classes of an artifact and adds them to the index.
+     *
+     * @return false if a class file couldn't be read
+     */
+    public boolean add(ClassSource source) {
+        int artifact = artifactPaths.size();
+        artifactPaths.add(source.getPath().toString());
+        List<? extends ClassSource.Entry> entries = source.getClassEntries();
+        int[] entryNameIds = new int[entries.size()];
+        long[] entryContentHashes = new long[entries.size()];
+        long[] entryShapeHashes = new long[entries.size()];
+        boolean[] failed = new boolean[1];
+
+        Metrics.start(Metrics.Phase.COLLECT);
+        executor.forEach(entries.size(), i -> {
+            entryNameIds[i] = SymbolTable.NONE;
+            ClassSource.Entry entry = entries.get(i);
+            try {
+                long start = Metrics.nanoTime();
+                byte[] bytes = source.read(entry);
+                Metrics.addElapsed(Metrics.Counter.READ_NANOS, start);
+                Metrics.add(Metrics.Counter.CLASS_BYTES, bytes.length);
+
+                CRC32C crc = new CRC32C();
+                crc.update(bytes, 0, bytes.length);
+                entryContentHashes[i] = (long) bytes.length << 32 | crc.getValue();
+
+                start = Metrics.nanoTime();
+                ClassInfoCollector collector = new ClassInfoCollector(symbols);
+                new ClassReader(bytes).accept(collector,
+                        ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+                Metrics.addElapsed(Metrics.Counter.PARSE_NANOS, start);
+                ClassInfo classInfo = collector.getClassInfo();
+                if (classInfo != null) {
+                    entryNameIds[i] = classInfo.nameId;
+                    entryShapeHashes[i] = classInfo.shapeHash();
+                    Metrics.add(Metrics.Counter.CLASSES, 1);
+                }
+            } catch (Exception e) {
+                System.err.println("Error reading class " + entry.getName() + " in " + source.getPath() + ": "
+                        + e.getMessage());
+                failed[0] = true;
+            }
+        });
+        Metrics.stop(Metrics.Phase.COLLECT);
+
+        // Index the classes in entry order; a class listed twice in one artifact counts once
+        for (int i = 0; i < entries.size(); i++) {
+            int nameId = entryNameIds[i];
+            if (nameId == SymbolTable.NONE) {
+                continue;
+            }
+            String name = symbols.get(nameId);
+            if (name.endsWith("module-info") || !query.includesClassName(name.replace('/', '.'))) {
+                continue;
+            }
+            if (nameId < tails.length && heads[nameId] >= 0 && artifacts[tails[nameId]] == artifact) {
+                continue;
+            }
+            addFingerprint(nameId, artifact, entryContentHashes[i], entryShapeHashes[i]);
+            addPackage(name, artifact);
+        }
+        return !failed[0];
+    }
+
+    private void addFingerprint(int nameId, int artifact, long contentHash, long shapeHash) {
+        if (classCount == artifacts.length) {
+            int capacity = classCount * 2;
+            artifacts = Arrays.copyOf(artifacts, capacity);
+            contentHashes = Arrays.copyOf(contentHashes, capacity);
+            shapeHashes = Arrays.copyOf(shapeHashes, capacity);
+            next = Arrays.copyOf(next, capacity);
+        }
+        if (nameId >= heads.length) {
+            int capacity = Math.max(heads.length * 2, nameId + 1);
+            int oldLength = heads.length;
+            heads = Arrays.copyOf(heads, capacity);
+            Arrays.fill(heads, oldLength, capacity, -1);
+            tails = Arrays.copyOf(tails, capacity);
+        }
+
+        int index = classCount++;
+        artifacts[index] = artifact;
+        contentHashes[index] = contentHash;
+        shapeHashes[index] = shapeHash;
+        next[index] = -1;
+        if (heads[nameId] < 0) {
+            heads[nameId] = index;
+            if (nameCount == names.length) {
+                names = Arrays.copyOf(names, nameCount * 2);
+            }
+            names[nameCount++] = nameId;
+        } else {
+            next[tails[nameId]] = index;
+        }
+        tails[nameId] = index;
+    }
+
+    private void addPackage(String className, int artifact) {
+        int slash = className.lastIndexOf('/');
+        int packageId = symbols.intern(slash >= 0 ? className.substring(0, slash) : "");
+        if (packageId >= packageFirstArtifacts.length) {
+            int capacity = Math.max(packageFirstArtifacts.length * 2, packageId + 1);
+            int oldLength = packageFirstArtifacts.length;
+            packageFirstArtifacts = Arrays.copyOf(packageFirstArtifacts, capacity);
+            Arrays.fill(packageFirstArtifacts, oldLength, capacity, -1);
+        }
+        if (packageFirstArtifacts[packageId] < 0) {
+            packageFirstArtifacts[packageId] = artifact;
+        } else if (packageFirstArtifacts[packageId] != artifact
+                && packageArtifacts.add(SymbolTable.pairKey(packageId, artifact))
+                && packageArtifacts.add(SymbolTable.pairKey(packageId, packageFirstArtifacts[packageId]))) {
+            // The package is found in its second artifact
+            if (splitPackageCount == splitPackages.length) {
+                splitPackages = Arrays.copyOf(splitPackages, splitPackageCount * 2);
+            }
+            splitPackages[splitPackageCount++] = packageId;
+        }
+    }
+
+    /**
+     * Writes the duplicate classes in order of their first artifact, then the split packages and the statistics.
+     * The artifacts containing a duplicate class are numbered by the version of the class file they contain.
+     */
+    public void writeReport(Writer out) throws IOException {
+        Metrics.start(Metrics.Phase.REPORT);
+        String lineSeparator = System.lineSeparator();
+        int identicalCount = 0;
+        int differentBytecodeCount = 0;
+        int differentMembersCount = 0;
+        for (int n = 0; n < nameCount; n++) {
+            int head = heads[names[n]];
+            if (next[head] < 0) {
+                continue;
+            }
+
+            boolean identical = true;
+            boolean sameMembers = true;
+            for (int i = next[head]; i >= 0; i = next[i]) {
+                identical &= contentHashes[i] == contentHashes[head];
+                sameMembers &= shapeHashes[i] == shapeHashes[head];
+            }
+            String status;
+            if (identical) {
+                identicalCount++;
+                status = " (identical)";
+            } else if (sameMembers) {
+                differentBytecodeCount++;
+                status = " (different bytecode)";
+            } else {
+                differentMembersCount++;
+                status = " (different members)";
+            }
+
+            out.write(lineSeparator);
+            out.write("Duplicate class: ");
+            out.write(symbols.get(names[n]).replace('/', '.'));
+            out.write(status);
+            out.write(lineSeparator);
+            out.write(SEPARATOR);
+            out.write(lineSeparator);
+            for (int i = head; i >= 0; i = next[i]) {
+                // The version is the number of the first artifact with the same class file
+                int version = 1;
+                for (int j = head; j != i && contentHashes[j] != contentHashes[i]; j = next[j]) {
+                    boolean seen = false;
+                    for (int k = head; k != j; k = next[k]) {
+                        seen |= contentHashes[k] == contentHashes[j];
+                    }
+                    if (!seen) {
+                        version++;
+                    }
+                }
+                out.write("  [" + version + "] ");
+                out.write(artifactPaths.get(artifacts[i]));
+                out.write(lineSeparator);
+            }
+        }
+
+        for (int s = 0; s < splitPackageCount; s++) {
+            int packageId = splitPackages[s];
+            out.write(lineSeparator);
+            out.write("Split package: ");
+            String packageName = symbols.get(packageId);
+            out.write(packageName.isEmpty() ? "(default package)" : packageName.replace('/', '.'));
+            out.write(lineSeparator);
+            out.write(SEPARATOR);
+            out.write(lineSeparator);
+            for (int artifact = 0; artifact < artifactPaths.size(); artifact++) {
+                if (packageArtifacts.contains(SymbolTable.pairKey(packageId, artifact))) {
+                    out.write("  ");
+                    out.write(artifactPaths.get(artifact));
+                    out.write(lineSeparator);
+                }
+            }
+        }
+
+        out.write(lineSeparator);
+        out.write("Duplicate Statistics:");
+        out.write(lineSeparator);
+        out.write(STATISTICS_SEPARATOR);
+        out.write(lineSeparator);
+        out.write("Artifacts: " + artifactPaths.size() + ", classes: " + classCount + ", class names: " + nameCount);
+        out.write(lineSeparator);
+        out.write("Duplicate classes: " + identicalCount + " identical, " + differentBytecodeCount
+                + " with different bytecode, " + differentMembersCount + " with different members");
+        out.write(lineSeparator);
+        out.write("Split packages: " + splitPackageCount);
+        out.write(lineSeparator);
+        out.flush();
+        Metrics.stop(Metrics.Phase.REPORT);
+    }
+}
@@ -0,0 +1,77 @@
+package com.takeico.inspector;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes the {@link DependencyGraph} of an analysis to a file, at class or package level, and lists
+ * its cycles on the standard error.
+ */
+class GraphExport {
+    static final List<String> LEVELS = Arrays.asList("package", "class");
+    static final List<String> FORMATS = Arrays.asList("dot", "json");
+
+    private final String path;
+    private final String level;
+    private final String format;
+
+    /**
+     * @param path   The file to write the graph to
+     * @param level  One of {@link #LEVELS}
+     * @param format One of {@link #FORMATS}
+     */
+    GraphExport(String path, String level, String format) {
+        this.path = path;
+        this.level = level;
+        this.format = format;
+    }
+
+    /**
+     * Builds the dependency graph of the analysis, finds its cycles, and writes it.
+     *
+     * @throws IOException If the graph can't be written
+     */
+    public void write(Analysis analysis) throws IOException {
+        Metrics.start(Metrics.Phase.GRAPH);
+        try {
+            DependencyGraph graph = DependencyGraph.ofClasses(analysis.getClassTable());
+            String kind = "classes";
+            if (level.equals("package")) {
+                graph = graph.toPackages();
+                kind = "packages";
+            }
+            List<int[]> cycles = graph.findCycles();
+
+            try (Writer out = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8)) {
+                if (format.equals("json")) {
+                    graph.writeJson(out, level, cycles);
+                } else {
+                    graph.writeDot(out, cycles);
+                }
+            } catch (IOException e) {
+                throw new IOException("Cannot write the dependency graph to " + path + ": " + e.getMessage(), e);
+            }
+
+            System.err.println("Dependency graph: " + graph.getNodeCount() + " " + kind + ", "
+                    + graph.getEdgeCount() + " dependencies, " + cycles.size() + " cycles");
+            for (int[] cycle : cycles) {
+                StringBuilder line = new StringBuilder("  Cycle of ").append(cycle.length).append(' ')
+                        .append(kind).append(": ");
+                for (int i = 0; i < cycle.length; i++) {
+                    if (i > 0) {
+                        line.append(", ");
+                    }
+                    line.append(graph.getName(cycle[i]));
+                }
+                System.err.println(line);
+            }
+        } finally {
+            Metrics.stop(Metrics.Phase.GRAPH);
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.takeico.inspector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Analyzes the same class path repeatedly, keeping the class table and the reverse index of the
+ * previous run. Only class files whose stamp changed are read again. If the changed classes keep
+ * their name, supertypes, and members, only their own references are retracted from the reverse
+ * index and resolved again, so a single edited class is updated without touching the rest of the
+ * analysis. If classes are added, removed, or change their shape, other classes may resolve their
+ * references differently, so all collected references are resolved again; the unchanged class files
+ * are still not read. With a spill, the references of the replaced and removed classes are released
+ * after each update.
+ */
+class IncrementalAnalyzer {
+    private final Analyzer analyzer;
+    private final ScanExecutor executor;
+    private final ReferenceSpill spill;
+
+    private Analysis analysis;
+    private List<String> paths;
+    private long[][] stamps;  // Stamp of each entry of each artifact of the current analysis
+    private LongSet duplicateNames;  // Name ids of the classes read from more than one entry
+    private ClassReferences[] references;  // References of the collected classes, with a spill
+    private int changedCount;
+
+    /**
+     * @param executor The executor to run the passes on
+     * @param cache    The cache of Step 1 results, or null
+     * @param spill    The spill for the references beyond the memory budget, or null
+     */
+    public IncrementalAnalyzer(ScanExecutor executor, AnalysisCache cache, ReferenceSpill spill) {
+        this.analyzer = new Analyzer(executor, cache, spill);
+        this.executor = executor;
+        this.spill = spill;
+    }
+
+    /**
+     * Analyzes the given sources, reusing the results of the previous call for the class files that didn't change.
+     * The first call, and any call with a different list of source paths, analyzes all class files.
+     *
+     * @param sources The JAR files and class directories, in class path order
+     * @return The updated analysis, or null if no class file changed since the previous call
+     */
+    public Analysis update(List<? extends ClassSource> sources) {
+        return update(sources, false);
+    }
+
+    /**
+     * Analyzes the given sources as a new version of the sources of the previous call, e.g. the next
+     * release of an artifact, reusing the results of the previous call for the class files that didn't
+     * change. The sources are matched with the previous ones by position, and their class files by name.
+     *
+     * @param sources The JAR files and class directories, in class path order
+     * @return The updated analysis, or null if no class file differs from the previous sources
+     */
+    public Analysis updateTo(List<? extends ClassSource> sources) {
+        return update(sources, true);
+    }
+
+    private Analysis update(List<? extends ClassSource> sources, boolean newVersion) {
+        List<String> sourcePaths = new ArrayList<>(sources.size());
+        for (ClassSource source : sources) {
+            sourcePaths.add(source.getPath().toString());
+        }
+        if (analysis == null || (!newVersion && !sourcePaths.equals(paths))) {
+            Analysis result = analyzer.analyze(sources);
+            int[] offsets = Analyzer.entryOffsets(sources);
+            finish(result, sourcePaths, sources, collectedClasses(result, offsets[sources.size()]));
+            changedCount = offsets[sources.size()];
+            return result;
+        }
+
+        SymbolTable symbols = analysis.getClassTable().getSymbols();
+        int[] offsets = Analyzer.entryOffsets(sources);
+        ClassInfo[] collected = new ClassInfo[offsets[sources.size()]];
+        ClassInfo[] previous = new ClassInfo[collected.length];
+        List<Integer> changed = new ArrayList<>();
+        // Whether an entry was added, removed, or moved
+        boolean moved = sources.size() != analysis.getArtifacts().size();
+        for (int artifactIndex = 0; artifactIndex < sources.size(); artifactIndex++) {
+            List<? extends ClassSource.Entry> entries = sources.get(artifactIndex).getClassEntries();
+            if (artifactIndex >= analysis.getArtifacts().size()) {
+                // A new source of a new version
+                for (int i = 0; i < entries.size(); i++) {
+                    changed.add(offsets[artifactIndex] + i);
+                }
+                continue;
+            }
+            Artifact artifact = analysis.getArtifacts().get(artifactIndex);
+            moved |= entries.size() != artifact.entryNames.size();
+
+            Map<String, Integer> oldIndexes = null;
+            for (int i = 0; i < entries.size(); i++) {
+                ClassSource.Entry entry = entries.get(i);
+                int oldIndex = i;
+                if (i >= artifact.entryNames.size() || !artifact.entryNames.get(i).equals(entry.getName())) {
+                    moved = true;
+                    if (oldIndexes == null) {
+                        oldIndexes = new HashMap<>();
+                        for (int j = 0; j < artifact.entryNames.size(); j++) {
+                            oldIndexes.put(artifact.entryNames.get(j), j);
+                        }
+                    }
+                    oldIndex = oldIndexes.getOrDefault(entry.getName(), -1);
+                }
+
+                int index = offsets[artifactIndex] + i;
+                if (oldIndex >= 0) {
+                    previous[index] = artifact.classes[oldIndex];
+                    if (stamps[artifactIndex][oldIndex] == entry.getStamp()) {
+                        collected[index] = previous[index];
+                        continue;
+                    }
+                }
+                changed.add(index);
+            }
+        }
+        changedCount = changed.size();
+        if (changed.isEmpty() && !moved) {
+            return null;
+        }
+
+        // Read the changed class files
+        Metrics.start(Metrics.Phase.COLLECT);
+        boolean[] failed = new boolean[sources.size()];
+        executor.forEach(changed.size(), i -> {
+            int index = changed.get(i);
+            int artifactIndex = Analyzer.findArtifact(offsets, index);
+            ClassSource source = sources.get(artifactIndex);
+            collected[index] = Analyzer.collect(symbols, source,
+                    source.getClassEntries().get(index - offsets[artifactIndex]), artifactIndex, failed);
+            analyzer.offer(collected[index]);
+        });
+        Metrics.stop(Metrics.Phase.COLLECT);
+
+        if (!moved && keepsShape(changed, previous, collected)) {
+            // Replace the references of the changed classes in place
+            Metrics.start(Metrics.Phase.RESOLVE);
+            ReferenceResolver resolver = new ReferenceResolver(analysis.getClassTable());
+            executor.forEach(changed.size(), i -> {
+                ClassInfo classInfo = previous[changed.get(i)];
+                resolver.retract(classInfo.nameId, classInfo.references);
+            });
+            executor.forEach(changed.size(), i -> {
+                int index = changed.get(i);
+                ClassInfo classInfo = previous[index];
+                classInfo.access = collected[index].access;
+                classInfo.references = collected[index].references;
+                collected[index] = classInfo;
+                resolver.resolve(classInfo.nameId, classInfo.references);
+            });
+            Metrics.stop(Metrics.Phase.RESOLVE);
+            Analysis result = analysis;
+            if (!sourcePaths.equals(paths)) {
+                // Same entries in new sources
+                List<Artifact> artifacts = new ArrayList<>(sources.size());
+                for (Artifact artifact : analysis.getArtifacts()) {
+                    artifacts.add(new Artifact(artifact.index, sourcePaths.get(artifact.index), artifact.entryNames,
+                            artifact.classes));
+                }
+                result = new Analysis(analysis.getClassTable(), artifacts);
+            }
+            finish(result, sourcePaths, sources, collected);
+            return result;
+        }
+
+        // Resolve the references of all classes again
+        executor.forEach(collected.length, i -> {
+            if (collected[i] != null) {
+                collected[i].clearReferrers();
+            }
+        });
+        Analysis result = analyzer.link(new ClassTable(symbols), sources, offsets, collected);
+        finish(result, sourcePaths, sources, collected);
+        return result;
+    }
+
+    /**
+     * Returns the current analysis, i.e. the result of the last call that found a change, or null
+     * before the first call.
+     */
+    public Analysis getAnalysis() {
+        return analysis;
+    }
+
+    /**
+     * Returns the number of class files read by the last call of {@link #update(List)}.
+     */
+    public int getChangedCount() {
+        return changedCount;
+    }
+
+    /**
+     * Returns whether all changed classes can be updated in place: each of them replaces a class with
+     * the same name, supertypes, and members that was read from a single entry and is registered in
+     * the class table, so that no other reference resolves differently.
+     */
+    private boolean keepsShape(List<Integer> changed, ClassInfo[] previous, ClassInfo[] collected) {
+        for (int index : changed) {
+            ClassInfo oldInfo = previous[index];
+            ClassInfo newInfo = collected[index];
+            if (oldInfo == null || newInfo == null
+                    || oldInfo.nameId != newInfo.nameId
+                    || oldInfo.superNameId != newInfo.superNameId
+                    || oldInfo.isInterface() != newInfo.isInterface()
+                    || !Arrays.equals(oldInfo.interfaceIds, newInfo.interfaceIds)
+                    || !sameMembers(oldInfo.fields, newInfo.fields)
+                    || !sameMembers(oldInfo.methods, newInfo.methods)
+                    || duplicateNames.contains(oldInfo.nameId)
+                    || analysis.getClassTable().get(oldInfo.nameId) != oldInfo) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameMembers(MemberTable a, MemberTable b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.keyAt(i) != b.keyAt(i) || a.accessAt(i) != b.accessAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void finish(Analysis result, List<String> sourcePaths, List<? extends ClassSource> sources,
+                        ClassInfo[] collected) {
+        analysis = result;
+        paths = sourcePaths;
+        stamps = new long[sources.size()][];
+        for (int artifactIndex = 0; artifactIndex < sources.size(); artifactIndex++) {
+            List<? extends ClassSource.Entry> entries = sources.get(artifactIndex).getClassEntries();
+            stamps[artifactIndex] = new long[entries.size()];
+            for (int i = 0; i < entries.size(); i++) {
+                stamps[artifactIndex][i] = entries.get(i).getStamp();
+            }
+        }
+
+        LongSet names = new LongSet(collected.length);
+        duplicateNames = new LongSet();
+        for (ClassInfo classInfo : collected) {
+            if (classInfo != null && !names.add(classInfo.nameId)) {
+                duplicateNames.add(classInfo.nameId);
+            }
+        }
+
+        if (spill != null) {
+            releaseReferences(collected);
+        }
+    }
+
+    /**
+     * Releases the references of the previous analysis that the collected classes no longer use, and
+     * compacts the spill file once they take up most of it.
+     */
+    private void releaseReferences(ClassInfo[] collected) {
+        ClassReferences[] current = new ClassReferences[collected.length];
+        Set<ClassReferences> used = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < collected.length; i++) {
+            if (collected[i] != null) {
+                current[i] = collected[i].references;
+                used.add(current[i]);
+            }
+        }
+        if (references != null) {
+            for (ClassReferences previous : references) {
+                if (previous != null && !used.contains(previous)) {
+                    spill.release(previous);
+                }
+            }
+        }
+        references = current;
+        spill.compact();
+    }
+
+    private static ClassInfo[] collectedClasses(Analysis analysis, int count) {
+        ClassInfo[] collected = new ClassInfo[count];
+        int index = 0;
+        for (Artifact artifact : analysis.getArtifacts()) {
+            System.arraycopy(artifact.classes, 0, collected, index, artifact.classes.length);
+            index += artifact.classes.length;
+        }
+        return collected;
+    }
+}
@@ -0,0 +1,169 @@
+package com.takeico.inspector;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * The library entry point: analyzes a class path and answers {@link Query queries} about its
+ * classes, members, and references.
+ * <pre>
+ * Inspector inspector = Inspector.analyze(Arrays.asList(Paths.get("app.jar")), 4);
+ * inspector.members(Query.all().inPackage("com.example.api").unreferencedOnly())
+ *         .forEach(member -&gt; System.out.println(member));
+ * inspector.referrers(Query.all().inClass("com.example.Foo").withMember("run"))
+ *         .forEach(System.out::println);
+ * </pre>
+ * Results are streams that are evaluated lazily, so only the classes and members that a query
+ * selects are looked at. Classes are found through an index of the class names in name order,
+ * so a query for a class or a package doesn't visit the other classes.
+ */
+public final class Inspector {
+    private final ClassTable classTable;
+    private final ClassInfo[] classes;  // The classes holding the reference state, in name order
+
+    Inspector(Analysis analysis) {
+        this.classTable = analysis.getClassTable();
+        List<ClassInfo> registered = new ArrayList<>();
+        for (Artifact artifact : analysis.getArtifacts()) {
+            for (ClassInfo classInfo : artifact.classes) {
+                if (classInfo != null && classTable.get(classInfo.nameId) == classInfo) {
+                    registered.add(classInfo);
+                }
+            }
+        }
+        this.classes = registered.toArray(new ClassInfo[0]);
+        Arrays.sort(classes, Comparator.comparing(classInfo -> classInfo.className));
+    }
+
+    /**
+     * Analyzes the given JAR files and class directories, with the archives nested in them,
+     * as one class path.
+     *
+     * @param classpath The JAR files and class directories, in class path order
+     * @param threads   The number of threads to analyze with
+     * @return The inspector of the analysis
+     * @throws IOException If one of the artifacts can't be read
+     */
+    public static Inspector analyze(List<Path> classpath, int threads) throws IOException {
+        List<ClassSource> sources = new ArrayList<>();
+        try (ScanExecutor executor = new ScanExecutor(threads)) {
+            for (Path path : classpath) {
+                sources.addAll(ClassSource.openWithNested(path, executor));
+            }
+            return new Inspector(new Analyzer(executor).analyze(sources));
+        } finally {
+            for (ClassSource source : sources) {
+                source.close();
+            }
+        }
+    }
+
+    /**
+     * Analyzes a JAR file with the archives nested in it and writes its report like the command line,
+     * in one of the formats {@code text}, {@code jsonl}, {@code json}, and {@code binary}; text is
+     * encoded in UTF-8. The report names the JAR file by its file name only, so that it doesn't depend
+     * on where the file is, e.g. when a build cache shares it between machines.
+     *
+     * @param jarFile The JAR file
+     * @param query   Selects the classes and members to report
+     * @param format  The format of the report
+     * @param out     The stream to write the report to; it is closed afterwards
+     * @param threads The number of threads to analyze with
+     * @throws IOException If the JAR file can't be read or the report can't be written
+     */
+    public static void writeReport(Path jarFile, Query query, String format, OutputStream out, int threads)
+            throws IOException {
+        if (!Main.FORMATS.contains(format)) {
+            throw new IllegalArgumentException("Unknown format: " + format);
+        }
+        String jarPath = jarFile.toString();
+        String name = jarFile.getFileName().toString();
+        try (ScanExecutor executor = new ScanExecutor(threads);
+             ReportWriter report = Main.createReportWriter(out, StandardCharsets.UTF_8, format, false)) {
+            Analysis analysis = Main.analyzeJar(jarPath, executor, null, null, null);
+            for (Artifact artifact : analysis.getArtifacts()) {
+                // Nested archives are named after the JAR file, e.g. app.jar!/BOOT-INF/lib/library.jar
+                String path = artifact.path.startsWith(jarPath)
+                        ? name + artifact.path.substring(jarPath.length()) : artifact.path;
+                Main.writeArtifactReport(analysis, new Artifact(artifact.index, path, artifact.entryNames,
+                        artifact.classes), false, query, report);
+            }
+        }
+    }
+
+    /**
+     * Returns the dotted names of the classes selected by the query, in name order. Classes are
+     * selected by their name only; the member criteria of the query are ignored.
+     */
+    public Stream<String> classNames(Query query) {
+        return classes(query).map(classInfo -> classInfo.className);
+    }
+
+    /**
+     * Returns the members selected by the query: the methods and then the fields of each selected
+     * class, classes in name order and members in declaration order.
+     */
+    public Stream<Member> members(Query query) {
+        return classes(query).flatMap(classInfo -> Stream.concat(
+                IntStream.range(0, classInfo.methods.size())
+                        .filter(i -> query.includesMember(classTable.getSymbols(), classInfo.methods.keyAt(i),
+                                classInfo.isMethodReferenced(i)))
+                        .mapToObj(i -> new Member(classTable, classInfo, classInfo.methods.keyAt(i), i, true)),
+                IntStream.range(0, classInfo.fields.size())
+                        .filter(i -> query.includesMember(classTable.getSymbols(), classInfo.fields.keyAt(i),
+                                classInfo.isFieldReferenced(i)))
+                        .mapToObj(i -> new Member(classTable, classInfo, classInfo.fields.keyAt(i), i, false))));
+    }
+
+    /**
+     * Returns the methods referencing the members selected by the query, as listed by {@link Member#getReferrers()}.
+     */
+    public Stream<String> referrers(Query query) {
+        return members(query).flatMap(member -> member.getReferrers().stream());
+    }
+
+    private Stream<ClassInfo> classes(Query query) {
+        if (query.getClassName() != null) {
+            ClassInfo classInfo = classTable.get(query.getClassName().replace('.', '/'));
+            return classInfo != null && query.includesClassName(classInfo.className)
+                    ? Stream.of(classInfo) : Stream.empty();
+        }
+        if (query.getPackageNames().isEmpty()) {
+            return Arrays.stream(classes);
+        }
+        // The ranges of the packages in prefix order follow each other, except that the range of a
+        // subpackage lies within the range of its parent; those classes are visited only once
+        return query.getPackageNames().stream()
+                .map(packageName -> packageName + ".")
+                .sorted()
+                .flatMap(prefix -> Arrays.stream(classes, firstIndex(prefix),
+                        firstIndex(prefix.substring(0, prefix.length() - 1) + "/")))
+                .distinct();
+    }
+
+    /**
+     * Returns the index of the first class whose name is not less than the given name;
+     * '/' follows '.' in the character order, so it bounds the names starting with a package prefix.
+     */
+    private int firstIndex(String name) {
+        int low = 0;
+        int high = classes.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (classes[middle].className.compareTo(name) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,507 @@
+package com.takeico.inspector;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves reports and queries over HTTP on the loopback interface, so that tools calling the
+ * inspector many times, such as commit hooks or an IDE, don't pay for the JVM startup and a full
+ * analysis on every call.
+ *
+ * The analyses of the recently requested artifacts are kept in memory, up to a fixed number of
+ * them; the least recently used analysis is evicted first. A JAR file that hasn't changed its size
+ * or modification time since its analysis is answered without opening it; otherwise it's analyzed
+ * again incrementally, so only the changed class files are read. Class directories are always
+ * checked for changed class files.
+ *
+ * Every request names the artifacts to analyze with one or more {@code jar} parameters; several of
+ * them are analyzed as one class path. The classes and members are selected by a {@link Query} given by
+ * the optional {@code package} (repeatable), {@code class}, {@code member}, {@code descriptor}, and
+ * {@code unused} parameters. The endpoints are:
+ * <ul>
+ *   <li>{@code /report?jar=...&format=...}: the report of the selected classes and members, as written
+ *       by the command line</li>
+ *   <li>{@code /referrers?jar=...&class=...&member=...}: the referrers of the selected members; one line
+ *       per member and referring method</li>
+ *   <li>{@code /unused?jar=...&package=...}: the selected members that are not referenced; one line per member</li>
+ *   <li>{@code /shutdown}: stops the server; POST only</li>
+ * </ul>
+ * Members are written as {@code com.example.Foo#run(I)V} for methods and {@code com.example.Foo#count:I}
+ * for fields. Requests are handled one at a time, since they share the executor.
+ *
+ * Since any process of any user, and any web page in a browser, can connect to the loopback interface,
+ * every request must carry the token of the server as {@code Authorization: Bearer <token>}. The token is
+ * generated at startup and written to a file that only the user running the server can read, and deleted
+ * again when the server stops. Requests whose {@code Host} is not {@code localhost} or a loopback address
+ * are rejected, so that a web page can't reach the server through DNS rebinding. For example:
+ * <pre>
+ * curl -H "Authorization: Bearer $(cat ~/.class-inspector/server-8123.token)" \
+ *     "http://127.0.0.1:8123/unused?jar=/path/to/app.jar"
+ * </pre>
+ */
+class InspectorServer implements AutoCloseable {
+    private static final String BEARER = "Bearer ";
+
+    private final ScanExecutor executor;
+    private final AnalysisCache cache;
+    private final HttpServer server;
+    private final byte[] token;
+    private final Path tokenFile;
+    private final ExecutorService dispatcher;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final Map<List<String>, CachedAnalysis> analyses;
+
+    /**
+     * An analysis with the state to tell whether its artifacts changed.
+     */
+    private static class CachedAnalysis {
+        final IncrementalAnalyzer analyzer;
+        Analysis analysis;
+        Inspector inspector;  // Indexes the analysis for queries; created on the first query
+        List<Object> fingerprint;  // File keys, sizes, and modification times; null if not all are JAR files
+
+        CachedAnalysis(IncrementalAnalyzer analyzer) {
+            this.analyzer = analyzer;
+        }
+
+        Inspector getInspector() {
+            if (inspector == null) {
+                inspector = new Inspector(analysis);
+            }
+            return inspector;
+        }
+    }
+
+    /**
+     * @param port         The port to listen on, or 0 for any free port
+     * @param executor     Executor running the per-class passes
+     * @param cache        The analysis cache, or null
+     * @param maxAnalyses  The maximum number of analyses kept in memory
+     * @param tokenFile    The file to write the token to, or null for {@code server-<port>.token} in the
+     *                     {@code .class-inspector} directory of the user's home directory
+     * @throws IOException If the server can't listen on the port or the token file can't be written
+     */
+    public InspectorServer(int port, ScanExecutor executor, AnalysisCache cache, int maxAnalyses, Path tokenFile)
+            throws IOException {
+        this.executor = executor;
+        this.cache = cache;
+        this.analyses = new LinkedHashMap<List<String>, CachedAnalysis>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<String>, CachedAnalysis> eldest) {
+                return size() > maxAnalyses;
+            }
+        };
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        byte[] randomBytes = new byte[32];
+        new SecureRandom().nextBytes(randomBytes);
+        String tokenString = Base64.getUrlEncoder().withoutPadding().encodeToString(randomBytes);
+        this.token = tokenString.getBytes(StandardCharsets.US_ASCII);
+        this.tokenFile = tokenFile != null ? tokenFile.toAbsolutePath()
+                : Paths.get(System.getProperty("user.home"), ".class-inspector",
+                        "server-" + server.getAddress().getPort() + ".token");
+        try {
+            writeTokenFile(this.tokenFile, tokenString);
+        } catch (IOException e) {
+            server.stop(0);
+            throw new IOException("Cannot write the token file " + this.tokenFile + ": " + e.getMessage(), e);
+        }
+
+        dispatcher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "class-inspector-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(dispatcher);
+        server.createContext("/report", exchange -> handle(exchange, this::report));
+        server.createContext("/referrers", exchange -> handle(exchange, this::referrers));
+        server.createContext("/unused", exchange -> handle(exchange, this::unused));
+        server.createContext("/shutdown", exchange -> {
+            try {
+                if (!checkRequest(exchange)) {
+                    return;
+                }
+                if (!exchange.getRequestMethod().equals("POST")) {
+                    exchange.getResponseHeaders().set("Allow", "POST");
+                    respond(exchange, 405, "Use POST to shut down the server\n");
+                    return;
+                }
+                respond(exchange, 200, "Shutting down\n");
+                stopped.countDown();
+            } finally {
+                exchange.close();
+            }
+        });
+    }
+
+    /**
+     * Writes the token to a file readable only by its owner, replacing the file of an earlier server
+     * on the same port. The file is written next to its final name and moved there, so that a client
+     * never reads a partial token.
+     */
+    private static void writeTokenFile(Path file, String token) throws IOException {
+        boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        Path directory = file.getParent();
+        if (!Files.isDirectory(directory)) {
+            if (posix) {
+                Files.createDirectories(directory,
+                        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } else {
+                Files.createDirectories(directory);
+            }
+        }
+        // Temporary files are readable only by their owner
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporary, (token + "\n").getBytes(StandardCharsets.US_ASCII));
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Returns the file holding the token that clients must send.
+     */
+    public Path getTokenFile() {
+        return tokenFile;
+    }
+
+    /**
+     * Returns the address the server listens on.
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Starts serving requests in the background.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Waits until a client requests the shutdown.
+     */
+    public void awaitShutdown() throws InterruptedException {
+        stopped.await();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        dispatcher.shutdown();
+        try {
+            Files.deleteIfExists(tokenFile);
+        } catch (IOException e) {
+            System.err.println("Warning: Cannot delete the token file " + tokenFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Rejects a request whose Host header names another host than the loopback interface, or that
+     * doesn't carry the token of the server.
+     *
+     * @return Whether the request may be handled; if not, it has been answered
+     */
+    private boolean checkRequest(HttpExchange exchange) throws IOException {
+        String host = exchange.getRequestHeaders().getFirst("Host");
+        if (host == null || !isLoopbackHost(host)) {
+            respond(exchange, 403, "Forbidden host: " + host + "\n");
+            return false;
+        }
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        byte[] presented = authorization != null && authorization.startsWith(BEARER)
+                ? authorization.substring(BEARER.length()).trim().getBytes(StandardCharsets.US_ASCII)
+                : new byte[0];
+        if (!MessageDigest.isEqual(presented, token)) {
+            exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+            respond(exchange, 401, "Missing or wrong token\n");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the value of a Host header, with or without a port, names the loopback interface.
+     */
+    static boolean isLoopbackHost(String host) {
+        String name;
+        if (host.startsWith("[")) {
+            int end = host.indexOf(']');
+            name = end >= 0 ? host.substring(1, end) : host;
+        } else {
+            int colon = host.indexOf(':');
+            name = colon >= 0 ? host.substring(0, colon) : host;
+        }
+        name = name.toLowerCase(Locale.ROOT);
+        return name.equals("localhost") || name.equals("127.0.0.1") || name.equals("::1");
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange, Map<String, List<String>> parameters, CachedAnalysis analysis)
+                throws IOException;
+    }
+
+    /**
+     * Analyzes the artifacts named by a request, or looks up their analysis, and answers the request.
+     */
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        try {
+            if (!checkRequest(exchange)) {
+                return;
+            }
+            Map<String, List<String>> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+            List<String> paths = parameters.get("jar");
+            if (paths == null) {
+                respond(exchange, 400, "Missing parameter: jar\n");
+                return;
+            }
+
+            CachedAnalysis analysis;
+            try {
+                analysis = analyze(paths);
+            } catch (IOException e) {
+                respond(exchange, 404, "Error reading " + String.join(", ", paths) + ": " + e.getMessage() + "\n");
+                return;
+            }
+            handler.handle(exchange, parameters, analysis);
+        } catch (IOException | RuntimeException e) {
+            // The response may have been started already; the client sees a truncated response
+            System.err.println("Error handling " + exchange.getRequestURI() + ": " + e);
+            respond(exchange, 500, "Internal error: " + e + "\n");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Returns the analysis of the given artifacts as one class path, analyzing them if they are not
+     * cached or changed since they were analyzed.
+     */
+    private CachedAnalysis analyze(List<String> paths) throws IOException {
+        List<String> key = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            key.add(Paths.get(path).toAbsolutePath().normalize().toString());
+        }
+        CachedAnalysis cached = analyses.get(key);
+        List<Object> fingerprint = fingerprint(key);
+        if (cached != null && fingerprint != null && fingerprint.equals(cached.fingerprint)) {
+            return cached;
+        }
+        if (cached == null) {
+            cached = new CachedAnalysis(new IncrementalAnalyzer(executor, cache, null));
+        }
+
+        List<ClassSource> sources = new ArrayList<>();
+        try {
+            for (String path : key) {
+                if (!Files.exists(Paths.get(path))) {
+                    throw new IOException("No such file or directory: " + path);
+                }
+                sources.addAll(ClassSource.openWithNested(Paths.get(path), executor));
+            }
+            Analysis updated = cached.analyzer.update(sources);
+            if (updated != null) {
+                cached.analysis = updated;
+                cached.inspector = null;
+            }
+        } catch (IOException | RuntimeException e) {
+            // The analyzer may be left in between two states
+            analyses.remove(key);
+            throw e;
+        } finally {
+            for (ClassSource source : sources) {
+                source.close();
+            }
+        }
+        cached.fingerprint = fingerprint;
+        analyses.put(key, cached);
+        return cached;
+    }
+
+    /**
+     * Returns the file key, size, and modification time of each of the given JAR files,
+     * or null if any of them is not a regular file.
+     */
+    private static List<Object> fingerprint(List<String> paths) {
+        List<Object> fingerprint = new ArrayList<>();
+        for (String path : paths) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(Paths.get(path), BasicFileAttributes.class);
+                if (!attributes.isRegularFile()) {
+                    return null;
+                }
+                fingerprint.add(attributes.fileKey());
+                fingerprint.add(attributes.size());
+                fingerprint.add(attributes.lastModifiedTime());
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return fingerprint;
+    }
+
+    private void report(HttpExchange exchange, Map<String, List<String>> parameters, CachedAnalysis cached)
+            throws IOException {
+        String format = parameter(parameters, "format", "text");
+        if (!Main.FORMATS.contains(format)) {
+            respond(exchange, 400, "Unknown format: " + format + "\n");
+            return;
+        }
+        Query query = query(parameters);
+        exchange.getResponseHeaders().set("Content-Type", contentType(format));
+        exchange.sendResponseHeaders(200, 0);
+        try (ReportWriter report = Main.createReportWriter(exchange.getResponseBody(), StandardCharsets.UTF_8,
+                format, false)) {
+            for (Artifact artifact : cached.analysis.getArtifacts()) {
+                Main.writeArtifactReport(cached.analysis, artifact, false, query, report);
+            }
+        }
+    }
+
+    private void referrers(HttpExchange exchange, Map<String, List<String>> parameters, CachedAnalysis cached)
+            throws IOException {
+        Query query = query(parameters);
+        if (query.getClassName() != null && !cached.getInspector().classNames(query).findAny().isPresent()) {
+            respond(exchange, 404, "Class not found: " + query.getClassName() + "\n");
+            return;
+        }
+        try (Writer out = startText(exchange)) {
+            for (Member member : (Iterable<Member>) cached.getInspector().members(query)::iterator) {
+                for (String referrer : member.getReferrers()) {
+                    out.write(member.toString());
+                    out.write('\t');
+                    out.write(referrer);
+                    out.write('\n');
+                }
+            }
+        }
+    }
+
+    private void unused(HttpExchange exchange, Map<String, List<String>> parameters, CachedAnalysis cached)
+            throws IOException {
+        Query query = query(parameters).unreferencedOnly();
+        try (Writer out = startText(exchange)) {
+            for (Member member : (Iterable<Member>) cached.getInspector().members(query)::iterator) {
+                out.write(member.toString());
+                out.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Returns the query given by the package, class, member, descriptor, and unused parameters of a request.
+     */
+    private static Query query(Map<String, List<String>> parameters) {
+        Query query = Query.all();
+        for (String packageName : parameters.getOrDefault("package", Collections.emptyList())) {
+            query = query.inPackage(packageName);
+        }
+        String className = parameter(parameters, "class", null);
+        if (className != null) {
+            query = query.inClass(className);
+        }
+        String memberName = parameter(parameters, "member", null);
+        if (memberName != null) {
+            String descriptor = parameter(parameters, "descriptor", null);
+            query = descriptor != null ? query.withMember(memberName, descriptor) : query.withMember(memberName);
+        }
+        if (parameters.containsKey("unused")) {
+            query = query.unreferencedOnly();
+        }
+        return query;
+    }
+
+    private static Writer startText(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(200, 0);
+        return new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8),
+                1 << 16);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        try {
+            exchange.sendResponseHeaders(status, body.length);
+        } catch (IOException e) {
+            // The headers were sent already
+            return;
+        }
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String contentType(String format) {
+        switch (format) {
+            case "jsonl":
+                return "application/x-ndjson";
+            case "json":
+                return "application/json";
+            case "binary":
+                return "application/octet-stream";
+            default:
+                return "text/plain; charset=UTF-8";
+        }
+    }
+
+    private static String parameter(Map<String, List<String>> parameters, String name, String defaultValue) {
+        List<String> values = parameters.get(name);
+        return values != null ? values.get(0) : defaultValue;
+    }
+
+    /**
+     * Parses the URL-encoded parameters of a query string; a parameter may occur several times.
+     */
+    static Map<String, List<String>> parseQuery(String query) {
+        Map<String, List<String>> parameters = new HashMap<>();
+        if (query == null) {
+            return parameters;
+        }
+        for (String parameter : query.split("&")) {
+            if (parameter.isEmpty()) {
+                continue;
+            }
+            int equals = parameter.indexOf('=');
+            String name = URLDecoder.decode(equals >= 0 ? parameter.substring(0, equals) : parameter,
+                    StandardCharsets.UTF_8);
+            String value = equals >= 0 ? URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8)
+                    : "";
+            parameters.computeIfAbsent(name, key -> new ArrayList<>()).add(value);
+        }
+        return parameters;
+    }
+}
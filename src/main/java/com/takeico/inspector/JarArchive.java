@@ -0,0 +1,541 @@
+package com.takeico.inspector;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * A read-only view of a JAR (ZIP) file backed by a memory-mapped buffer.
+ * The central directory is parsed once when the archive is opened, and each entry is
+ * inflated straight from the mapped buffer when it is read, so an entry is never
+ * decompressed more than once per read and no per-entry streams are opened.
+ * Entries can be read from several threads at the same time.
+ * Archives nested in a JAR file are read through the same kind of view, backed by a slice of the
+ * outer buffer or by a mapping of a temporary file holding the inflated archive.
+ */
+class JarArchive implements ClassSource {
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    /**
+     * An entry of the central directory.
+     */
+    static class Entry implements ClassSource.Entry {
+        private final String name;
+        private final int method;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        Entry(String name, int method, long crc, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public long getStamp() {
+            return size << 32 | crc;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        public boolean isClassFile() {
+            return name.endsWith(".class") && !isDirectory();
+        }
+
+        /**
+         * Returns whether the entry is an archive itself: a library JAR file, or a WAR or EAR module.
+         */
+        public boolean isArchive() {
+            String lowerCaseName = name.toLowerCase(Locale.ROOT);
+            return lowerCaseName.endsWith(".jar") || lowerCaseName.endsWith(".war") || lowerCaseName.endsWith(".ear");
+        }
+    }
+
+    private final Path path;
+    private final ByteBuffer buffer;
+    private final FileChannel extracted;  // The temporary file of an inflated nested archive, or null
+    private final List<Entry> entries;
+    private final List<Entry> classEntries;
+    private int directoryStart;
+    private int directoryEnd;
+
+    private JarArchive(Path path, ByteBuffer buffer) throws IOException {
+        this(path, buffer, null);
+    }
+
+    private JarArchive(Path path, ByteBuffer buffer, FileChannel extracted) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+        this.extracted = extracted;
+        this.entries = Collections.unmodifiableList(readCentralDirectory());
+
+        // Only process .class files and skip directories
+        List<Entry> classes = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.isClassFile()) {
+                classes.add(entry);
+            }
+        }
+        this.classEntries = Collections.unmodifiableList(classes);
+    }
+
+    /**
+     * Opens and maps the given JAR file.
+     *
+     * @param path Path to the JAR file
+     * @return The opened archive
+     * @throws IOException If the file can't be read or is not a ZIP file
+     */
+    public static JarArchive open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new ZipException("archive larger than 2 GB is not supported: " + path);
+            }
+            // The mapping stays valid after the channel has been closed
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new JarArchive(path, buffer.order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    /**
+     * Opens the given JAR file and, recursively, the archives nested in it, such as the libraries in
+     * {@code BOOT-INF/lib} or {@code WEB-INF/lib} and the modules of an EAR file. The nested archives of
+     * each level are opened in parallel; see {@link #openNested(Entry)}. Nested archives that can't
+     * be read are reported and skipped.
+     *
+     * @param path     Path to the JAR file
+     * @param executor Executor opening the nested archives
+     * @return The archive followed by its nested archives, each nested archive followed by its own,
+     *         in entry order
+     * @throws IOException If the JAR file itself can't be read or is not a ZIP file
+     */
+    public static List<JarArchive> openWithNested(Path path, ScanExecutor executor) throws IOException {
+        Metrics.start(Metrics.Phase.OPEN);
+        try {
+            List<JarArchive> archives = openAll(path, executor);
+            Metrics.add(Metrics.Counter.ARCHIVES, archives.size());
+            return archives;
+        } finally {
+            Metrics.stop(Metrics.Phase.OPEN);
+        }
+    }
+
+    private static List<JarArchive> openAll(Path path, ScanExecutor executor) throws IOException {
+        JarArchive root = open(path);
+        Map<JarArchive, List<JarArchive>> children = new HashMap<>();
+        List<JarArchive> level = Collections.singletonList(root);
+        while (!level.isEmpty()) {
+            List<JarArchive> parents = new ArrayList<>();
+            List<Entry> nestedEntries = new ArrayList<>();
+            for (JarArchive archive : level) {
+                for (Entry entry : archive.entries) {
+                    if (entry.isArchive()) {
+                        parents.add(archive);
+                        nestedEntries.add(entry);
+                    }
+                }
+            }
+
+            JarArchive[] nested = new JarArchive[nestedEntries.size()];
+            executor.forEach(nested.length, i -> {
+                try {
+                    nested[i] = parents.get(i).openNested(nestedEntries.get(i));
+                } catch (IOException e) {
+                    System.err.println("Warning: Ignoring unreadable nested archive " + parents.get(i).path + "!/"
+                            + nestedEntries.get(i).name + ": " + e.getMessage());
+                }
+            });
+
+            List<JarArchive> next = new ArrayList<>();
+            for (int i = 0; i < nested.length; i++) {
+                if (nested[i] != null) {
+                    children.computeIfAbsent(parents.get(i), parent -> new ArrayList<>()).add(nested[i]);
+                    next.add(nested[i]);
+                }
+            }
+            level = next;
+        }
+
+        List<JarArchive> result = new ArrayList<>();
+        addWithNested(root, children, result);
+        return result;
+    }
+
+    private static void addWithNested(JarArchive archive, Map<JarArchive, List<JarArchive>> children,
+                                      List<JarArchive> result) {
+        result.add(archive);
+        for (JarArchive child : children.getOrDefault(archive, Collections.emptyList())) {
+            addWithNested(child, children, result);
+        }
+    }
+
+    /**
+     * Opens an archive nested in this one. A stored entry is used in place: the nested archive is a
+     * slice of the mapped buffer of this archive. A compressed entry is inflated once, in chunks,
+     * into a temporary file that is mapped like a JAR file, so the inflated archives of a WAR or EAR
+     * file are held neither on the heap nor in memory of their own, but in the page cache, which the
+     * system can reclaim. The file is deleted when the nested archive is closed.
+     *
+     * @param entry An entry of this archive
+     * @return The nested archive, whose path is the path of this archive, "!/", and the entry name
+     * @throws IOException If the entry is corrupt or is not a ZIP file
+     */
+    public JarArchive openNested(Entry entry) throws IOException {
+        Path nestedPath = Paths.get(path + "!/" + entry.name);
+        if (entry.size > Integer.MAX_VALUE - 8) {
+            throw new ZipException("nested archive too large: " + entry.name);
+        }
+        ByteBuffer data = slice(dataOffset(entry), entry.compressedSize);
+        if (entry.method == STORED) {
+            if (entry.compressedSize != entry.size) {
+                throw new ZipException("invalid stored entry size: " + entry.name);
+            }
+            return new JarArchive(nestedPath, data.order(ByteOrder.LITTLE_ENDIAN));
+        }
+
+        if (entry.method != DEFLATED) {
+            throw new ZipException("unsupported compression method " + entry.method + ": " + entry.name);
+        }
+        FileChannel file = FileChannel.open(Files.createTempFile("class-inspector-", ".jar"),
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        try {
+            extract(entry, data, file);
+            ByteBuffer contents = file.map(FileChannel.MapMode.READ_ONLY, 0, entry.size);
+            return new JarArchive(nestedPath, contents.order(ByteOrder.LITTLE_ENDIAN), file);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Inflates the compressed data of a nested archive into a file, one chunk at a time.
+     */
+    private static void extract(Entry entry, ByteBuffer data, FileChannel file) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+            long written = 0;
+            while (written < entry.size) {
+                chunk.clear().limit((int) Math.min(chunk.capacity(), entry.size - written));
+                int n = inflater.inflate(chunk);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                chunk.flip();
+                while (chunk.hasRemaining()) {
+                    written += file.write(chunk, written);
+                }
+            }
+            if (written != entry.size) {
+                throw new ZipException("invalid entry size (expected " + entry.size + " but got "
+                        + written + " bytes): " + entry.name);
+            }
+            Metrics.add(Metrics.Counter.INFLATED_BYTES, written);
+        } catch (DataFormatException e) {
+            throw new ZipException("invalid compressed data in " + entry.name + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns a SHA-256 digest of the central directory. The central directory holds the name,
+     * CRC-32 and sizes of every entry, so the digest changes whenever the contents of the archive
+     * change, and it is much cheaper to compute than a digest of the whole file.
+     */
+    public byte[] getFingerprint() {
+        ByteBuffer directory = buffer.duplicate();
+        directory.position(directoryStart).limit(directoryEnd);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(directory);
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Returns all entries in central directory order, which is the order used by {@link java.util.jar.JarFile}.
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    @Override
+    public byte[] readResource(String name) throws IOException {
+        for (Entry entry : entries) {
+            if (entry.name.equals(name) && !entry.isDirectory()) {
+                return read(entry);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<String> listResources(String directory) {
+        List<String> names = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.name.startsWith(directory) && entry.name.indexOf('/', directory.length()) < 0
+                    && entry.name.length() > directory.length()) {
+                names.add(entry.name);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Returns the class file entries in central directory order.
+     */
+    @Override
+    public List<Entry> getClassEntries() {
+        return classEntries;
+    }
+
+    /**
+     * Reads and, if necessary, inflates the contents of the given entry.
+     *
+     * @param classEntry An entry of this archive
+     * @return The uncompressed contents
+     * @throws IOException If the entry is corrupt or uses an unsupported compression method
+     */
+    @Override
+    public byte[] read(ClassSource.Entry classEntry) throws IOException {
+        Entry entry = (Entry) classEntry;
+        if (entry.size > Integer.MAX_VALUE - 8) {
+            throw new ZipException("entry too large: " + entry.name);
+        }
+        ByteBuffer data = slice(dataOffset(entry), entry.compressedSize);
+        byte[] bytes = new byte[(int) entry.size];
+
+        if (entry.method == STORED) {
+            if (entry.compressedSize != entry.size) {
+                throw new ZipException("invalid stored entry size: " + entry.name);
+            }
+            data.get(bytes);
+            return bytes;
+        }
+        inflate(entry, data, ByteBuffer.wrap(bytes));
+        return bytes;
+    }
+
+    /**
+     * Inflates the compressed data of an entry until the output buffer is full.
+     *
+     * @param entry  The entry, for its compression method and for error messages
+     * @param data   The compressed data
+     * @param output A buffer with exactly the uncompressed size of the entry remaining
+     */
+    private static void inflate(Entry entry, ByteBuffer data, ByteBuffer output) throws ZipException {
+        if (entry.method != DEFLATED) {
+            throw new ZipException("unsupported compression method " + entry.method + ": " + entry.name);
+        }
+
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            int expected = output.remaining();
+            while (output.hasRemaining()) {
+                int n = inflater.inflate(output);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+            }
+            if (output.hasRemaining()) {
+                throw new ZipException("invalid entry size (expected " + expected + " but got "
+                        + (expected - output.remaining()) + " bytes): " + entry.name);
+            }
+            Metrics.add(Metrics.Counter.INFLATED_BYTES, expected);
+        } catch (DataFormatException e) {
+            throw new ZipException("invalid compressed data in " + entry.name + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Deletes the temporary file of an inflated nested archive. Mappings are unmapped when their
+     * buffers are collected; entries must not be read after the archive is closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (extracted != null) {
+            extracted.close();
+        }
+    }
+
+    private long dataOffset(Entry entry) throws ZipException {
+        long offset = entry.localHeaderOffset;
+        if (offset < 0 || offset + LOCAL_HEADER_SIZE > buffer.limit()
+                || buffer.getInt((int) offset) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("invalid local header: " + entry.name);
+        }
+        int nameLength = Short.toUnsignedInt(buffer.getShort((int) offset + 26));
+        int extraLength = Short.toUnsignedInt(buffer.getShort((int) offset + 28));
+        return offset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+    }
+
+    private ByteBuffer slice(long offset, long length) throws ZipException {
+        if (offset < 0 || length < 0 || offset + length > buffer.limit()) {
+            throw new ZipException("entry data out of bounds in " + path);
+        }
+        ByteBuffer view = buffer.duplicate();
+        view.position((int) offset).limit((int) (offset + length));
+        return view.slice();
+    }
+
+    private List<Entry> readCentralDirectory() throws IOException {
+        int end = findEndHeader();
+        long count = Short.toUnsignedInt(buffer.getShort(end + 10));
+        long directorySize = Integer.toUnsignedLong(buffer.getInt(end + 12));
+        long directoryOffset = Integer.toUnsignedLong(buffer.getInt(end + 16));
+        long directoryEnd = end;
+
+        int locator = end - ZIP64_LOCATOR_SIZE;
+        if (locator >= 0 && buffer.getInt(locator) == ZIP64_LOCATOR_SIGNATURE) {
+            long zip64End = buffer.getLong(locator + 8);
+            if (zip64End >= 0 && zip64End + 56 <= locator && buffer.getInt((int) zip64End) == ZIP64_END_SIGNATURE) {
+                count = buffer.getLong((int) zip64End + 32);
+                directorySize = buffer.getLong((int) zip64End + 40);
+                directoryOffset = buffer.getLong((int) zip64End + 48);
+                directoryEnd = zip64End;
+            }
+        }
+
+        // Archives with a prepended launcher script have offsets relative to the start of the ZIP data
+        long base = directoryEnd - directorySize - directoryOffset;
+        if (base < 0 || count < 0 || count > directorySize / CENTRAL_HEADER_SIZE) {
+            throw new ZipException("invalid central directory in " + path);
+        }
+
+        List<Entry> result = new ArrayList<>((int) count);
+        int position = (int) (base + directoryOffset);
+        this.directoryStart = position;
+        for (long i = 0; i < count; i++) {
+            if (position + CENTRAL_HEADER_SIZE > directoryEnd || buffer.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("invalid central directory header in " + path);
+            }
+            int method = Short.toUnsignedInt(buffer.getShort(position + 10));
+            long crc = Integer.toUnsignedLong(buffer.getInt(position + 16));
+            long compressedSize = Integer.toUnsignedLong(buffer.getInt(position + 20));
+            long size = Integer.toUnsignedLong(buffer.getInt(position + 24));
+            int nameLength = Short.toUnsignedInt(buffer.getShort(position + 28));
+            int extraLength = Short.toUnsignedInt(buffer.getShort(position + 30));
+            int commentLength = Short.toUnsignedInt(buffer.getShort(position + 32));
+            long localHeaderOffset = Integer.toUnsignedLong(buffer.getInt(position + 42));
+            if ((long) position + CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength > directoryEnd) {
+                throw new ZipException("invalid central directory header in " + path);
+            }
+
+            byte[] nameBytes = new byte[nameLength];
+            ByteBuffer nameView = buffer.duplicate();
+            nameView.position(position + CENTRAL_HEADER_SIZE);
+            nameView.get(nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+            // ZIP64 extended information replaces the fields that are set to 0xFFFFFFFF
+            if (size == 0xFFFFFFFFL || compressedSize == 0xFFFFFFFFL || localHeaderOffset == 0xFFFFFFFFL) {
+                int extra = position + CENTRAL_HEADER_SIZE + nameLength;
+                int extraEnd = extra + extraLength;
+                while (extra + 4 <= extraEnd) {
+                    int id = Short.toUnsignedInt(buffer.getShort(extra));
+                    int length = Short.toUnsignedInt(buffer.getShort(extra + 2));
+                    int fieldEnd = extra + 4 + length;
+                    if (fieldEnd > extraEnd) {
+                        throw new ZipException("invalid central directory header in " + path);
+                    }
+                    if (id == ZIP64_EXTRA_ID) {
+                        int field = extra + 4;
+                        if (size == 0xFFFFFFFFL && field + 8 <= fieldEnd) {
+                            size = buffer.getLong(field);
+                            field += 8;
+                        }
+                        if (compressedSize == 0xFFFFFFFFL && field + 8 <= fieldEnd) {
+                            compressedSize = buffer.getLong(field);
+                            field += 8;
+                        }
+                        if (localHeaderOffset == 0xFFFFFFFFL && field + 8 <= fieldEnd) {
+                            localHeaderOffset = buffer.getLong(field);
+                        }
+                        break;
+                    }
+                    extra = fieldEnd;
+                }
+            }
+
+            result.add(new Entry(name, method, crc, compressedSize, size, base + localHeaderOffset));
+            position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        this.directoryEnd = position;
+        return result;
+    }
+
+    private int findEndHeader() throws ZipException {
+        // The end header is followed by a comment of at most 65535 bytes
+        int limit = Math.max(0, buffer.limit() - END_HEADER_SIZE - 0xFFFF);
+        for (int position = buffer.limit() - END_HEADER_SIZE; position >= limit; position--) {
+            if (buffer.getInt(position) == END_SIGNATURE
+                    && position + END_HEADER_SIZE + Short.toUnsignedInt(buffer.getShort(position + 20)) <= buffer.limit()) {
+                return position;
+            }
+        }
+        throw new ZipException("zip END header not found");
+    }
+}
@@ -0,0 +1,315 @@
+package com.takeico.inspector;
+
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares two versions of an artifact, e.g. two releases of a JAR file, and writes the added,
+ * removed, and changed classes and members, and the members that became referenced or unreferenced.
+ *
+ * Each class is fingerprinted by the stamp of its entry, i.e. the CRC-32 and size of an archive
+ * entry, and by the hash of its shape ({@link ClassInfo#shapeHash()}). The new version is analyzed
+ * by an {@link IncrementalAnalyzer} on top of the old one, so class files with an unchanged stamp are
+ * not read again, and as long as no class changes its shape only the references of the changed classes
+ * are resolved again. Only the reference state of the old version is copied before that.
+ */
+class JarDiff {
+    private static final String SEPARATOR = "--------------------------------------------------------------------------------";
+    private static final String STATISTICS_SEPARATOR = "================================================================================";
+
+    // Indexes of the statistics: classes are added, removed, changed, or unchanged; members are added,
+    // removed, newly referenced, or newly unreferenced
+    private static final int ADDED = 0;
+    private static final int REMOVED = 1;
+    private static final int CHANGED = 2;
+    private static final int UNCHANGED = 3;
+    private static final int NOW_LIVE = 2;
+    private static final int NOW_DEAD = 3;
+
+    private final ScanExecutor executor;
+    private final IncrementalAnalyzer analyzer;
+    private final List<String> entryPatterns;
+    private final Query query;
+    private final String lineSeparator = System.lineSeparator();
+
+    private final int[] classCounts = new int[4];
+    private final int[] methodCounts = new int[4];
+    private final int[] fieldCounts = new int[4];
+
+    private Writer out;
+    private String pendingClassHeader;  // Header of an unchanged class, written before its first changed member
+
+    /**
+     * The fingerprint and the reference state of a class of one version.
+     */
+    private static final class ClassState {
+        final ClassInfo classInfo;  // Its name and members stay the same when the next version is analyzed
+        final long stamp;
+        final long shapeHash;
+        final boolean[] liveMethods;
+        final boolean[] liveFields;
+
+        ClassState(ClassInfo classInfo, long stamp, boolean reachability) {
+            this.classInfo = classInfo;
+            this.stamp = stamp;
+            this.shapeHash = classInfo.shapeHash();
+            liveMethods = new boolean[classInfo.methods.size()];
+            for (int i = 0; i < liveMethods.length; i++) {
+                liveMethods[i] = reachability ? classInfo.isMethodReachable(i) : classInfo.isMethodReferenced(i);
+            }
+            liveFields = new boolean[classInfo.fields.size()];
+            for (int i = 0; i < liveFields.length; i++) {
+                liveFields[i] = reachability ? classInfo.isFieldReachable(i) : classInfo.isFieldReferenced(i);
+            }
+        }
+    }
+
+    /**
+     * The classes of one version, each the class holding the reference state of its name.
+     */
+    private static final class Version {
+        final List<ClassState> classes = new ArrayList<>();  // In class path and entry order
+        final ClassState[] byNameId;
+
+        Version(int symbolCount) {
+            byNameId = new ClassState[symbolCount];
+        }
+
+        ClassState get(int nameId) {
+            return nameId < byNameId.length ? byNameId[nameId] : null;
+        }
+    }
+
+    /**
+     * @param executor      Executor running the per-class passes
+     * @param cache         The analysis cache, or null
+     * @param entryPatterns The user-supplied entry points of the reachability analysis, or null to compare
+     *                      references instead of reachability
+     * @param query         Selects the classes to compare by their names
+     */
+    public JarDiff(ScanExecutor executor, AnalysisCache cache, List<String> entryPatterns, Query query) {
+        this.executor = executor;
+        this.analyzer = new IncrementalAnalyzer(executor, cache, null);
+        this.entryPatterns = entryPatterns;
+        this.query = query;
+    }
+
+    /**
+     * Compares two versions of a JAR file or class directory, each analyzed together with its nested archives.
+     *
+     * @param oldPath Path to the old version
+     * @param newPath Path to the new version
+     * @param out     The writer to write the differences to; it should be buffered
+     * @throws IOException If there's an error reading one of the versions or writing the differences
+     */
+    public void compare(String oldPath, String newPath, Writer out) throws IOException {
+        this.out = out;
+        Version oldVersion = analyze(oldPath, false);
+        Version newVersion = analyze(newPath, true);
+        SymbolTable symbols = analyzer.getAnalysis().getClassTable().getSymbols();
+
+        Metrics.start(Metrics.Phase.REPORT);
+        out.write("Comparing ");
+        out.write(oldPath);
+        out.write(" with ");
+        out.write(newPath);
+        out.write(":");
+        out.write(lineSeparator);
+
+        for (ClassState current : newVersion.classes) {
+            if (!query.includesClassName(current.classInfo.className)) {
+                continue;
+            }
+            ClassState old = oldVersion.get(current.classInfo.nameId);
+            if (old == null) {
+                classCounts[ADDED]++;
+                methodCounts[ADDED] += current.liveMethods.length;
+                fieldCounts[ADDED] += current.liveFields.length;
+                startClass(current.classInfo, " (added)");
+                continue;
+            }
+
+            boolean changed = old.stamp != current.stamp || old.shapeHash != current.shapeHash;
+            classCounts[changed ? CHANGED : UNCHANGED]++;
+            startClass(current.classInfo, changed ? " (changed)" : null);
+            writeMemberChanges(old, current, true, symbols);
+            writeMemberChanges(old, current, false, symbols);
+            pendingClassHeader = null;
+        }
+
+        for (ClassState old : oldVersion.classes) {
+            if (newVersion.get(old.classInfo.nameId) == null
+                    && query.includesClassName(old.classInfo.className)) {
+                classCounts[REMOVED]++;
+                methodCounts[REMOVED] += old.liveMethods.length;
+                fieldCounts[REMOVED] += old.liveFields.length;
+                startClass(old.classInfo, " (removed)");
+            }
+        }
+
+        writeStatistics();
+        out.flush();
+        Metrics.stop(Metrics.Phase.REPORT);
+    }
+
+    /**
+     * Analyzes a version and copies the state of its classes.
+     */
+    private Version analyze(String path, boolean newVersion) throws IOException {
+        List<ClassSource> sources = new ArrayList<>();
+        try {
+            try {
+                sources.addAll(ClassSource.openWithNested(Paths.get(path), executor));
+            } catch (IOException e) {
+                throw new IOException(path + ": " + e.getMessage(), e);
+            }
+
+            Analysis analysis = newVersion ? analyzer.updateTo(sources) : analyzer.update(sources);
+            if (analysis == null) {
+                // No class file differs from the old version
+                analysis = analyzer.getAnalysis();
+            } else if (entryPatterns != null) {
+                Main.findReachableCode(analysis, sources, entryPatterns);
+            }
+
+            ClassTable classTable = analysis.getClassTable();
+            Version version = new Version(classTable.getSymbols().size());
+            for (Artifact artifact : analysis.getArtifacts()) {
+                List<? extends ClassSource.Entry> entries = sources.get(artifact.index).getClassEntries();
+                for (int i = 0; i < artifact.classes.length; i++) {
+                    ClassInfo classInfo = artifact.classes[i];
+                    if (classInfo != null && classTable.get(classInfo.nameId) == classInfo) {
+                        ClassState state = new ClassState(classInfo, entries.get(i).getStamp(), entryPatterns != null);
+                        version.classes.add(state);
+                        version.byNameId[classInfo.nameId] = state;
+                    }
+                }
+            }
+            return version;
+        } finally {
+            for (ClassSource source : sources) {
+                source.close();
+            }
+        }
+    }
+
+    /**
+     * Writes the changed methods or fields of a class that exists in both versions.
+     */
+    private void writeMemberChanges(ClassState old, ClassState current, boolean methods, SymbolTable symbols)
+            throws IOException {
+        MemberTable oldMembers = methods ? old.classInfo.methods : old.classInfo.fields;
+        MemberTable newMembers = methods ? current.classInfo.methods : current.classInfo.fields;
+        boolean[] oldLive = methods ? old.liveMethods : old.liveFields;
+        boolean[] newLive = methods ? current.liveMethods : current.liveFields;
+        int[] counts = methods ? methodCounts : fieldCounts;
+        String kind = methods ? "methods" : "fields";
+        boolean sameShape = old.shapeHash == current.shapeHash;
+
+        // Map the members of the new version to those of the old version
+        int[] oldIndexes = new int[newMembers.size()];
+        for (int i = 0; i < oldIndexes.length; i++) {
+            long key = newMembers.keyAt(i);
+            oldIndexes[i] = sameShape && i < oldMembers.size() && oldMembers.keyAt(i) == key
+                    ? i : oldMembers.indexOf(key);
+        }
+
+        String section = "  Added " + kind + ":";
+        for (int i = 0; i < oldIndexes.length; i++) {
+            if (oldIndexes[i] < 0) {
+                counts[ADDED]++;
+                section = writeMember(section, newMembers.keyAt(i), newLive[i], methods, symbols);
+            }
+        }
+        if (!sameShape) {
+            section = "  Removed " + kind + ":";
+            for (int i = 0; i < oldMembers.size(); i++) {
+                if (newMembers.indexOf(oldMembers.keyAt(i)) < 0) {
+                    counts[REMOVED]++;
+                    section = writeMember(section, oldMembers.keyAt(i), oldLive[i], methods, symbols);
+                }
+            }
+        }
+        String live = entryPatterns != null ? "reachable" : "referenced";
+        section = "  Newly " + live + " " + kind + ":";
+        for (int i = 0; i < oldIndexes.length; i++) {
+            if (oldIndexes[i] >= 0 && newLive[i] && !oldLive[oldIndexes[i]]) {
+                counts[NOW_LIVE]++;
+                section = writeMember(section, newMembers.keyAt(i), true, methods, symbols);
+            }
+        }
+        section = "  Newly " + (entryPatterns != null ? "unreachable " : "unreferenced ") + kind + ":";
+        for (int i = 0; i < oldIndexes.length; i++) {
+            if (oldIndexes[i] >= 0 && !newLive[i] && oldLive[oldIndexes[i]]) {
+                counts[NOW_DEAD]++;
+                section = writeMember(section, newMembers.keyAt(i), false, methods, symbols);
+            }
+        }
+    }
+
+    /**
+     * Writes a member, preceded by the pending class header and the given section header if they
+     * haven't been written yet.
+     *
+     * @return null, as the section header has been written
+     */
+    private String writeMember(String section, long key, boolean live, boolean method, SymbolTable symbols)
+            throws IOException {
+        if (pendingClassHeader != null) {
+            out.write(pendingClassHeader);
+            pendingClassHeader = null;
+        }
+        if (section != null) {
+            out.write(section);
+            out.write(lineSeparator);
+        }
+        out.write(live ? "    ✓ " : "    ✗ ");
+        if (method) {
+            TextReportWriter.writeMethod(out, symbols, key);
+        } else {
+            TextReportWriter.writeField(out, symbols, key);
+        }
+        out.write(lineSeparator);
+        return null;
+    }
+
+    /**
+     * Writes the header of a class with the given status. The header of a class without a status,
+     * whose class file is unchanged, is kept pending until the first member whose reference state changed.
+     */
+    private void startClass(ClassInfo classInfo, String status) throws IOException {
+        String header = lineSeparator
+                + ((classInfo.access & Opcodes.ACC_INTERFACE) != 0 ? "Interface: " : "Class: ")
+                + classInfo.className + (status != null ? status : "") + lineSeparator
+                + SEPARATOR + lineSeparator;
+        if (status != null) {
+            out.write(header);
+        } else {
+            pendingClassHeader = header;
+        }
+    }
+
+    private void writeStatistics() throws IOException {
+        String live = entryPatterns != null ? "reachable" : "referenced";
+        String dead = entryPatterns != null ? "unreachable" : "unreferenced";
+        out.write(lineSeparator);
+        out.write("Diff Statistics:");
+        out.write(lineSeparator);
+        out.write(STATISTICS_SEPARATOR);
+        out.write(lineSeparator);
+        out.write("Classes: " + classCounts[ADDED] + " added, " + classCounts[REMOVED] + " removed, "
+                + classCounts[CHANGED] + " changed, " + classCounts[UNCHANGED] + " unchanged");
+        out.write(lineSeparator);
+        out.write("Methods: " + methodCounts[ADDED] + " added, " + methodCounts[REMOVED] + " removed, "
+                + methodCounts[NOW_LIVE] + " newly " + live + ", " + methodCounts[NOW_DEAD] + " newly " + dead);
+        out.write(lineSeparator);
+        out.write("Fields: " + fieldCounts[ADDED] + " added, " + fieldCounts[REMOVED] + " removed, "
+                + fieldCounts[NOW_LIVE] + " newly " + live + ", " + fieldCounts[NOW_DEAD] + " newly " + dead);
+        out.write(lineSeparator);
+    }
+}
@@ -0,0 +1,228 @@
+package com.takeico.inspector;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes the report as JSON, in one of two layouts.
+ *
+ * As JSON Lines, every JAR file, class, member, and statistics block is a record of its own line,
+ * so the report can be processed line by line:
+ * <pre>
+ * {"type":"jar","path":"app.jar"}
+ * {"type":"class","name":"com.example.Foo","interface":false,"superclass":"java.lang.Object"}
+ * {"type":"method","class":"com.example.Foo","name":"run","descriptor":"()V","referenced":true,"referrers":["com.example.Main"]}
+ * {"type":"field","class":"com.example.Foo","name":"count","descriptor":"I","referenced":false,"referrers":[]}
+ * {"type":"statistics","path":"app.jar","classes":1,"methods":1,"referencedMethods":1,"fields":1,"referencedFields":0}
+ * </pre>
+ *
+ * As a JSON document, the same records are nested:
+ * {@code {"jars":[{"path":...,"classes":[{"name":...,"methods":[...],"fields":[...]}],"statistics":{...}}]}}.
+ * The document is still written as the classes are visited; it is complete once the writer is closed.
+ *
+ * In reachability mode, classes and members carry a "reachable" flag, and the statistics count
+ * "reachableMethods" and "reachableFields" instead of the referenced ones.
+ */
+class JsonReportWriter extends RecordReportWriter {
+    private final Writer out;
+    private final boolean lines;
+
+    // State of the JSON document layout
+    private String jarPath;
+    private boolean documentStarted;
+    private boolean firstJar = true;
+    private boolean firstClass;
+    private boolean inFields;
+    private boolean firstMember;
+
+    /**
+     * @param out          The writer to write the report to; it should be buffered and encode UTF-8
+     * @param lines        Whether to write JSON Lines instead of a single JSON document
+     * @param reachability Whether the records include the reachability of classes and members
+     */
+    public JsonReportWriter(Writer out, boolean lines, boolean reachability) {
+        super(reachability);
+        this.out = out;
+        this.lines = lines;
+    }
+
+    @Override
+    public void startJar(String jarPath) throws IOException {
+        this.jarPath = jarPath;
+        if (lines) {
+            out.write("{\"type\":\"jar\",\"path\":");
+            writeString(out, jarPath);
+            out.write("}\n");
+            return;
+        }
+
+        startDocument();
+        out.write(firstJar ? "\n{\"path\":" : ",\n{\"path\":");
+        writeString(out, jarPath);
+        out.write(",\"classes\":[");
+        firstJar = false;
+        firstClass = true;
+    }
+
+    @Override
+    protected void startClass(String className, boolean isInterface, String superclassName, boolean reachable)
+            throws IOException {
+        if (lines) {
+            out.write("{\"type\":\"class\",\"name\":");
+        } else {
+            out.write(firstClass ? "\n{\"name\":" : ",\n{\"name\":");
+            firstClass = false;
+        }
+        writeString(out, className);
+        out.write(isInterface ? ",\"interface\":true" : ",\"interface\":false");
+        if (superclassName != null) {
+            out.write(",\"superclass\":");
+            writeString(out, superclassName);
+        }
+        if (reachability) {
+            out.write(reachable ? ",\"reachable\":true" : ",\"reachable\":false");
+        }
+        if (lines) {
+            out.write("}\n");
+        } else {
+            out.write(",\"methods\":[");
+            inFields = false;
+            firstMember = true;
+        }
+    }
+
+    @Override
+    protected void writeMethod(String className, String name, String descriptor, boolean referenced,
+                               boolean reachable, List<String> referrers) throws IOException {
+        writeMember("method", className, name, descriptor, referenced, reachable, referrers);
+    }
+
+    @Override
+    protected void writeField(String className, String name, String descriptor, boolean referenced,
+                              boolean reachable, List<String> referrers) throws IOException {
+        if (!lines && !inFields) {
+            out.write("],\"fields\":[");
+            inFields = true;
+            firstMember = true;
+        }
+        writeMember("field", className, name, descriptor, referenced, reachable, referrers);
+    }
+
+    private void writeMember(String type, String className, String name, String descriptor, boolean referenced,
+                             boolean reachable, List<String> referrers) throws IOException {
+        if (lines) {
+            out.write("{\"type\":\"");
+            out.write(type);
+            out.write("\",\"class\":");
+            writeString(out, className);
+            out.write(",\"name\":");
+        } else {
+            out.write(firstMember ? "{\"name\":" : ",{\"name\":");
+            firstMember = false;
+        }
+        writeString(out, name);
+        out.write(",\"descriptor\":");
+        writeString(out, descriptor);
+        out.write(referenced ? ",\"referenced\":true" : ",\"referenced\":false");
+        if (reachability) {
+            out.write(reachable ? ",\"reachable\":true" : ",\"reachable\":false");
+        }
+        out.write(",\"referrers\":[");
+        for (int i = 0; i < referrers.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            writeString(out, referrers.get(i));
+        }
+        out.write(lines ? "]}\n" : "]}");
+    }
+
+    @Override
+    protected void endClass() throws IOException {
+        if (!lines) {
+            out.write(inFields ? "]}" : "],\"fields\":[]}");
+        }
+    }
+
+    @Override
+    public void writeStatistics(int totalClasses, int totalMethods, int totalReferencedMethods,
+                                int totalFields, int totalReferencedFields) throws IOException {
+        if (lines) {
+            out.write("{\"type\":\"statistics\",\"path\":");
+            writeString(out, jarPath);
+            out.write(',');
+        } else {
+            out.write("],\n\"statistics\":{");
+        }
+        String live = reachability ? "reachable" : "referenced";
+        out.write("\"classes\":" + totalClasses
+                + ",\"methods\":" + totalMethods
+                + ",\"" + live + "Methods\":" + totalReferencedMethods
+                + ",\"fields\":" + totalFields
+                + ",\"" + live + "Fields\":" + totalReferencedFields);
+        out.write(lines ? "}\n" : "}}");
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!lines) {
+                startDocument();
+                out.write("\n]}\n");
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private void startDocument() throws IOException {
+        if (!documentStarted) {
+            out.write("{\"jars\":[");
+            documentStarted = true;
+        }
+    }
+
+    /**
+     * Writes a string as a JSON string literal.
+     */
+    static void writeString(Writer out, String s) throws IOException {
+        out.write('"');
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            out.write(s, start, i - start);
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    out.write(String.format("\\u%04x", (int) c));
+                    break;
+            }
+            start = i + 1;
+        }
+        out.write(s, start, s.length() - start);
+        out.write('"');
+    }
+}
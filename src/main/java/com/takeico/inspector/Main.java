@@ -1,24 +1,33 @@
 package com.takeico.inspector;
 
-import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.FieldVisitor;
-import org.objectweb.asm.MethodVisitor;
-import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.Type;
-
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * A CLI application that lists all class files in a specified JAR file
@@ -26,579 +35,979 @@ import java.util.jar.JarFile;
  * Can also identify unreferenced classes and members.
  */
 public class Main {
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+    private static final long DEFAULT_CACHE_MAX_SIZE = 512L << 20;
+    private static final long WATCH_INTERVAL_MILLIS = 1000;
+    private static final int DEFAULT_SERVER_MAX_ANALYSES = 8;
+    static final List<String> FORMATS = Arrays.asList("text", "jsonl", "json", "binary");
 
-    /**
-     * Represents information about a class, including its fields and methods.
-     */
-    private static class ClassInfo {
-        String className;
-        String superClassName;  // Store the superclass name
-        Set<String> fields = new HashSet<>();
-        Set<String> methods = new HashSet<>();
-        boolean isReferenced = false;
-
-        // Track which fields and methods are referenced
-        Set<String> referencedFields = new HashSet<>();
-        Set<String> referencedMethods = new HashSet<>();
+    public static void main(String[] args) {
+        List<String> jarPaths = new ArrayList<>();
+        int threads = 1;
+        int jobs = 1;
+        String outputPath = null;
+        boolean classpathMode = false;
+        String cacheDir = null;
+        long cacheMaxSize = DEFAULT_CACHE_MAX_SIZE;
+        boolean clearCache = false;
+        boolean watch = false;
+        boolean diff = false;
+        boolean duplicates = false;
+        boolean platformClasses = false;
+        String graphPath = null;
+        String graphLevel = "package";
+        String graphFormat = "dot";
+        List<String> entryPatterns = null;
+        String format = "text";
+        long memoryBudget = -1;
+        boolean stats = false;
+        String statsJsonPath = null;
+        Query query = Query.all();
+        int serverPort = -1;
+        int serverMaxAnalyses = DEFAULT_SERVER_MAX_ANALYSES;
+        String serverTokenFile = null;
 
-        public ClassInfo(String className) {
-            this.className = className;
+        // Parse command line arguments
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--threads")) {
+                if (i + 1 >= args.length) {
+                    System.err.println("Error: --threads requires a number");
+                    System.exit(1);
+                }
+                try {
+                    threads = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    threads = 0;
+                }
+                if (threads < 1) {
+                    System.err.println("Error: Invalid number of threads: " + args[i]);
+                    System.exit(1);
+                }
+            } else if (arg.equals("--jobs")) {
+                if (i + 1 >= args.length) {
+                    System.err.println("Error: --jobs requires a number");
+                    System.exit(1);
+                }
+                try {
+                    jobs = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    jobs = 0;
+                }
+                if (jobs < 1) {
+                    System.err.println("Error: Invalid number of jobs: " + args[i]);
+                    System.exit(1);
+                }
+            } else if (arg.equals("--classpath")) {
+                classpathMode = true;
+            } else if (arg.equals("--output")) {
+                if (i + 1 >= args.length) {
+                    System.err.println("Error: --output requires a file path");
+                    System.exit(1);
+                }
+                outputPath = args[++i];
+            } else if (arg.equals("--format")) {
+                if (i + 1 >= args.length) {
+                    System.err.println("Error: --format requires a format");
+                    System.exit(1);
+                }
+                format = args[++i];
+                if (!FORMATS.contains(format)) {
+                    System.err.println("Error: Unknown format: " + format + " (expected one of "
+                            + String.join(", ", FORMATS) + ")");
+                    System.exit(1);
+                }
+            } else if (arg.equals("--cache-dir")) {
+                if (i + 1 >= args.length) {
+                    System.err.println("Error: --cache-dir requires a directory path");
+                    System.exit(1);
+                }
+                cacheDir = args[++i];
+            } else if (arg.equals("--cache-max-size")) {
+                if (i + 1 >= args.length) {
+                    System.err.println("Error: --cache-max-size requires a size");
+                    System.exit(1);
+                }
+                cacheMaxSize = parseSize(args[++i]);
+                if (cacheMaxSize < 0) {
+                    System.err.println("Error: Invalid cache size: " + args[i]);
+                    System.exit(1);
+                }
+            } else if (arg.equals("--memory-budget")) {
+                if (i + 1 >= args.length) {
+                    System.err.println("Error: --memory-budget requires a size");
+                    System.exit(1);
+                }
+                memoryBudget = parseSize(args[++i]);
+                if (memoryBudget < 0) {
+                    System.err.println("Error: Invalid memory budget: " + args[i]);
+                    System.exit(1);
+                }
+            } else if (arg.equals("--package")) {
+                if (i + 1 >= args.length) {
+                    System.err.println("Error: --package requires a package name");
+                    System.exit(1);
+                }
+                query = query.inPackage(args[++i]);
+            } else if (arg.equals("--unused-only")) {
+                query = query.unreferencedOnly();
+            } else if (arg.equals("--serve")) {
+                if (i + 1 >= args.length) {
+                    System.err.println("Error: --serve requires a port");
+                    System.exit(1);
+                }
+                try {
+                    serverPort = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    serverPort = -1;
+                }
+                if (serverPort < 0 || serverPort > 65535) {
+                    System.err.println("Error: Invalid port: " + args[i]);
+                    System.exit(1);
+                }
+            } else if (arg.equals("--serve-max-analyses")) {
+                if (i + 1 >= args.length) {
+                    System.err.println("Error: --serve-max-analyses requires a number");
+                    System.exit(1);
+                }
+                try {
+                    serverMaxAnalyses = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    serverMaxAnalyses = 0;
+                }
+                if (serverMaxAnalyses < 1) {
+                    System.err.println("Error: Invalid number of analyses: " + args[i]);
+                    System.exit(1);
+                }
+            } else if (arg.equals("--serve-token-file")) {
+                if (i + 1 >= args.length) {
+                    System.err.println("Error: --serve-token-file requires a file path");
+                    System.exit(1);
+                }
+                serverTokenFile = args[++i];
+            } else if (arg.equals("--stats")) {
+                stats = true;
+            } else if (arg.equals("--stats-json")) {
+                if (i + 1 >= args.length) {
+                    System.err.println("Error: --stats-json requires a file path");
+                    System.exit(1);
+                }
+                statsJsonPath = args[++i];
+            } else if (arg.equals("--clear-cache")) {
+                clearCache = true;
+            } else if (arg.equals("--watch")) {
+                watch = true;
+            } else if (arg.equals("--diff")) {
+                diff = true;
+            } else if (arg.equals("--duplicates")) {
+                duplicates = true;
+            } else if (arg.equals("--graph")) {
+                if (i + 1 >= args.length) {
+                    System.err.println("Error: --graph requires a file path");
+                    System.exit(1);
+                }
+                graphPath = args[++i];
+            } else if (arg.equals("--graph-level")) {
+                if (i + 1 >= args.length) {
+                    System.err.println("Error: --graph-level requires a level");
+                    System.exit(1);
+                }
+                graphLevel = args[++i];
+                if (!GraphExport.LEVELS.contains(graphLevel)) {
+                    System.err.println("Error: Unknown graph level: " + graphLevel + " (expected one of "
+                            + String.join(", ", GraphExport.LEVELS) + ")");
+                    System.exit(1);
+                }
+            } else if (arg.equals("--graph-format")) {
+                if (i + 1 >= args.length) {
+                    System.err.println("Error: --graph-format requires a format");
+                    System.exit(1);
+                }
+                graphFormat = args[++i];
+                if (!GraphExport.FORMATS.contains(graphFormat)) {
+                    System.err.println("Error: Unknown graph format: " + graphFormat + " (expected one of "
+                            + String.join(", ", GraphExport.FORMATS) + ")");
+                    System.exit(1);
+                }
+            } else if (arg.equals("--platform-classes")) {
+                platformClasses = true;
+            } else if (arg.equals("--reachability")) {
+                if (entryPatterns == null) {
+                    entryPatterns = new ArrayList<>();
+                }
+            } else if (arg.equals("--entry")) {
+                if (i + 1 >= args.length) {
+                    System.err.println("Error: --entry requires a pattern");
+                    System.exit(1);
+                }
+                if (entryPatterns == null) {
+                    entryPatterns = new ArrayList<>();
+                }
+                entryPatterns.add(args[++i]);
+            } else if (classpathMode) {
+                // Class path entries may also be given as a single joined class path
+                for (String path : arg.split(File.pathSeparator)) {
+                    if (!path.isEmpty()) {
+                        jarPaths.add(path);
+                    }
+                }
+            } else {
+                jarPaths.add(arg);
+            }
         }
 
-        public void addField(String fieldName, String descriptor) {
-            fields.add(fieldName + " " + descriptor);
+        if (clearCache && cacheDir == null) {
+            System.err.println("Error: --clear-cache requires --cache-dir");
+            System.exit(1);
         }
-
-        public void addMethod(String methodName, String descriptor) {
-            methods.add(methodName + " " + descriptor);
+        if (jobs > 1 && (classpathMode || watch || memoryBudget >= 0)) {
+            System.err.println("Error: --jobs can't be combined with --classpath, --watch or --memory-budget");
+            System.exit(1);
         }
 
-        public Set<String> getUnreferencedFields() {
-            Set<String> unreferenced = new HashSet<>(fields);
-            unreferenced.removeAll(referencedFields);
-            return unreferenced;
+        if (serverTokenFile != null && serverPort < 0) {
+            System.err.println("Error: --serve-token-file requires --serve");
+            System.exit(1);
         }
 
-        public Set<String> getUnreferencedMethods() {
-            Set<String> unreferenced = new HashSet<>(methods);
-            unreferenced.removeAll(referencedMethods);
-            // Don't remove constructors and static initializers
-            return unreferenced;
+        if (diff && (jarPaths.size() != 2 || classpathMode || watch || jobs > 1 || memoryBudget >= 0)) {
+            System.err.println("Error: --diff requires two JAR files and can't be combined with --classpath, --watch, "
+                    + "--jobs or --memory-budget");
+            System.exit(1);
+        }
+        if (diff && (!format.equals("text") || query.selectsMembers())) {
+            System.err.println("Error: --diff only writes text and can only be filtered with --package");
+            System.exit(1);
         }
-    }
-
-    /**
-     * A ClassVisitor implementation that collects information about classes, fields, and methods.
-     */
-    private static class ClassInfoCollector extends ClassVisitor {
-        private ClassInfo currentClass;
-        private final Map<String, ClassInfo> classInfoMap;
 
-        public ClassInfoCollector(Map<String, ClassInfo> classInfoMap) {
-            super(Opcodes.ASM9);
-            this.classInfoMap = classInfoMap;
+        if (graphPath != null && (diff || watch || jobs > 1 || (jarPaths.size() > 1 && !classpathMode))) {
+            System.err.println("Error: --graph requires a single JAR file or --classpath and can't be combined with "
+                    + "--diff, --watch or --jobs");
+            System.exit(1);
+        }
+        if (duplicates && (diff || watch || graphPath != null || entryPatterns != null || jobs > 1
+                || memoryBudget >= 0)) {
+            System.err.println("Error: --duplicates can't be combined with --diff, --watch, --graph, --reachability, "
+                    + "--jobs or --memory-budget");
+            System.exit(1);
+        }
+        if (duplicates && (!format.equals("text") || query.selectsMembers())) {
+            System.err.println("Error: --duplicates only writes text and can only be filtered with --package");
+            System.exit(1);
+        }
+        if (platformClasses) {
+            try {
+                PlatformClasses.enable();
+            } catch (IOException e) {
+                System.err.println("Error: Cannot read the platform classes: " + e.getMessage());
+                System.exit(1);
+            }
         }
+        GraphExport graph = graphPath != null ? new GraphExport(graphPath, graphLevel, graphFormat) : null;
 
-        @Override
-        public void visit(int version, int access, String name, String signature, 
-                          String superName, String[] interfaces) {
-            String className = name.replace('/', '.');
-            currentClass = new ClassInfo(className);
-            if (superName != null) {
-                currentClass.superClassName = superName.replace('/', '.');
+        AnalysisCache cache = null;
+        if (cacheDir != null) {
+            try {
+                cache = new AnalysisCache(Paths.get(cacheDir), cacheMaxSize);
+                if (clearCache) {
+                    cache.clear();
+                }
+            } catch (IOException e) {
+                System.err.println("Error: Cannot use cache directory " + cacheDir + ": " + e.getMessage());
+                System.exit(1);
             }
-            classInfoMap.put(className, currentClass);
         }
 
-        @Override
-        public FieldVisitor visitField(int access, String name, String descriptor, 
-                                      String signature, Object value) {
-            currentClass.addField(name, descriptor);
-            return null;
+        if (serverPort >= 0) {
+            if (stats || statsJsonPath != null) {
+                Metrics.enable();
+            }
+            serve(serverPort, threads, cache, serverMaxAnalyses,
+                    serverTokenFile != null ? Paths.get(serverTokenFile) : null);
+            if (!writeMetrics(stats, statsJsonPath)) {
+                System.exit(1);
+            }
+            return;
         }
 
-        @Override
-        public MethodVisitor visitMethod(int access, String name, String descriptor, 
-                                        String signature, String[] exceptions) {
-            // Only add methods that are actually defined in this class, not inherited ones
-            // Bridge and synthetic methods are generated by the compiler, not directly defined in the source code
-            if ((access & (Opcodes.ACC_BRIDGE | Opcodes.ACC_SYNTHETIC)) == 0) {
-                currentClass.addMethod(name, descriptor);
+        if (jarPaths.isEmpty()) {
+            if (clearCache) {
+                return;
             }
-            return null;
+            System.err.println("Usage: java -jar class-inspector.jar [--threads N] [--output FILE] [--format FORMAT] [--cache-dir DIR] [--watch] [--reachability] <path-to-jar-file> [<path-to-jar-file> ...]");
+            System.err.println("       java -jar class-inspector.jar --classpath [--threads N] [--output FILE] [--format FORMAT] [--cache-dir DIR] [--watch] [--reachability] <jar-or-class-directory>...");
+            System.err.println("       java -jar class-inspector.jar --diff [--threads N] [--output FILE] [--cache-dir DIR] [--reachability] [--package PACKAGE] <old-jar-file> <new-jar-file>");
+            System.err.println("       java -jar class-inspector.jar --duplicates [--threads N] [--output FILE] [--package PACKAGE] <jar-or-class-directory>...");
+            System.err.println("       java -jar class-inspector.jar --serve PORT [--serve-max-analyses N (default 8)] [--serve-token-file FILE] [--threads N] [--cache-dir DIR]");
+            System.err.println("Formats: text (default), jsonl, json, binary");
+            System.err.println("Filters: --package PACKAGE (repeatable), --unused-only");
+            System.err.println("Concurrent JAR files: --jobs N (analyzed at a time, on virtual threads on Java 21+)");
+            System.err.println("Low-memory mode: --memory-budget SIZE (raw references kept on the heap, e.g. 256m)");
+            System.err.println("Cache options: --cache-max-size SIZE (default 512m), --clear-cache");
+            System.err.println("Reachability options: --reachability, --entry PATTERN (e.g. com.example.Main#main, com.example.api.**)");
+            System.err.println("JDK supertypes: --platform-classes (resolve inherited members through the classes of the running JDK)");
+            System.err.println("Dependency graph: --graph FILE [--graph-level package|class] [--graph-format dot|json]");
+            System.err.println("Metrics options: --stats, --stats-json FILE");
+            System.exit(1);
         }
-    }
 
-    /**
-     * A MethodVisitor implementation that detects references to other classes, fields, and methods.
-     */
-    private static class MethodReferenceVisitor extends MethodVisitor {
-        private final ReferenceDetector detector;
+        boolean hasErrors = false;
 
-        public MethodReferenceVisitor(ReferenceDetector detector) {
-            super(Opcodes.ASM9);
-            this.detector = detector;
+        if (stats || statsJsonPath != null) {
+            Metrics.enable();
         }
 
-        @Override
-        public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
-            detector.addFieldReference(owner.replace('/', '.'), name, descriptor);
+        if (diff) {
+            hasErrors = !diff(jarPaths.get(0), jarPaths.get(1), threads, cache, entryPatterns, query, outputPath);
+            if (!writeMetrics(stats, statsJsonPath)) {
+                hasErrors = true;
+            }
+            if (hasErrors) {
+                System.exit(1);
+            }
+            return;
         }
 
-        @Override
-        public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
-            detector.addMethodReference(owner.replace('/', '.'), name, descriptor);
+        if (duplicates) {
+            hasErrors = !findDuplicates(jarPaths, threads, query, outputPath);
+            if (!writeMetrics(stats, statsJsonPath)) {
+                hasErrors = true;
+            }
+            if (hasErrors) {
+                System.exit(1);
+            }
+            return;
         }
 
-        @Override
-        public void visitTypeInsn(int opcode, String type) {
-            if (type.startsWith("[")) {
-                // Handle array types
-                Type t = Type.getType(type);
-                if (t.getSort() == Type.OBJECT) {
-                    detector.addClassReference(t.getClassName());
-                }
-            } else {
-                detector.addClassReference(type.replace('/', '.'));
+        ReferenceSpill spill = null;
+        if (memoryBudget >= 0) {
+            try {
+                spill = new ReferenceSpill(memoryBudget, null);
+            } catch (IOException e) {
+                System.err.println("Error: Cannot create the spill file: " + e.getMessage());
+                System.exit(1);
             }
         }
-    }
 
-    /**
-     * A ClassVisitor implementation that detects references to other classes, fields, and methods.
-     */
-    private static class ReferenceDetector extends ClassVisitor {
-        private final Map<String, ClassInfo> classInfoMap;
-        private String currentClassName;
+        try (ScanExecutor executor = new ScanExecutor(threads);
+             ReportWriter report = createReportWriter(outputPath, format, entryPatterns != null)) {
+            if (watch) {
+                watch(jarPaths, classpathMode, executor, cache, spill, entryPatterns, query, report);
+                jarPaths.clear();
+            } else if (classpathMode) {
+                List<String> classpath = new ArrayList<>();
+                for (String path : jarPaths) {
+                    if (new File(path).exists()) {
+                        classpath.add(path);
+                    } else {
+                        System.err.println("Error: The specified class path entry does not exist: " + path);
+                        hasErrors = true;
+                    }
+                }
+                try {
+                    listClassesInClasspath(classpath, executor, cache, spill, entryPatterns, graph, query, report);
+                } catch (IOException e) {
+                    System.err.println("Error reading class path: " + e.getMessage());
+                    hasErrors = true;
+                }
+                jarPaths.clear();
+            }
 
-        public ReferenceDetector(Map<String, ClassInfo> classInfoMap) {
-            super(Opcodes.ASM9);
-            this.classInfoMap = classInfoMap;
-        }
+            if (jobs > 1) {
+                hasErrors |= listClassesInJars(jarPaths, jobs, executor, cache, entryPatterns, query, report);
+                jarPaths.clear();
+            }
 
-        @Override
-        public void visit(int version, int access, String name, String signature, 
-                          String superName, String[] interfaces) {
-            currentClassName = name.replace('/', '.');
+            for (String jarPath : jarPaths) {
+                File jarFile = new File(jarPath);
 
-            // Mark superclass as referenced
-            if (superName != null) {
-                addClassReference(superName.replace('/', '.'));
-            }
+                if (!jarFile.exists() || !jarFile.isFile()) {
+                    System.err.println("Error: The specified JAR file does not exist or is not a file: " + jarPath);
+                    hasErrors = true;
+                    continue;
+                }
 
-            // Mark interfaces as referenced
-            if (interfaces != null) {
-                for (String iface : interfaces) {
-                    addClassReference(iface.replace('/', '.'));
+                try {
+                    listClassesInJar(jarPath, executor, cache, spill, entryPatterns, graph, query, report);
+                } catch (IOException e) {
+                    System.err.println("Error reading JAR file " + jarPath + ": " + e.getMessage());
+                    hasErrors = true;
                 }
             }
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error writing report: " + e.getMessage());
+            hasErrors = true;
         }
 
-        @Override
-        public MethodVisitor visitMethod(int access, String name, String descriptor, 
-                                        String signature, String[] exceptions) {
-            // Process parameter and return types
-            Type methodType = Type.getMethodType(descriptor);
-            Type returnType = methodType.getReturnType();
-            if (returnType.getSort() == Type.OBJECT) {
-                addClassReference(returnType.getClassName());
+        if (spill != null) {
+            System.err.println("Peak heap usage: " + getPeakHeapUsage() / (1 << 20) + " MB, references spilled: "
+                    + (spill.getSpilledBytes() + 1023) / 1024 + " KB");
+            try {
+                spill.close();
+            } catch (IOException e) {
+                System.err.println("Warning: Cannot delete the spill file: " + e.getMessage());
             }
+        }
 
-            for (Type paramType : methodType.getArgumentTypes()) {
-                if (paramType.getSort() == Type.OBJECT) {
-                    addClassReference(paramType.getClassName());
-                }
-            }
+        if (!writeMetrics(stats, statsJsonPath)) {
+            hasErrors = true;
+        }
 
-            return new MethodReferenceVisitor(this);
+        if (hasErrors) {
+            System.exit(1);
         }
+    }
 
-        public void addClassReference(String className) {
-            ClassInfo info = classInfoMap.get(className);
-            if (info != null) {
-                info.isReferenced = true;
+    /**
+     * Writes the metrics of the run to the standard error and/or a JSON file, as requested.
+     *
+     * @return false if the metrics couldn't be written
+     */
+    private static boolean writeMetrics(boolean stats, String statsJsonPath) {
+        boolean written = true;
+        if (stats) {
+            try {
+                Metrics.writeText(new OutputStreamWriter(System.err, getConsoleCharset()));
+            } catch (IOException e) {
+                System.err.println("Error writing metrics: " + e.getMessage());
+                written = false;
             }
         }
-
-        public void addFieldReference(String className, String fieldName, String descriptor) {
-            ClassInfo info = classInfoMap.get(className);
-            if (info != null) {
-                info.referencedFields.add(fieldName + " " + descriptor);
+        if (statsJsonPath != null) {
+            try (Writer out = Files.newBufferedWriter(Paths.get(statsJsonPath), StandardCharsets.UTF_8)) {
+                Metrics.writeJson(out);
+            } catch (IOException e) {
+                System.err.println("Error writing metrics to " + statsJsonPath + ": " + e.getMessage());
+                written = false;
             }
         }
+        return written;
+    }
 
-        public void addMethodReference(String className, String methodName, String descriptor) {
-            ClassInfo info = classInfoMap.get(className);
-            if (info != null) {
-                String methodKey = methodName + " " + descriptor;
+    /**
+     * Runs the server mode until a client requests the shutdown; see {@link InspectorServer}.
+     */
+    private static void serve(int port, int threads, AnalysisCache cache, int maxAnalyses, Path tokenFile) {
+        try (ScanExecutor executor = new ScanExecutor(threads);
+             InspectorServer server = new InspectorServer(port, executor, cache, maxAnalyses, tokenFile)) {
+            server.start();
+            System.err.println("Listening on http://" + server.getAddress().getHostString() + ":"
+                    + server.getAddress().getPort() + "/, token in " + server.getTokenFile());
+            server.awaitShutdown();
+        } catch (IOException e) {
+            System.err.println("Error: Cannot start the server on port " + port + ": " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-                // Check if the method exists in this class
-                if (info.methods.contains(methodKey)) {
-                    // Method exists in this class, mark it as referenced
-                    info.referencedMethods.add(methodKey);
-                } else {
-                    // Method doesn't exist in this class, check parent classes
-                    markMethodInParentClass(className, methodKey);
-                }
+    /**
+     * Compares two versions of a JAR file and writes the differences; see {@link JarDiff}.
+     *
+     * @return false if one of the versions couldn't be read or the differences couldn't be written
+     */
+    private static boolean diff(String oldPath, String newPath, int threads, AnalysisCache cache,
+                                List<String> entryPatterns, Query query, String outputPath) {
+        for (String path : Arrays.asList(oldPath, newPath)) {
+            if (!new File(path).exists()) {
+                System.err.println("Error: The specified JAR file does not exist: " + path);
+                return false;
             }
         }
+        try (ScanExecutor executor = new ScanExecutor(threads);
+             Writer out = new BufferedWriter(new OutputStreamWriter(openOutput(outputPath), getConsoleCharset()),
+                     OUTPUT_BUFFER_SIZE)) {
+            new JarDiff(executor, cache, entryPatterns, query).compare(oldPath, newPath, out);
+            return true;
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error comparing " + oldPath + " with " + newPath + ": " + e.getMessage());
+            return false;
+        }
+    }
 
-        private void markMethodInParentClass(String className, String methodKey) {
-            // Get the class info
-            ClassInfo classInfo = classInfoMap.get(className);
-            if (classInfo == null) return;
-
-            // Check if this class has a superclass
-            if (classInfo.superClassName != null) {
-                // Get the superclass info
-                ClassInfo superClassInfo = classInfoMap.get(classInfo.superClassName);
-                if (superClassInfo != null) {
-                    // Check if the method exists in the superclass
-                    if (superClassInfo.methods.contains(methodKey)) {
-                        // Found the method in the parent class, mark it as referenced
-                        superClassInfo.referencedMethods.add(methodKey);
-                        return;
-                    } else {
-                        // Continue searching in the parent's hierarchy
-                        markMethodInParentClass(classInfo.superClassName, methodKey);
+    /**
+     * Finds the classes contained in more than one of the given JAR files or class directories, and the
+     * packages split across them; see {@link DuplicateDetector}. The sources are opened one at a time.
+     *
+     * @return false if a source or one of its class files couldn't be read, or the report couldn't be written
+     */
+    private static boolean findDuplicates(List<String> paths, int threads, Query query, String outputPath) {
+        boolean success = true;
+        try (ScanExecutor executor = new ScanExecutor(threads);
+             Writer out = new BufferedWriter(new OutputStreamWriter(openOutput(outputPath), getConsoleCharset()),
+                     OUTPUT_BUFFER_SIZE)) {
+            DuplicateDetector detector = new DuplicateDetector(executor, query);
+            for (String path : paths) {
+                if (!new File(path).exists()) {
+                    System.err.println("Error: The specified JAR file does not exist: " + path);
+                    success = false;
+                    continue;
+                }
+                List<ClassSource> sources = new ArrayList<>();
+                try {
+                    sources.addAll(ClassSource.openWithNested(Paths.get(path), executor));
+                    for (ClassSource source : sources) {
+                        success &= detector.add(source);
+                    }
+                } catch (IOException | UncheckedIOException e) {
+                    System.err.println("Error reading " + path + ": " + e.getMessage());
+                    success = false;
+                } finally {
+                    for (ClassSource source : sources) {
+                        source.close();
                     }
                 }
             }
+            detector.writeReport(out);
+            return success;
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error writing the duplicate report: " + e.getMessage());
+            return false;
         }
     }
 
     /**
-     * A ClassVisitor implementation that extracts and prints field and method information.
+     * Opens the given output file, or returns the standard output if no file is given.
      */
-    private static class ClassInspectorVisitor extends ClassVisitor {
-        private String className;
-        private String superClassName;
-        private final Map<String, ClassInfo> classInfoMap;
-        private int referencedMethodCount = 0;
-        private int unreferencedMethodCount = 0;
-        private int referencedFieldCount = 0;
-        private int unreferencedFieldCount = 0;
-        private List<String> methodsInfo = new ArrayList<>();
-        private List<String> fieldsInfo = new ArrayList<>();
-        private boolean printedMethodsHeader = false;
-
-        public ClassInspectorVisitor(Map<String, ClassInfo> classInfoMap) {
-            super(Opcodes.ASM9);
-            this.classInfoMap = classInfoMap;
-        }
+    private static OutputStream openOutput(String outputPath) throws IOException {
+        return outputPath != null
+                ? Channels.newOutputStream(FileChannel.open(Paths.get(outputPath), StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+                : System.out;
+    }
 
-        @Override
-        public void visit(int version, int access, String name, String signature, 
-                          String superName, String[] interfaces) {
-            this.className = name.replace('/', '.');
-            this.superClassName = superName != null ? superName.replace('/', '.') : null;
+    /**
+     * Creates the report writer of the given format for the given output file, or for the standard output
+     * if no file is given. The text report is encoded like the standard output, so a report written to a
+     * file is identical to the redirected standard output; JSON is always encoded in UTF-8.
+     */
+    private static ReportWriter createReportWriter(String outputPath, String format, boolean reachability)
+            throws IOException {
+        return createReportWriter(openOutput(outputPath), getConsoleCharset(), format, reachability);
+    }
 
-            ClassInfo classInfo = classInfoMap.get(className);
+    /**
+     * Creates the report writer of the given format for the given stream.
+     *
+     * @param textCharset The charset of the text report; JSON is always encoded in UTF-8
+     */
+    static ReportWriter createReportWriter(OutputStream out, Charset textCharset, String format,
+                                           boolean reachability) {
+        switch (format) {
+            case "jsonl":
+            case "json":
+                return new JsonReportWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8),
+                        OUTPUT_BUFFER_SIZE), format.equals("jsonl"), reachability);
+            case "binary":
+                return new BinaryReportWriter(new BufferedOutputStream(out, OUTPUT_BUFFER_SIZE), reachability);
+            default:
+                return new TextReportWriter(new BufferedWriter(new OutputStreamWriter(out, textCharset),
+                        OUTPUT_BUFFER_SIZE), reachability);
+        }
+    }
 
-            String typePrefix = (access & Opcodes.ACC_INTERFACE) != 0 ? "Interface: " : "Class: ";
-            System.out.println("\n" + typePrefix + className);
-            System.out.println("--------------------------------------------------------------------------------");
+    /**
+     * Parses a size in bytes with an optional k, m, or g suffix.
+     *
+     * @return The size in bytes, or -1 if the size is invalid
+     */
+    private static long parseSize(String size) {
+        String digits = size.toLowerCase(Locale.ROOT);
+        int shift = 0;
+        if (digits.endsWith("k")) {
+            shift = 10;
+        } else if (digits.endsWith("m")) {
+            shift = 20;
+        } else if (digits.endsWith("g")) {
+            shift = 30;
+        }
+        if (shift != 0) {
+            digits = digits.substring(0, digits.length() - 1);
+        }
+        try {
+            long value = Long.parseLong(digits);
+            return value >= 0 && value <= Long.MAX_VALUE >> shift ? value << shift : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
 
-            if (superName != null) {
-                System.out.println("  Superclass: " + superClassName);
+    /**
+     * Returns the peak heap usage of the run so far: the sum of the peak usages of the heap memory pools.
+     */
+    private static long getPeakHeapUsage() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
             }
         }
+        return peak;
+    }
 
-        @Override
-        public FieldVisitor visitField(int access, String name, String descriptor, 
-                                      String signature, Object value) {
-            ClassInfo classInfo = classInfoMap.get(className);
-            String fieldKey = name + " " + descriptor;
-
-            boolean isReferenced = classInfo != null && classInfo.referencedFields.contains(fieldKey);
+    /**
+     * Returns the charset used by {@link System#out}.
+     */
+    private static Charset getConsoleCharset() {
+        String encoding = System.getProperty("stdout.encoding", System.getProperty("sun.stdout.encoding"));
+        if (encoding != null && Charset.isSupported(encoding)) {
+            return Charset.forName(encoding);
+        }
+        return Charset.defaultCharset();
+    }
 
-            if (isReferenced) {
-                referencedFieldCount++;
-            } else {
-                unreferencedFieldCount++;
+    /**
+     * Lists all class files in the specified JAR file and inspects their fields and methods using ASM.
+     * Can also identify unreferenced classes and members.
+     *
+     * Steps 1 and 2 run on the given executor; the report is always produced in JAR entry order,
+     * so the output does not depend on the number of threads. Archives nested in the JAR file, such as
+     * the libraries of a Spring Boot JAR, a WAR, or an EAR file, are analyzed with it as one universe,
+     * and each of them is reported after the JAR file.
+     *
+     * @param jarPath       Path to the JAR file
+     * @param executor      Executor running the per-class passes
+     * @param cache         The analysis cache, or null
+     * @param spill         The spill of the low-memory mode, or null
+     * @param entryPatterns The user-supplied entry points of the reachability analysis, or null to report
+     *                      references instead of reachability
+     * @param graph         Exports the dependency graph, or null
+     * @param query         Selects the classes and members to report
+     * @param report        The report writer
+     * @throws IOException If there's an error reading the JAR file or writing the graph
+     */
+    static void listClassesInJar(String jarPath, ScanExecutor executor, AnalysisCache cache, ReferenceSpill spill,
+                                 List<String> entryPatterns, GraphExport graph, Query query, ReportWriter report)
+            throws IOException {
+        try {
+            Analysis analysis = analyzeJar(jarPath, executor, cache, spill, entryPatterns);
+            if (graph != null) {
+                graph.write(analysis);
             }
+            for (Artifact artifact : analysis.getArtifacts()) {
+                writeArtifactReport(analysis, artifact, entryPatterns != null, query, report);
+            }
+        } finally {
+            // Each JAR file gets the whole memory budget
+            if (spill != null) {
+                spill.reset();
+            }
+        }
+    }
 
-            // Store field info for later display
-            StringBuilder info = new StringBuilder();
-            info.append("    ").append(isReferenced ? "✓" : "✗").append(" ").append(name).append(": ");
-
-            // Convert field descriptor to simple type name
-            Type fieldType = Type.getType(descriptor);
-            info.append(getSimpleTypeName(fieldType));
-
-            fieldsInfo.add(info.toString());
+    /**
+     * Analyzes the specified JAR file with the archives nested in it, and finds the reachable code
+     * if requested. The archives are closed again once the analysis is done.
+     *
+     * @return The analysis, with its artifacts in the order of {@link JarArchive#openWithNested}
+     * @throws IOException If there's an error reading the JAR file
+     */
+    static Analysis analyzeJar(String jarPath, ScanExecutor executor, AnalysisCache cache,
+                               ReferenceSpill spill, List<String> entryPatterns) throws IOException {
+        List<JarArchive> sources = JarArchive.openWithNested(Paths.get(jarPath), executor);
+        try {
+            Analysis analysis = new Analyzer(executor, cache, spill).analyze(sources);
+            if (entryPatterns != null) {
+                findReachableCode(analysis, sources, entryPatterns);
+            }
+            return analysis;
+        } finally {
+            for (JarArchive source : sources) {
+                source.close();
+            }
+        }
+    }
 
-            // Add reference information
-            if (isReferenced) {
-                StringBuilder refInfo = new StringBuilder();
-                refInfo.append("      Referenced by: ");
-                // Find classes that reference this field
-                boolean foundReference = false;
-                for (Map.Entry<String, ClassInfo> entry : classInfoMap.entrySet()) {
-                    if (entry.getValue().referencedFields.contains(fieldKey)) {
-                        if (foundReference) {
-                            refInfo.append(", ");
+    /**
+     * Inspects several JAR files concurrently, each of them as its own universe like
+     * {@link #listClassesInJar}. Each JAR file is analyzed on a thread of its own, a virtual thread
+     * on Java 21 and later, and at most the given number of them are open and analyzed at a time.
+     * The reports are written in the order of the paths, each JAR file as a whole once its analysis is
+     * done, so the report is the same as in the sequential mode. Analyses that finish ahead of their
+     * turn wait in memory; at most twice the number of jobs are started ahead of the report.
+     *
+     * @param jarPaths      Paths to the JAR files
+     * @param jobs          The maximum number of JAR files analyzed at a time
+     * @param executor      Executor running the per-class passes, shared by all JAR files
+     * @param cache         The analysis cache, or null
+     * @param entryPatterns The user-supplied entry points of the reachability analysis, or null
+     * @param query         Selects the classes and members to report
+     * @param report        The report writer
+     * @return Whether any of the JAR files couldn't be read
+     * @throws IOException If there's an error writing the report
+     */
+    private static boolean listClassesInJars(List<String> jarPaths, int jobs, ScanExecutor executor,
+                                             AnalysisCache cache, List<String> entryPatterns,
+                                             Query query, ReportWriter report) throws IOException {
+        ThreadFactory threadFactory = newJobThreadFactory();
+        Semaphore openArchives = new Semaphore(jobs);
+        List<CompletableFuture<Analysis>> analyses = new ArrayList<>(jarPaths.size());
+        boolean hasErrors = false;
+        for (int i = 0; i < jarPaths.size(); i++) {
+            // Start the analyses up to the window ahead of the report
+            while (analyses.size() < Math.min(jarPaths.size(), i + 2 * jobs)) {
+                String jarPath = jarPaths.get(analyses.size());
+                CompletableFuture<Analysis> analysis = new CompletableFuture<>();
+                analyses.add(analysis);
+                if (!new File(jarPath).isFile()) {
+                    analysis.complete(null);
+                    continue;
+                }
+                threadFactory.newThread(() -> {
+                    try {
+                        openArchives.acquire();
+                        try {
+                            analysis.complete(analyzeJar(jarPath, executor, cache, null, entryPatterns));
+                        } finally {
+                            openArchives.release();
                         }
-                        refInfo.append(entry.getKey());
-                        foundReference = true;
+                    } catch (Throwable e) {
+                        analysis.completeExceptionally(e);
                     }
-                }
-                fieldsInfo.add(refInfo.toString());
-            } else {
-                fieldsInfo.add("      Not referenced by any class");
+                }).start();
             }
 
-            return null;
+            String jarPath = jarPaths.get(i);
+            try {
+                Analysis analysis = analyses.get(i).get();
+                analyses.set(i, null);
+                if (analysis == null) {
+                    System.err.println("Error: The specified JAR file does not exist or is not a file: " + jarPath);
+                    hasErrors = true;
+                    continue;
+                }
+                for (Artifact artifact : analysis.getArtifacts()) {
+                    writeArtifactReport(analysis, artifact, entryPatterns != null, query, report);
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    System.err.println("Error reading JAR file " + jarPath + ": " + cause.getMessage());
+                    hasErrors = true;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                } else {
+                    throw new IllegalStateException(cause);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the analysis of " + jarPath, e);
+            }
         }
+        return hasErrors;
+    }
 
-        @Override
-        public MethodVisitor visitMethod(int access, String name, String descriptor, 
-                                        String signature, String[] exceptions) {
-            ClassInfo classInfo = classInfoMap.get(className);
-            String methodKey = name + " " + descriptor;
+    /**
+     * Returns a factory of virtual threads if the JVM supports them (Java 21 and later), or else of
+     * daemon platform threads. Virtual threads are looked up reflectively, so that the inspector
+     * still runs on Java 11.
+     */
+    private static ThreadFactory newJobThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return runnable -> {
+                Thread thread = new Thread(runnable, "class-inspector-job");
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
 
-            // Skip methods that are not defined in this class (inherited methods)
-            // Check if the method is actually defined in this class by checking if it's in the methods set
-            if (!classInfo.methods.contains(methodKey)) {
-                return null;
+    /**
+     * Inspects all JAR files and class directories on the given class path as one universe,
+     * so that references from one artifact into another are resolved. The report lists the
+     * classes and the statistics of each artifact separately.
+     *
+     * @param paths         Paths to the JAR files and class directories, in class path order
+     * @param executor      Executor running the per-class passes
+     * @param cache         The analysis cache, or null
+     * @param spill         The spill of the low-memory mode, or null
+     * @param entryPatterns The user-supplied entry points of the reachability analysis, or null
+     * @param graph         Exports the dependency graph, or null
+     * @param query         Selects the classes and members to report
+     * @param report        The report writer
+     * @throws IOException If there's an error reading one of the artifacts or writing the graph
+     */
+    private static void listClassesInClasspath(List<String> paths, ScanExecutor executor, AnalysisCache cache,
+                                               ReferenceSpill spill, List<String> entryPatterns, GraphExport graph,
+                                               Query query, ReportWriter report) throws IOException {
+        List<ClassSource> sources = new ArrayList<>();
+        try {
+            for (String path : paths) {
+                try {
+                    sources.addAll(ClassSource.openWithNested(Paths.get(path), executor));
+                } catch (IOException e) {
+                    throw new IOException(path + ": " + e.getMessage(), e);
+                }
             }
 
-            boolean isReferenced = classInfo != null && classInfo.referencedMethods.contains(methodKey);
-
-            if (isReferenced) {
-                referencedMethodCount++;
-            } else {
-                unreferencedMethodCount++;
+            Analysis analysis = new Analyzer(executor, cache, spill).analyze(sources);
+            if (entryPatterns != null) {
+                findReachableCode(analysis, sources, entryPatterns);
             }
-
-            // Store method info for later display
-            StringBuilder info = new StringBuilder();
-            info.append("    ").append(isReferenced ? "✓" : "✗").append(" ").append(name);
-
-            // Format method parameters and return type
-            Type methodType = Type.getMethodType(descriptor);
-            Type[] paramTypes = methodType.getArgumentTypes();
-            Type returnType = methodType.getReturnType();
-
-            // Format parameters
-            StringBuilder params = new StringBuilder();
-            params.append("(");
-            for (int i = 0; i < paramTypes.length; i++) {
-                if (i > 0) {
-                    params.append(", ");
-                }
-                params.append(getSimpleTypeName(paramTypes[i]));
+            if (graph != null) {
+                graph.write(analysis);
             }
-            params.append(")");
-
-            // Format return type
-            String returnTypeStr = getSimpleTypeName(returnType);
-
-            info.append(params).append(": ").append(returnTypeStr);
-            methodsInfo.add(info.toString());
-
-            // Add reference information
-            if (isReferenced) {
-                StringBuilder refInfo = new StringBuilder();
-                refInfo.append("      Referenced by: ");
-                // Find classes that reference this method
-                boolean foundReference = false;
-                for (Map.Entry<String, ClassInfo> entry : classInfoMap.entrySet()) {
-                    if (entry.getValue().referencedMethods.contains(methodKey)) {
-                        if (foundReference) {
-                            refInfo.append(", ");
-                        }
-                        refInfo.append(entry.getKey());
-                        foundReference = true;
-                    }
-                }
-                methodsInfo.add(refInfo.toString());
-            } else {
-                methodsInfo.add("      Not referenced by any class");
-            }
-
-            return null;
-        }
-
-        @Override
-        public void visitEnd() {
-            if (!methodsInfo.isEmpty()) {
-                System.out.println("  Methods:");
-                for (String info : methodsInfo) {
-                    System.out.println(info);
-                }
-                System.out.println("  Summary: " + referencedMethodCount + " methods referenced, " + 
-                                  unreferencedMethodCount + " methods not referenced");
-            }
-
-            if (!fieldsInfo.isEmpty()) {
-                System.out.println("  Fields:");
-                for (String info : fieldsInfo) {
-                    System.out.println(info);
-                }
-                System.out.println("  Summary: " + referencedFieldCount + " fields referenced, " + 
-                                  unreferencedFieldCount + " fields not referenced");
-            }
-        }
-
-        /**
-         * Converts an ASM Type object to a simple type name.
-         * 
-         * @param type The ASM Type object
-         * @return A simple string representation of the type
-         */
-        private String getSimpleTypeName(Type type) {
-            switch (type.getSort()) {
-                case Type.VOID:
-                    return "void";
-                case Type.BOOLEAN:
-                    return "boolean";
-                case Type.CHAR:
-                    return "char";
-                case Type.BYTE:
-                    return "byte";
-                case Type.SHORT:
-                    return "short";
-                case Type.INT:
-                    return "int";
-                case Type.FLOAT:
-                    return "float";
-                case Type.LONG:
-                    return "long";
-                case Type.DOUBLE:
-                    return "double";
-                case Type.ARRAY:
-                    return getSimpleTypeName(type.getElementType()) + "[]";
-                case Type.OBJECT:
-                    String className = type.getClassName();
-                    // Remove package name for common packages
-                    if (className.startsWith("java.lang.")) {
-                        className = className.substring("java.lang.".length());
-                    }
-                    // Get simple name for other classes
-                    int lastDot = className.lastIndexOf('.');
-                    if (lastDot > 0) {
-                        className = className.substring(lastDot + 1);
-                    }
-                    return className;
-                default:
-                    return type.getClassName();
+            for (Artifact artifact : analysis.getArtifacts()) {
+                writeArtifactReport(analysis, artifact, entryPatterns != null, query, report);
+            }
+        } finally {
+            for (ClassSource source : sources) {
+                source.close();
             }
         }
     }
-    public static void main(String[] args) {
-        List<String> jarPaths = new ArrayList<>();
 
-        // Parse command line arguments
-        for (String arg : args) {
-            jarPaths.add(arg);
+    /**
+     * Analyzes the given JAR files or class path and writes its report, then polls the artifacts and
+     * writes a new report whenever a class file changes, until the process is interrupted.
+     * Only the changed class files are read again; see {@link IncrementalAnalyzer}.
+     *
+     * @param paths         Paths to the JAR files, or to the class path entries in class path mode
+     * @param classpathMode Whether the paths are analyzed as one class path
+     * @param executor      Executor running the per-class passes
+     * @param cache         The analysis cache, or null
+     * @param spill         The spill of the low-memory mode, or null
+     * @param entryPatterns The user-supplied entry points of the reachability analysis, or null
+     * @param query         Selects the classes and members to report
+     * @param report        The report writer
+     * @throws IOException If there's an error writing the report
+     */
+    private static void watch(List<String> paths, boolean classpathMode, ScanExecutor executor, AnalysisCache cache,
+                              ReferenceSpill spill, List<String> entryPatterns, Query query, ReportWriter report)
+            throws IOException {
+        List<List<String>> universes = new ArrayList<>();
+        if (classpathMode) {
+            universes.add(paths);
+        } else {
+            for (String path : paths) {
+                universes.add(Collections.singletonList(path));
+            }
         }
-
-        if (jarPaths.isEmpty()) {
-            System.err.println("Usage: java -jar class-inspector.jar <path-to-jar-file> [<path-to-jar-file> ...]");
-            System.exit(1);
+        List<IncrementalAnalyzer> analyzers = new ArrayList<>();
+        for (int i = 0; i < universes.size(); i++) {
+            analyzers.add(new IncrementalAnalyzer(executor, cache, spill));
         }
 
-        boolean hasErrors = false;
-
-        for (String jarPath : jarPaths) {
-            File jarFile = new File(jarPath);
+        while (true) {
+            for (int i = 0; i < universes.size(); i++) {
+                long start = System.nanoTime();
+                Analysis analysis = null;
+                List<ClassSource> sources = new ArrayList<>();
+                try {
+                    for (String path : universes.get(i)) {
+                        sources.addAll(ClassSource.openWithNested(Paths.get(path), executor));
+                    }
+                    Analysis updated = analyzers.get(i).update(sources);
+                    if (updated != null && entryPatterns != null) {
+                        findReachableCode(updated, sources, entryPatterns);
+                    }
+                    analysis = updated;
+                } catch (IOException e) {
+                    // The artifact may be in the middle of being rewritten; try again on the next poll
+                    System.err.println("Error reading " + String.join(File.pathSeparator, universes.get(i))
+                            + ": " + e.getMessage());
+                } finally {
+                    for (ClassSource source : sources) {
+                        source.close();
+                    }
+                }
 
-            if (!jarFile.exists() || !jarFile.isFile()) {
-                System.err.println("Error: The specified JAR file does not exist or is not a file: " + jarPath);
-                hasErrors = true;
-                continue;
+                if (analysis != null) {
+                    for (Artifact artifact : analysis.getArtifacts()) {
+                        writeArtifactReport(analysis, artifact, entryPatterns != null, query, report);
+                    }
+                    System.err.println("Updated " + analyzers.get(i).getChangedCount() + " classes in "
+                            + (System.nanoTime() - start) / 1_000_000 + " ms");
+                }
             }
 
             try {
-                listClassesInJar(jarPath);
-            } catch (IOException e) {
-                System.err.println("Error reading JAR file " + jarPath + ": " + e.getMessage());
-                hasErrors = true;
+                Thread.sleep(WATCH_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
             }
         }
+    }
 
-        if (hasErrors) {
-            System.exit(1);
+    /**
+     * Marks the code reachable from the entry points: the main methods, the Main-Class and service
+     * providers declared by the artifacts, and the classes and methods matching the given patterns.
+     */
+    static void findReachableCode(Analysis analysis, List<? extends ClassSource> sources,
+                                  List<String> entryPatterns) throws IOException {
+        Metrics.start(Metrics.Phase.REACHABILITY);
+        ReachabilityAnalyzer reachability = new ReachabilityAnalyzer(analysis.getClassTable());
+        reachability.addMainMethods();
+        for (ClassSource source : sources) {
+            reachability.addDeclaredEntryPoints(source);
         }
+        for (String pattern : entryPatterns) {
+            if (!reachability.addPattern(pattern)) {
+                System.err.println("Warning: Entry point pattern matches no class or method: " + pattern);
+            }
+        }
+        reachability.run();
+        Metrics.stop(Metrics.Phase.REACHABILITY);
     }
 
     /**
-     * Lists all class files in the specified JAR file and inspects their fields and methods using ASM.
-     * Can also identify unreferenced classes and members.
+     * Writes the report of one artifact of an analysis. Only the classes selected by the query are
+     * formatted, and the statistics count those classes.
      *
-     * @param jarPath Path to the JAR file
-     * @throws IOException If there's an error reading the JAR file
+     * @param reachability Whether the statistics count reachable members instead of referenced members
+     * @param query        Selects the classes and members to report
      */
-    private static void listClassesInJar(String jarPath) throws IOException {
-        try (JarFile jar = new JarFile(jarPath)) {
-            System.out.println("Inspecting classes in " + jarPath + ":");
-
-            // Step 1: Collect information about all classes, fields, and methods
-            Map<String, ClassInfo> classInfoMap = new HashMap<>();
-            List<byte[]> classBytes = new ArrayList<>();
-
-            // For overall statistics
-            int totalClasses = 0;
-            int totalMethods = 0;
-            int totalReferencedMethods = 0;
-            int totalFields = 0;
-            int totalReferencedFields = 0;
-
-            Enumeration<JarEntry> entries = jar.entries();
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-                String name = entry.getName();
-
-                // Only process .class files and skip directories
-                if (name.endsWith(".class") && !entry.isDirectory()) {
-                    try (InputStream is = jar.getInputStream(entry)) {
-                        byte[] bytes = is.readAllBytes();
-                        classBytes.add(bytes);
-
-                        // Collect class info
-                        ClassReader reader = new ClassReader(bytes);
-                        ClassInfoCollector collector = new ClassInfoCollector(classInfoMap);
-                        reader.accept(collector, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
-                    } catch (Exception e) {
-                        System.err.println("Error collecting class info for " + name + ": " + e.getMessage());
-                    }
-                }
+    static void writeArtifactReport(Analysis analysis, Artifact artifact, boolean reachability, Query query,
+                                    ReportWriter report) throws IOException {
+        Metrics.start(Metrics.Phase.REPORT);
+        ClassTable classTable = analysis.getClassTable();
+        report.startJar(artifact.path);
+
+        // For overall statistics
+        int totalClasses = 0;
+        int totalMethods = 0;
+        int totalReferencedMethods = 0;
+        int totalFields = 0;
+        int totalReferencedFields = 0;
+
+        // Step 3: Display the results
+        for (int i = 0; i < artifact.classes.length; i++) {
+            ClassInfo classInfo = artifact.classes[i];
+            if (classInfo == null) {
+                System.err.println("Error inspecting class " + artifact.entryNames.get(i)
+                        + ": class file could not be read");
+                continue;
             }
-
-            // Step 2: Detect references between classes, fields, and methods
-            for (byte[] bytes : classBytes) {
-                try {
-                    ClassReader reader = new ClassReader(bytes);
-                    ReferenceDetector detector = new ReferenceDetector(classInfoMap);
-                    reader.accept(detector, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
-                } catch (Exception e) {
-                    System.err.println("Error detecting references: " + e.getMessage());
-                }
-            }
-
-            // Step 3: Display the results
-            entries = jar.entries();
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-                String name = entry.getName();
-
-                // Only process .class files and skip directories
-                if (name.endsWith(".class") && !entry.isDirectory()) {
-                    try (InputStream is = jar.getInputStream(entry)) {
-                        // Use ASM to read the class file
-                        ClassReader reader = new ClassReader(is);
-                        ClassInspectorVisitor visitor = new ClassInspectorVisitor(classInfoMap);
-
-                        // Accept the visitor to extract and display field and method information
-                        reader.accept(visitor, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
-
-                        // Count this class for statistics
-                        totalClasses++;
-                    } catch (Exception e) {
-                        System.err.println("Error inspecting class " + name + ": " + e.getMessage());
-                    }
-                }
+            if (!query.includesClass(classInfo, classTable, reachability)) {
+                continue;
             }
+            report.writeClass(classInfo, classTable, query);
+
+            // Count this class for statistics
+            totalClasses++;
 
-            // Calculate overall statistics
-            for (ClassInfo classInfo : classInfoMap.values()) {
+            // Members are counted on the class holding the reference state, once per class name
+            if (classTable.get(classInfo.nameId) == classInfo) {
                 totalMethods += classInfo.methods.size();
                 totalFields += classInfo.fields.size();
-                totalReferencedMethods += classInfo.referencedMethods.size();
-                totalReferencedFields += classInfo.referencedFields.size();
+                totalReferencedMethods += reachability
+                        ? classInfo.getReachableMethodCount() : classInfo.getReferencedMethodCount();
+                totalReferencedFields += reachability
+                        ? classInfo.getReachableFieldCount() : classInfo.getReferencedFieldCount();
             }
-
-            // Display overall statistics
-            System.out.println("\nOverall Statistics:");
-            System.out.println("================================================================================");
-            System.out.println("Total classes: " + totalClasses);
-            System.out.println("Total methods: " + totalMethods + 
-                              " (Referenced: " + totalReferencedMethods + 
-                              ", Not referenced: " + (totalMethods - totalReferencedMethods) + ")");
-            System.out.println("Total fields: " + totalFields + 
-                              " (Referenced: " + totalReferencedFields + 
-                              ", Not referenced: " + (totalFields - totalReferencedFields) + ")");
         }
+
+        // Display overall statistics
+        report.writeStatistics(totalClasses, totalMethods, totalReferencedMethods,
+                totalFields, totalReferencedFields);
+        report.flush();
+        Metrics.stop(Metrics.Phase.REPORT);
     }
 }
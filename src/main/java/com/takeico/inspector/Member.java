@@ -0,0 +1,97 @@
+package com.takeico.inspector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A method or field found by an {@link Inspector} query, with its reference state. The referrers
+ * are looked up in the reverse index of the analysis when they are asked for.
+ */
+public final class Member {
+    private final ClassTable classTable;
+    private final ClassInfo classInfo;
+    private final long memberKey;
+    private final int index;
+    private final boolean method;
+
+    Member(ClassTable classTable, ClassInfo classInfo, long memberKey, int index, boolean method) {
+        this.classTable = classTable;
+        this.classInfo = classInfo;
+        this.memberKey = memberKey;
+        this.index = index;
+        this.method = method;
+    }
+
+    /**
+     * Returns the dotted name of the declaring class.
+     */
+    public String getClassName() {
+        return classInfo.className;
+    }
+
+    public String getName() {
+        return classTable.getSymbols().get(SymbolTable.pairFirst(memberKey));
+    }
+
+    public String getDescriptor() {
+        return classTable.getSymbols().get(SymbolTable.pairSecond(memberKey));
+    }
+
+    public boolean isMethod() {
+        return method;
+    }
+
+    /**
+     * Returns whether any class references the member.
+     */
+    public boolean isReferenced() {
+        return method ? classInfo.isMethodReferenced(index) : classInfo.isFieldReferenced(index);
+    }
+
+    /**
+     * Returns the methods referencing the member, in the notation of {@link #toString()} and in name order.
+     * A reference made by a class itself, e.g. by an annotation, is given as the dotted class name alone.
+     */
+    public List<String> getReferrers() {
+        long[] referrers = referrers();
+        if (referrers == null) {
+            return Collections.emptyList();
+        }
+        SymbolTable symbols = classTable.getSymbols();
+        List<String> names = new ArrayList<>(referrers.length);
+        for (long referrer : referrers) {
+            int methodId = SymbolTable.pairSecond(referrer);
+            String className = classTable.getClassName(SymbolTable.pairFirst(referrer));
+            String methodName = symbols.get(symbols.getFirst(methodId));
+            names.add(methodName.equals(ClassReferences.CLASS_REFERRER) ? className
+                    : className + "#" + methodName + symbols.get(symbols.getSecond(methodId)));
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * Returns the dotted names of the classes referencing the member, without duplicates and in name order.
+     */
+    public List<String> getReferrerClassNames() {
+        long[] referrers = referrers();
+        return referrers != null ? classTable.getReferrerClassNames(referrers) : Collections.emptyList();
+    }
+
+    private long[] referrers() {
+        if (method) {
+            return classInfo.isMethodReferenced(index) ? classInfo.getMethodReferrers(index) : null;
+        }
+        return classInfo.isFieldReferenced(index) ? classInfo.getFieldReferrers(index) : null;
+    }
+
+    /**
+     * Returns the member as {@code com.example.Foo#run(I)V} for a method, or {@code com.example.Foo#count:I}
+     * for a field.
+     */
+    @Override
+    public String toString() {
+        return getClassName() + "#" + getName() + (method ? "" : ":") + getDescriptor();
+    }
+}
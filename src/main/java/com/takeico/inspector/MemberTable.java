@@ -0,0 +1,70 @@
+package com.takeico.inspector;
+
+import java.util.Arrays;
+
+/**
+ * The fields or methods of one class, stored as packed (name id, descriptor id) keys in
+ * declaration order together with their access flags. Each member is identified by its index in this table, so per-member state
+ * can live in plain arrays indexed by member.
+ *
+ * Members are added while the class is collected; after {@link #freeze()} the table is read-only
+ * and {@link #indexOf(long)} finds a member by binary search.
+ */
+class MemberTable {
+    private long[] keys = new long[4];
+    private int[] access = new int[4];
+    private int size = 0;
+    private long[] sortedKeys;
+    private int[] sortedIndexes;
+
+    /**
+     * Adds a member and returns its index. A valid class file never declares the same member twice.
+     */
+    public int add(long key, int accessFlags) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            access = Arrays.copyOf(access, size * 2);
+        }
+        keys[size] = key;
+        access[size] = accessFlags;
+        return size++;
+    }
+
+    /**
+     * Builds the lookup index. Must be called after the last member was added.
+     */
+    public void freeze() {
+        keys = Arrays.copyOf(keys, size);
+        access = Arrays.copyOf(access, size);
+        sortedKeys = keys.clone();
+        Arrays.sort(sortedKeys);
+        sortedIndexes = new int[size];
+        for (int i = 0; i < size; i++) {
+            sortedIndexes[Arrays.binarySearch(sortedKeys, keys[i])] = i;
+        }
+    }
+
+    /**
+     * Returns the index of the member with the given key, or -1 if the class doesn't declare it.
+     */
+    public int indexOf(long key) {
+        int position = Arrays.binarySearch(sortedKeys, key);
+        return position >= 0 ? sortedIndexes[position] : -1;
+    }
+
+    public boolean contains(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    public long keyAt(int index) {
+        return keys[index];
+    }
+
+    public int accessAt(int index) {
+        return access[index];
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,121 @@
+package com.takeico.inspector;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.TypePath;
+
+/**
+ * A MethodVisitor implementation that detects references to other classes, fields, and methods.
+ */
+class MethodReferenceVisitor extends MethodVisitor {
+    private final ReferenceDetector detector;
+    private final int methodId;  // Member id of the method whose body is being visited
+    private AnnotationVisitor annotationVisitor;  // Created for the first annotation of the method
+
+    public MethodReferenceVisitor(ReferenceDetector detector, int methodId) {
+        super(Opcodes.ASM9);
+        this.detector = detector;
+        this.methodId = methodId;
+    }
+
+    @Override
+    public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+        detector.addFieldReference(owner, name, descriptor, methodId);
+    }
+
+    @Override
+    public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+        detector.addMethodReference(owner, name, descriptor, methodId);
+    }
+
+    @Override
+    public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle,
+                                       Object... bootstrapMethodArguments) {
+        // The bootstrap method, e.g. LambdaMetafactory, and its arguments, e.g. the lambda target
+        detector.addDescriptorReferences(descriptor);
+        detector.addHandleReference(bootstrapMethodHandle, methodId);
+        for (Object argument : bootstrapMethodArguments) {
+            detector.addConstantReference(argument, methodId);
+        }
+    }
+
+    @Override
+    public void visitLdcInsn(Object value) {
+        detector.addConstantReference(value, methodId);
+    }
+
+    @Override
+    public void visitTypeInsn(int opcode, String type) {
+        if (type.startsWith("[")) {
+            // Handle array types
+            detector.addDescriptorReferences(type);
+        } else {
+            detector.addClassReference(type);
+        }
+    }
+
+    @Override
+    public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+        detector.addDescriptorReferences(descriptor);
+    }
+
+    @Override
+    public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+        // A null type is a finally block
+        if (type != null) {
+            detector.addClassReference(type);
+        }
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotationDefault() {
+        return annotationVisitor();
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+        return visitAnnotation(descriptor);
+    }
+
+    @Override
+    public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+        return visitAnnotation(descriptor);
+    }
+
+    @Override
+    public AnnotationVisitor visitParameterAnnotation(int parameter, String descriptor, boolean visible) {
+        return visitAnnotation(descriptor);
+    }
+
+    @Override
+    public AnnotationVisitor visitInsnAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+        return visitAnnotation(descriptor);
+    }
+
+    @Override
+    public AnnotationVisitor visitTryCatchAnnotation(int typeRef, TypePath typePath, String descriptor,
+                                                     boolean visible) {
+        return visitAnnotation(descriptor);
+    }
+
+    @Override
+    public AnnotationVisitor visitLocalVariableAnnotation(int typeRef, TypePath typePath, Label[] start, Label[] end,
+                                                          int[] index, String descriptor, boolean visible) {
+        return visitAnnotation(descriptor);
+    }
+
+    private AnnotationVisitor visitAnnotation(String descriptor) {
+        detector.addDescriptorReferences(descriptor);
+        return annotationVisitor();
+    }
+
+    private AnnotationVisitor annotationVisitor() {
+        if (annotationVisitor == null) {
+            annotationVisitor = detector.annotationVisitor(methodId);
+        }
+        return annotationVisitor;
+    }
+}
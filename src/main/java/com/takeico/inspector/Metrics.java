@@ -0,0 +1,225 @@
+package com.takeico.inspector;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Phase timers and counters of the inspector, for finding out where the time of a run goes.
+ *
+ * Instrumentation is disabled by default, and every call returns right away after checking a
+ * static flag, so the instrumented code paths cost next to nothing. Once enabled, phases measure
+ * their wall time and the bytes allocated by all threads while they run; counters are updated
+ * from the worker threads without contention. Phases that run more than once, e.g. for each JAR
+ * file or each update of watch mode, are accumulated; while JAR files are analyzed concurrently,
+ * a phase counts the wall time during which any of them is in the phase.
+ */
+final class Metrics {
+
+    /**
+     * The phases of a run. Each phase is started and stopped by the thread driving an analysis.
+     */
+    enum Phase {
+        OPEN("Open archives"),
+        CACHE("Analysis cache"),
+        COLLECT("Step 1: Collect"),
+        RESOLVE("Step 2: Resolve"),
+        REACHABILITY("Reachability"),
+        GRAPH("Dependency graph"),
+        REPORT("Step 3: Report");
+
+        final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * The counters of a run.
+     */
+    enum Counter {
+        ARCHIVES("Archives opened", false),
+        CLASSES("Classes collected", false),
+        CLASS_BYTES("Class file bytes read", false),
+        INFLATED_BYTES("Bytes inflated", false),
+        READ_NANOS("Time reading and inflating class files (all threads)", true),
+        PARSE_NANOS("Time parsing class files (all threads)", true),
+        CACHE_HITS("Cache hits", false),
+        CACHE_MISSES("Cache misses", false),
+        REFERENCES("References recorded", false),
+        RESOLVED_REFERENCES("References resolved", false),
+        EXTERNAL_REFERENCES("References dropped: class not in the analysis", false),
+        UNRESOLVED_REFERENCES("References dropped: member not found", false),
+        HIERARCHY_WALKS("Hierarchy walks (memoized lookups that missed)", false),
+        PLATFORM_CLASSES("Platform classes read", false);
+
+        final String label;
+        final boolean nanos;
+
+        Counter(String label, boolean nanos) {
+            this.label = label;
+            this.nanos = nanos;
+        }
+    }
+
+    // Set once before the run starts, so all worker threads see it
+    private static boolean enabled;
+
+    private static final LongAdder[] counters = new LongAdder[Counter.values().length];
+    private static final long[] phaseNanos = new long[Phase.values().length];
+    private static final long[] phaseAllocated = new long[Phase.values().length];
+    private static final long[] phaseStartNanos = new long[Phase.values().length];
+    private static final long[] phaseStartAllocated = new long[Phase.values().length];
+    private static final int[] phaseActive = new int[Phase.values().length];  // Number of analyses in the phase
+
+    static {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Enables the instrumentation. Must be called before any phase runs.
+     */
+    static void enable() {
+        enabled = true;
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Adds to a counter.
+     */
+    static void add(Counter counter, long value) {
+        if (enabled) {
+            counters[counter.ordinal()].add(value);
+        }
+    }
+
+    /**
+     * Returns the current time for a {@link Counter} of nanoseconds, or 0 if disabled.
+     */
+    static long nanoTime() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Adds the time elapsed since the given {@link #nanoTime()} to a counter of nanoseconds.
+     */
+    static void addElapsed(Counter counter, long startNanos) {
+        if (enabled) {
+            counters[counter.ordinal()].add(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Starts timing a phase.
+     */
+    static synchronized void start(Phase phase) {
+        if (enabled && phaseActive[phase.ordinal()]++ == 0) {
+            phaseStartAllocated[phase.ordinal()] = allocatedBytes();
+            phaseStartNanos[phase.ordinal()] = System.nanoTime();
+        }
+    }
+
+    /**
+     * Stops timing a phase and adds the elapsed time and allocated bytes to its totals.
+     */
+    static synchronized void stop(Phase phase) {
+        if (enabled && --phaseActive[phase.ordinal()] == 0) {
+            phaseNanos[phase.ordinal()] += System.nanoTime() - phaseStartNanos[phase.ordinal()];
+            long allocated = allocatedBytes();
+            if (allocated >= 0 && phaseStartAllocated[phase.ordinal()] >= 0) {
+                phaseAllocated[phase.ordinal()] += allocated - phaseStartAllocated[phase.ordinal()];
+            }
+        }
+    }
+
+    /**
+     * Writes the metrics as a human-readable table.
+     */
+    static synchronized void writeText(Writer out) throws IOException {
+        String lineSeparator = System.lineSeparator();
+        out.write("Phase                       Time (ms)   Allocated (MB)" + lineSeparator);
+        for (Phase phase : Phase.values()) {
+            out.write(String.format(Locale.ROOT, "%-24s %12.1f %16.1f%s", phase.label,
+                    phaseNanos[phase.ordinal()] / 1e6, phaseAllocated[phase.ordinal()] / (double) (1 << 20),
+                    lineSeparator));
+        }
+        for (Counter counter : Counter.values()) {
+            long value = counters[counter.ordinal()].sum();
+            out.write(counter.nanos
+                    ? String.format(Locale.ROOT, "%s: %.1f ms%s", counter.label, value / 1e6, lineSeparator)
+                    : counter.label + ": " + value + lineSeparator);
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the metrics as a JSON object with the times in nanoseconds and the allocations in bytes.
+     */
+    static synchronized void writeJson(Writer out) throws IOException {
+        out.write("{\"phases\":{");
+        for (Phase phase : Phase.values()) {
+            out.write(phase.ordinal() > 0 ? ",\"" : "\"");
+            out.write(jsonName(phase.name()));
+            out.write("\":{\"nanos\":" + phaseNanos[phase.ordinal()]
+                    + ",\"allocatedBytes\":" + phaseAllocated[phase.ordinal()] + "}");
+        }
+        out.write("},\"counters\":{");
+        for (Counter counter : Counter.values()) {
+            out.write(counter.ordinal() > 0 ? ",\"" : "\"");
+            out.write(jsonName(counter.name()));
+            out.write("\":" + counters[counter.ordinal()].sum());
+        }
+        out.write("}}\n");
+        out.flush();
+    }
+
+    /**
+     * Converts a constant name such as CLASS_BYTES to a JSON member name such as classBytes.
+     */
+    private static String jsonName(String constant) {
+        StringBuilder name = new StringBuilder();
+        boolean upper = false;
+        for (char c : constant.toCharArray()) {
+            if (c == '_') {
+                upper = true;
+            } else {
+                name.append(upper ? c : Character.toLowerCase(c));
+                upper = false;
+            }
+        }
+        return name.toString();
+    }
+
+    /**
+     * Returns the bytes allocated so far by all live threads, or -1 if the JVM can't tell.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+        if (!allocation.isThreadAllocatedMemorySupported() || !allocation.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        long total = 0;
+        for (long allocated : allocation.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (allocated > 0) {
+                total += allocated;
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,221 @@
+package com.takeico.inspector;
+
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.net.URI;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The classes of the Java platform, such as {@code java.util.AbstractList}, read on demand from the
+ * run-time image of the running JDK through the {@code jrt:/} file system. They let the
+ * {@link ClassHierarchy} resolve members inherited through JDK supertypes, which otherwise end the search.
+ *
+ * A class is read the first time the hierarchy asks for it, and only its header and members are
+ * parsed. The lookups are kept in a concurrent map keyed by the symbol id of the class name, so cache
+ * hits take no lock. The map is bounded by a clock: a lookup used since the hand last passed it gets a
+ * second chance, and the hand evicts the first one that wasn't. A class asked for by several threads
+ * at the same time is read once while the others wait for it, and a class evicted from the cache is
+ * kept as long as a caller still refers to it, so a class is never represented by two instances.
+ */
+class PlatformClasses {
+    private static final int CAPACITY = 4096;  // Classes kept in the cache
+
+    // Set once before the run starts, like the metrics switch, so all worker threads see it
+    private static FileSystem image;
+    private static final ConcurrentHashMap<String, String[]> modulesByPackage = new ConcurrentHashMap<>();
+
+    /**
+     * A lookup of a class, made once; the class is null if the name is not a platform class.
+     */
+    private final class Lookup {
+        final int nameId;
+        volatile boolean used;  // Since the clock hand last passed it
+        private volatile boolean done;
+        private ClassInfo classInfo;  // Published by done
+
+        Lookup(int nameId) {
+            this.nameId = nameId;
+        }
+
+        Lookup(int nameId, ClassInfo classInfo) {
+            this.nameId = nameId;
+            this.classInfo = classInfo;
+            this.done = true;
+        }
+
+        ClassInfo get() {
+            if (!done) {
+                synchronized (this) {
+                    if (!done) {
+                        classInfo = read(symbols.get(nameId));
+                        done = true;
+                    }
+                }
+            }
+            return classInfo;
+        }
+    }
+
+    /**
+     * A class evicted from the cache, which is read again only once no caller refers to it any more.
+     */
+    private static final class EvictedClass extends WeakReference<ClassInfo> {
+        final int nameId;
+
+        EvictedClass(ClassInfo classInfo, ReferenceQueue<ClassInfo> queue) {
+            super(classInfo, queue);
+            this.nameId = classInfo.nameId;
+        }
+    }
+
+    private final SymbolTable symbols;
+    private final ConcurrentHashMap<Integer, Lookup> lookups = new ConcurrentHashMap<>();
+    // Guarded by the lock of clock, which is only taken on misses
+    private final Lookup[] clock = new Lookup[CAPACITY];
+    private int clockSize;
+    private int hand;
+    private final Map<Integer, EvictedClass> evicted = new HashMap<>();
+    private final ReferenceQueue<ClassInfo> collected = new ReferenceQueue<>();
+
+    /**
+     * @param symbols The symbol table of the analysis, in which the names of the platform classes are interned
+     */
+    PlatformClasses(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    /**
+     * Enables the platform classes for all analyses of this run.
+     *
+     * @throws IOException If the JVM has no run-time image, i.e. runs on Java 8
+     */
+    static void enable() throws IOException {
+        try {
+            image = FileSystems.getFileSystem(URI.create("jrt:/"));
+        } catch (RuntimeException e) {
+            throw new IOException("The jrt:/ file system of the JDK is not available", e);
+        }
+    }
+
+    static boolean isEnabled() {
+        return image != null;
+    }
+
+    /**
+     * Returns the platform class with the given name id, or null if there's no such platform class.
+     *
+     * @throws UncheckedIOException If the run-time image can't be read
+     */
+    public ClassInfo get(int nameId) {
+        Lookup lookup = lookups.get(nameId);
+        if (lookup == null) {
+            lookup = add(nameId);
+        } else if (!lookup.used) {
+            lookup.used = true;
+        }
+        // Read outside the lock of the clock, so that other classes can be looked up meanwhile
+        return lookup.get();
+    }
+
+    /**
+     * Adds the lookup of a class missing from the cache, evicting another one if the cache is full.
+     */
+    private Lookup add(int nameId) {
+        synchronized (clock) {
+            Lookup lookup = lookups.get(nameId);
+            if (lookup != null) {
+                return lookup;
+            }
+            for (Reference<? extends ClassInfo> ref; (ref = collected.poll()) != null; ) {
+                evicted.remove(((EvictedClass) ref).nameId, ref);
+            }
+            EvictedClass evictedClass = evicted.remove(nameId);
+            ClassInfo classInfo = evictedClass != null ? evictedClass.get() : null;
+            lookup = classInfo != null ? new Lookup(nameId, classInfo) : new Lookup(nameId);
+
+            if (clockSize < CAPACITY) {
+                clock[clockSize++] = lookup;
+            } else {
+                // Lookups still being read are passed over too, so that no class is read twice
+                Lookup victim;
+                while ((victim = clock[hand]).used || !victim.done) {
+                    victim.used = false;
+                    hand = (hand + 1) % CAPACITY;
+                }
+                lookups.remove(victim.nameId, victim);
+                if (victim.classInfo != null) {
+                    evicted.put(victim.nameId, new EvictedClass(victim.classInfo, collected));
+                }
+                clock[hand] = lookup;
+                hand = (hand + 1) % CAPACITY;
+            }
+            lookups.put(nameId, lookup);
+            return lookup;
+        }
+    }
+
+    private ClassInfo read(String internalName) {
+        int slash = internalName.lastIndexOf('/');
+        if (slash < 0 || internalName.startsWith("[")) {
+            // Platform classes are in named packages
+            return null;
+        }
+        try {
+            for (String module : getModules(internalName.substring(0, slash).replace('/', '.'))) {
+                byte[] bytes;
+                try {
+                    bytes = Files.readAllBytes(image.getPath("/modules", module, internalName + ".class"));
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                long start = Metrics.nanoTime();
+                ClassInfoCollector collector = new ClassInfoCollector(symbols);
+                new ClassReader(bytes).accept(collector,
+                        ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+                Metrics.addElapsed(Metrics.Counter.PARSE_NANOS, start);
+                Metrics.add(Metrics.Counter.PLATFORM_CLASSES, 1);
+                return collector.getClassInfo();
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read the platform class " + internalName, e);
+        }
+    }
+
+    /**
+     * Returns the modules of the run-time image containing a package, usually one; the image lists
+     * them as the entries of {@code /packages/<package>}.
+     */
+    private static String[] getModules(String packageName) throws IOException {
+        String[] modules = modulesByPackage.get(packageName);
+        if (modules == null) {
+            List<String> names = new ArrayList<>();
+            Path directory = image.getPath("/packages", packageName);
+            if (Files.isDirectory(directory)) {
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                    for (Path entry : entries) {
+                        names.add(entry.getFileName().toString());
+                    }
+                }
+            }
+            modules = names.toArray(new String[0]);
+            modulesByPackage.putIfAbsent(packageName, modules);
+        }
+        return modules;
+    }
+}
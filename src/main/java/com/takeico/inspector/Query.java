@@ -0,0 +1,163 @@
+package com.takeico.inspector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Selects the classes and members of an analysis, for {@link Inspector} and for filtered reports.
+ * A query is immutable; each method returns a new query that narrows this one. Class and package
+ * names are dotted names, such as {@code com.example.Foo} and {@code com.example}.
+ * <pre>
+ * inspector.members(Query.all().inPackage("com.example.api").unreferencedOnly())
+ * </pre>
+ */
+public final class Query {
+    private static final Query ALL = new Query(Collections.emptyList(), null, null, null, false);
+
+    private final List<String> packageNames;  // Any of them, with their subpackages; empty for all packages
+    private final String className;
+    private final String memberName;
+    private final String descriptor;
+    private final boolean unreferencedOnly;
+
+    private Query(List<String> packageNames, String className, String memberName, String descriptor,
+                  boolean unreferencedOnly) {
+        this.packageNames = packageNames;
+        this.className = className;
+        this.memberName = memberName;
+        this.descriptor = descriptor;
+        this.unreferencedOnly = unreferencedOnly;
+    }
+
+    /**
+     * Returns the query selecting all classes and members.
+     */
+    public static Query all() {
+        return ALL;
+    }
+
+    /**
+     * Selects the classes in the given package and its subpackages. Given several times, the classes
+     * in any of the packages are selected.
+     */
+    public Query inPackage(String packageName) {
+        List<String> names = new ArrayList<>(packageNames);
+        names.add(packageName);
+        return new Query(Collections.unmodifiableList(names), className, memberName, descriptor, unreferencedOnly);
+    }
+
+    /**
+     * Selects the class with the given name.
+     */
+    public Query inClass(String className) {
+        return new Query(packageNames, className, memberName, descriptor, unreferencedOnly);
+    }
+
+    /**
+     * Selects the methods and fields with the given name, with any descriptor.
+     */
+    public Query withMember(String name) {
+        return new Query(packageNames, className, name, null, unreferencedOnly);
+    }
+
+    /**
+     * Selects the method or field with the given name and descriptor, such as {@code run} and {@code (I)V}.
+     */
+    public Query withMember(String name, String descriptor) {
+        return new Query(packageNames, className, name, descriptor, unreferencedOnly);
+    }
+
+    /**
+     * Selects only the members that no class references. In a report with reachability, the
+     * unreachable members are selected instead.
+     */
+    public Query unreferencedOnly() {
+        return new Query(packageNames, className, memberName, descriptor, true);
+    }
+
+    List<String> getPackageNames() {
+        return packageNames;
+    }
+
+    String getClassName() {
+        return className;
+    }
+
+    /**
+     * Returns whether the query selects single members rather than all members of the selected classes.
+     */
+    boolean selectsMembers() {
+        return memberName != null || unreferencedOnly;
+    }
+
+    /**
+     * Returns whether the query selects the class with the given dotted name.
+     */
+    boolean includesClassName(String name) {
+        if (className != null && !className.equals(name)) {
+            return false;
+        }
+        if (packageNames.isEmpty()) {
+            return true;
+        }
+        for (String packageName : packageNames) {
+            if (name.startsWith(packageName) && name.length() > packageName.length()
+                    && name.charAt(packageName.length()) == '.') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the query selects a member of a selected class.
+     *
+     * @param memberKey The packed (name id, descriptor id) key of the member
+     * @param live      Whether the member is referenced, or reachable in a report with reachability
+     */
+    boolean includesMember(SymbolTable symbols, long memberKey, boolean live) {
+        if (unreferencedOnly && live) {
+            return false;
+        }
+        return (memberName == null || memberName.equals(symbols.get(SymbolTable.pairFirst(memberKey))))
+                && (descriptor == null || descriptor.equals(symbols.get(SymbolTable.pairSecond(memberKey))));
+    }
+
+    /**
+     * Returns whether the query selects a class of a report, and at least one of its members if the
+     * query selects single members. The members are looked up like in the report: on the class holding
+     * the reference state, where methods that are not defined in that class are left out.
+     *
+     * @param reachability Whether the report marks reachable members instead of referenced ones
+     */
+    boolean includesClass(ClassInfo classInfo, ClassTable classTable, boolean reachability) {
+        if (!includesClassName(classInfo.className)) {
+            return false;
+        }
+        if (!selectsMembers()) {
+            return true;
+        }
+
+        SymbolTable symbols = classTable.getSymbols();
+        ClassInfo state = classTable.get(classInfo.nameId);
+        for (int i = 0; i < classInfo.methods.size(); i++) {
+            long methodKey = classInfo.methods.keyAt(i);
+            int methodIndex = state == classInfo ? i : state.methods.indexOf(methodKey);
+            if (methodIndex >= 0 && includesMember(symbols, methodKey, reachability
+                    ? state.isMethodReachable(methodIndex) : state.isMethodReferenced(methodIndex))) {
+                return true;
+            }
+        }
+        for (int i = 0; i < classInfo.fields.size(); i++) {
+            long fieldKey = classInfo.fields.keyAt(i);
+            int fieldIndex = state == classInfo ? i : state.fields.indexOf(fieldKey);
+            boolean live = fieldIndex >= 0
+                    && (reachability ? state.isFieldReachable(fieldIndex) : state.isFieldReferenced(fieldIndex));
+            if (includesMember(symbols, fieldKey, live)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,608 @@
+package com.takeico.inspector;
+
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the code that is reachable from the entry points of an analysis, as opposed to code that
+ * is merely referenced: a class that is only used by dead code is dead as well.
+ *
+ * The analysis runs on a graph with int-indexed nodes: one node per method, one per class (standing
+ * for its loading and initialization, and for the code of its synthetic methods such as lambda
+ * bodies), and one per distinct virtual call target (owner, name, descriptor). The edges are built
+ * from the references detected in the class files and kept in compressed arrays; a worklist then
+ * marks everything reachable from the roots, visiting each node and edge once. Virtual calls are
+ * expanded by class hierarchy analysis: a call reaches the method each subtype of the owner
+ * resolves it to. The expansion goes through dispatch nodes, one per (class with subtypes, name,
+ * descriptor) reached, leading to the method the class resolves the call to and to the dispatch
+ * nodes of its direct subtypes. They are created as the worklist reaches them and shared by all
+ * calls, so each subtype is expanded once per method it is called with, however many calls there are.
+ *
+ * Methods that code outside the analysis may call, such as overrides of {@link Object#toString()}
+ * or implementations of library interfaces, are live as soon as their class is. With
+ * {@link PlatformClasses}, a class whose library supertypes all belong to the JDK only makes the
+ * methods overriding theirs live.
+ *
+ * Reflection is not tracked; classes used only through reflection must be given as entry points.
+ */
+class ReachabilityAnalyzer {
+    private static final String INIT = "<init>";
+    private static final String CLINIT = "<clinit>";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+    private static final String SERVICES = "META-INF/services/";
+    private static final Attributes.Name START_CLASS = new Attributes.Name("Start-Class");
+
+    /**
+     * Methods that the JVM and the class library call on any object, given as "name descriptor".
+     */
+    private static final String[] CALLED_BY_PLATFORM = {
+            "toString ()Ljava/lang/String;",
+            "hashCode ()I",
+            "equals (Ljava/lang/Object;)Z",
+            "clone ()Ljava/lang/Object;",
+            "finalize ()V",
+            "writeObject (Ljava/io/ObjectOutputStream;)V",
+            "readObject (Ljava/io/ObjectInputStream;)V",
+            "readObjectNoData ()V",
+            "writeReplace ()Ljava/lang/Object;",
+            "readResolve ()Ljava/lang/Object;",
+    };
+
+    private final ClassTable classTable;
+    private final SymbolTable symbols;
+    private final ClassHierarchy hierarchy;
+    private final List<ClassInfo> classes;
+    private final int[] classIndexes;  // Name id -> class index, or -1
+    private final int[] methodOffsets;  // Class index -> node of its first method
+    private final int[] methodClasses;  // Method node -> class index
+    private final int methodCount;
+    private final int classCount;
+    private final long[] platformMethodKeys;
+
+    // Subclasses and implementations of each class, in compressed form
+    private int[] subtypeOffsets;
+    private int[] subtypes;
+
+    // Virtual call and dispatch nodes, numbered after the class nodes
+    private final Map<Long, Integer> methodKeyIds = new HashMap<>();
+    private final Map<Long, Integer> virtualNodes = new HashMap<>();
+    private int[] virtualOwners = new int[64];
+    private long[] virtualKeys = new long[64];
+    private boolean[] dispatchNodes = new boolean[64];
+    private int virtualCount;
+
+    // Edges of the method and class nodes, in compressed form
+    private int[] edgeOffsets;
+    private int[] edgeTargets;
+
+    private int[] roots = new int[16];
+    private int rootCount;
+
+    /**
+     * Builds the graph of the classes registered in the given table.
+     */
+    public ReachabilityAnalyzer(ClassTable classTable) {
+        this.classTable = classTable;
+        this.symbols = classTable.getSymbols();
+        this.hierarchy = new ClassHierarchy(classTable);
+        this.classes = classTable.getClasses();
+        this.classCount = classes.size();
+
+        classIndexes = new int[symbols.size()];
+        Arrays.fill(classIndexes, -1);
+        methodOffsets = new int[classCount + 1];
+        for (int i = 0; i < classCount; i++) {
+            ClassInfo classInfo = classes.get(i);
+            classIndexes[classInfo.nameId] = i;
+            methodOffsets[i + 1] = methodOffsets[i] + classInfo.methods.size();
+        }
+        methodCount = methodOffsets[classCount];
+        methodClasses = new int[methodCount];
+        for (int i = 0; i < classCount; i++) {
+            Arrays.fill(methodClasses, methodOffsets[i], methodOffsets[i + 1], i);
+        }
+
+        platformMethodKeys = new long[CALLED_BY_PLATFORM.length];
+        for (int i = 0; i < CALLED_BY_PLATFORM.length; i++) {
+            String[] method = CALLED_BY_PLATFORM[i].split(" ");
+            platformMethodKeys[i] = classTable.memberKey(method[0], method[1]);
+        }
+
+        buildSubtypes();
+        buildEdges();
+    }
+
+    /**
+     * Adds the {@code public static void main(String[])} methods of all classes as roots.
+     */
+    public void addMainMethods() {
+        long mainKey = classTable.memberKey("main", "([Ljava/lang/String;)V");
+        for (int i = 0; i < classCount; i++) {
+            int methodIndex = classes.get(i).methods.indexOf(mainKey);
+            if (methodIndex >= 0 && (classes.get(i).methods.accessAt(methodIndex) & Opcodes.ACC_STATIC) != 0) {
+                addRoot(methodOffsets[i] + methodIndex);
+            }
+        }
+    }
+
+    /**
+     * Adds the entry points declared by a JAR file or class directory as roots: the main method of the
+     * {@code Main-Class} (or Spring Boot {@code Start-Class}) of its manifest, and the service providers
+     * listed in {@code META-INF/services}.
+     *
+     * @throws IOException If the manifest or a service file can't be read
+     */
+    public void addDeclaredEntryPoints(ClassSource source) throws IOException {
+        byte[] manifestBytes = source.readResource(MANIFEST);
+        if (manifestBytes != null) {
+            Attributes attributes = new Manifest(new ByteArrayInputStream(manifestBytes)).getMainAttributes();
+            // A Spring Boot launcher runs the Start-Class of the application
+            for (String mainClass : new String[] {attributes.getValue(Attributes.Name.MAIN_CLASS),
+                    attributes.getValue(START_CLASS)}) {
+                int classIndex = mainClass != null ? classIndex(symbols.lookup(mainClass.trim().replace('.', '/'))) : -1;
+                if (classIndex >= 0) {
+                    addRoot(classNode(classIndex));
+                    addMethodRoot(classIndex, "main", "([Ljava/lang/String;)V");
+                }
+            }
+        }
+
+        for (String serviceFile : source.listResources(SERVICES)) {
+            byte[] bytes = source.readResource(serviceFile);
+            for (String line : new String(bytes, StandardCharsets.UTF_8).split("\n")) {
+                int comment = line.indexOf('#');
+                String provider = (comment >= 0 ? line.substring(0, comment) : line).trim();
+                int classIndex = classIndex(symbols.lookup(provider.replace('.', '/')));
+                if (classIndex >= 0) {
+                    // The service loader uses a public static provider() method or the no-arg constructor
+                    addRoot(classNode(classIndex));
+                    addMethodRoot(classIndex, INIT, "()V");
+                    addMethodRoot(classIndex, "provider", "()L" + serviceFile.substring(SERVICES.length())
+                            .replace('.', '/') + ";");
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the classes or methods matching a pattern as roots. The pattern is a dotted class name,
+     * optionally followed by '#' and a method name; '*' matches any part of a name except a dot,
+     * '**' matches anything. Without a method name, all methods of the matching classes are roots.
+     *
+     * @param pattern A pattern such as {@code com.example.Main#main} or {@code com.example.api.**}
+     * @return Whether the pattern matched anything
+     */
+    public boolean addPattern(String pattern) {
+        int hash = pattern.indexOf('#');
+        Pattern classPattern = compileGlob(hash >= 0 ? pattern.substring(0, hash) : pattern);
+        Pattern methodPattern = hash >= 0 ? compileGlob(pattern.substring(hash + 1)) : null;
+
+        boolean matched = false;
+        for (int i = 0; i < classCount; i++) {
+            ClassInfo classInfo = classes.get(i);
+            if (!classPattern.matcher(classInfo.className).matches()) {
+                continue;
+            }
+            addRoot(classNode(i));
+            for (int j = 0; j < classInfo.methods.size(); j++) {
+                String name = symbols.get(SymbolTable.pairFirst(classInfo.methods.keyAt(j)));
+                if (methodPattern == null || methodPattern.matcher(name).matches()) {
+                    addRoot(methodOffsets[i] + j);
+                    matched = true;
+                }
+            }
+            matched |= methodPattern == null;
+        }
+        return matched;
+    }
+
+    /**
+     * Marks the code reachable from the roots and stores the result in the classes of the table.
+     */
+    public void run() {
+        boolean[] reached = new boolean[methodCount + classCount + virtualCount];
+        int[] stack = new int[Math.max(16, rootCount)];
+        int size = 0;
+        for (int i = 0; i < rootCount; i++) {
+            if (!reached[roots[i]]) {
+                reached[roots[i]] = true;
+                stack[size++] = roots[i];
+            }
+        }
+
+        int[] successors = new int[16];
+        while (size > 0) {
+            int node = stack[--size];
+            int successorCount = 0;
+            if (node < methodCount) {
+                successors[successorCount++] = classNode(methodClasses[node]);
+            } else if (node < methodCount + classCount) {
+                int classIndex = node - methodCount;
+                ClassInfo classInfo = classes.get(classIndex);
+                for (int target : classTargets(classIndex, classInfo)) {
+                    if (successorCount == successors.length) {
+                        successors = Arrays.copyOf(successors, successorCount * 2);
+                    }
+                    successors[successorCount++] = target;
+                }
+            } else {
+                int classIndex = virtualOwners[node - methodCount - classCount];
+                long methodKey = virtualKeys[node - methodCount - classCount];
+                if (!dispatchNodes[node - methodCount - classCount]) {
+                    // A virtual call loads its owner
+                    successors[successorCount++] = classNode(classIndex);
+                }
+                // Dispatch to the implementation of the class, then on to its direct subtypes;
+                // a subtype without subtypes of its own needs no dispatch node
+                successorCount = addImplementation(classIndex, methodKey, successors, successorCount);
+                for (int i = subtypeOffsets[classIndex]; i < subtypeOffsets[classIndex + 1]; i++) {
+                    if (successorCount + 1 >= successors.length) {
+                        successors = Arrays.copyOf(successors, successors.length * 2);
+                    }
+                    int subtype = subtypes[i];
+                    if (subtypeOffsets[subtype] == subtypeOffsets[subtype + 1]) {
+                        successorCount = addImplementation(subtype, methodKey, successors, successorCount);
+                    } else {
+                        successors[successorCount++] = virtualNode(subtype, methodKey, true);
+                    }
+                }
+            }
+
+            int edgeStart = node < methodCount + classCount ? edgeOffsets[node] : 0;
+            int edgeEnd = node < methodCount + classCount ? edgeOffsets[node + 1] : 0;
+            for (int i = 0; i < successorCount + edgeEnd - edgeStart; i++) {
+                int target = i < successorCount ? successors[i] : edgeTargets[edgeStart + i - successorCount];
+                if (target >= reached.length) {
+                    // A dispatch node created by this node
+                    reached = Arrays.copyOf(reached, Math.max(reached.length * 2, target + 1));
+                }
+                if (!reached[target]) {
+                    reached[target] = true;
+                    if (size == stack.length) {
+                        stack = Arrays.copyOf(stack, size * 2);
+                    }
+                    stack[size++] = target;
+                }
+            }
+        }
+
+        store(reached);
+    }
+
+    /**
+     * Adds the method node a class resolves a virtual call to, if the analysis contains the method.
+     *
+     * @return The new number of successors
+     */
+    private int addImplementation(int classIndex, long methodKey, int[] successors, int successorCount) {
+        long method = hierarchy.resolveMethod(classes.get(classIndex), methodKey);
+        if (method != ClassHierarchy.NOT_FOUND && classIndex(SymbolTable.pairFirst(method)) >= 0) {
+            successors[successorCount++] = methodNode(method);
+        }
+        return successorCount;
+    }
+
+    /**
+     * Returns the nodes a loaded class makes reachable, besides its edges: its static initializer,
+     * its supertypes, and the methods that code outside the analysis may call.
+     */
+    private int[] classTargets(int classIndex, ClassInfo classInfo) {
+        int[] targets = new int[1 + classInfo.interfaceIds.length + 1 + classInfo.methods.size()];
+        int count = 0;
+        int superIndex = classIndex(classInfo.superNameId);
+        if (superIndex >= 0) {
+            targets[count++] = classNode(superIndex);
+        }
+        for (int interfaceId : classInfo.interfaceIds) {
+            int interfaceIndex = classIndex(interfaceId);
+            if (interfaceIndex >= 0) {
+                targets[count++] = classNode(interfaceIndex);
+            }
+        }
+
+        boolean hasLibrarySupertype = hasLibrarySupertype(classInfo);
+        // If all library supertypes are platform classes, only the methods overriding theirs can be called from outside
+        ClassInfo[] platformSupertypes = hasLibrarySupertype && !hierarchy.hasUnknownSupertypes(classInfo)
+                ? hierarchy.getPlatformSupertypes(classInfo) : null;
+        for (int i = 0; i < classInfo.methods.size(); i++) {
+            long methodKey = classInfo.methods.keyAt(i);
+            String name = symbols.get(SymbolTable.pairFirst(methodKey));
+            int access = classInfo.methods.accessAt(i);
+            if (name.equals(CLINIT)) {
+                targets[count++] = methodOffsets[classIndex] + i;
+            } else if (!name.equals(INIT) && (access & (Opcodes.ACC_STATIC | Opcodes.ACC_PRIVATE)) == 0
+                    && (isPlatformMethod(methodKey) || hasLibrarySupertype
+                            && (platformSupertypes == null || overridesAny(platformSupertypes, methodKey)))) {
+                targets[count++] = methodOffsets[classIndex] + i;
+            }
+        }
+        return Arrays.copyOf(targets, count);
+    }
+
+    /**
+     * Returns whether a class extends or implements a type outside the analysis other than Object,
+     * whose methods code outside the analysis may call.
+     */
+    private boolean hasLibrarySupertype(ClassInfo classInfo) {
+        int objectId = symbols.lookup(OBJECT);
+        ClassInfo type = classInfo;
+        for (int depth = classCount; type != null && depth > 0; depth--) {
+            if (hasLibraryInterface(type)) {
+                return true;
+            }
+            if (type.superNameId != SymbolTable.NONE && type.superNameId != objectId
+                    && classIndex(type.superNameId) < 0) {
+                return true;
+            }
+            type = classTable.get(type.superNameId);
+        }
+        for (ClassInfo superinterface : hierarchy.getSuperinterfaces(classInfo)) {
+            if (hasLibraryInterface(superinterface)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasLibraryInterface(ClassInfo classInfo) {
+        for (int interfaceId : classInfo.interfaceIds) {
+            if (classIndex(interfaceId) < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean overridesAny(ClassInfo[] supertypes, long methodKey) {
+        for (ClassInfo supertype : supertypes) {
+            int methodIndex = supertype.methods.indexOf(methodKey);
+            if (methodIndex >= 0
+                    && (supertype.methods.accessAt(methodIndex) & (Opcodes.ACC_STATIC | Opcodes.ACC_PRIVATE)) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isPlatformMethod(long methodKey) {
+        for (long platformMethodKey : platformMethodKeys) {
+            if (platformMethodKey == methodKey) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stores the reachability of the classes, methods, and fields in the classes. A field is
+     * reachable if reachable code reads or writes it.
+     */
+    private void store(boolean[] reached) {
+        boolean[][] reachableFields = new boolean[classCount][];
+        for (int i = 0; i < classCount; i++) {
+            reachableFields[i] = new boolean[classes.get(i).fields.size()];
+        }
+        for (int i = 0; i < classCount; i++) {
+            ClassInfo classInfo = classes.get(i);
+            int[] data = classInfo.references.data();
+            int position = 0;
+            while (position < classInfo.references.length()) {
+                int kind = data[position];
+                if (kind == ClassReferences.FIELD && reached[sourceNode(i, classInfo, data[position + 4])]) {
+                    ClassInfo owner = classTable.get(data[position + 1]);
+                    if (owner != null) {
+                        long field = hierarchy.resolveField(owner,
+                                SymbolTable.pairKey(data[position + 2], data[position + 3]));
+                        if (field != ClassHierarchy.NOT_FOUND && classIndex(SymbolTable.pairFirst(field)) >= 0) {
+                            reachableFields[classIndex(SymbolTable.pairFirst(field))][SymbolTable.pairSecond(field)] = true;
+                        }
+                    }
+                }
+                position += ClassReferences.recordLength(kind);
+            }
+        }
+
+        for (int i = 0; i < classCount; i++) {
+            ClassInfo classInfo = classes.get(i);
+            classInfo.setReachability(reached[classNode(i)],
+                    Arrays.copyOfRange(reached, methodOffsets[i], methodOffsets[i + 1]), reachableFields[i]);
+        }
+    }
+
+    private void buildSubtypes() {
+        subtypeOffsets = new int[classCount + 1];
+        for (int pass = 0; pass < 2; pass++) {
+            int[] next = pass == 0 ? null : Arrays.copyOf(subtypeOffsets, classCount);
+            for (int i = 0; i < classCount; i++) {
+                ClassInfo classInfo = classes.get(i);
+                int superIndex = classIndex(classInfo.superNameId);
+                if (superIndex >= 0) {
+                    if (pass == 0) {
+                        subtypeOffsets[superIndex + 1]++;
+                    } else {
+                        subtypes[next[superIndex]++] = i;
+                    }
+                }
+                for (int interfaceId : classInfo.interfaceIds) {
+                    int interfaceIndex = classIndex(interfaceId);
+                    if (interfaceIndex >= 0) {
+                        if (pass == 0) {
+                            subtypeOffsets[interfaceIndex + 1]++;
+                        } else {
+                            subtypes[next[interfaceIndex]++] = i;
+                        }
+                    }
+                }
+            }
+            if (pass == 0) {
+                for (int i = 0; i < classCount; i++) {
+                    subtypeOffsets[i + 1] += subtypeOffsets[i];
+                }
+                subtypes = new int[subtypeOffsets[classCount]];
+            }
+        }
+    }
+
+    private void buildEdges() {
+        int[] sources = new int[1024];
+        int[] targets = new int[1024];
+        int edgeCount = 0;
+        for (int i = 0; i < classCount; i++) {
+            ClassInfo classInfo = classes.get(i);
+            int[] data = classInfo.references.data();
+            int position = 0;
+            while (position < classInfo.references.length()) {
+                int kind = data[position];
+                int source;
+                int target;
+                if (kind == ClassReferences.CLASS) {
+                    source = classNode(i);
+                    int targetIndex = classIndex(data[position + 1]);
+                    target = targetIndex >= 0 ? classNode(targetIndex) : -1;
+                } else {
+                    source = sourceNode(i, classInfo, data[position + 4]);
+                    if (kind == ClassReferences.FIELD) {
+                        // Fields are marked afterwards; accessing one loads its class
+                        int targetIndex = classIndex(data[position + 1]);
+                        target = targetIndex >= 0 ? classNode(targetIndex) : -1;
+                    } else {
+                        target = methodTarget(data[position + 1], data[position + 2], data[position + 3]);
+                    }
+                }
+
+                if (target >= 0 && target != source) {
+                    if (edgeCount == sources.length) {
+                        sources = Arrays.copyOf(sources, edgeCount * 2);
+                        targets = Arrays.copyOf(targets, edgeCount * 2);
+                    }
+                    sources[edgeCount] = source;
+                    targets[edgeCount] = target;
+                    edgeCount++;
+                }
+                position += ClassReferences.recordLength(kind);
+            }
+        }
+
+        // Sort the edges by source node
+        edgeOffsets = new int[methodCount + classCount + 1];
+        for (int i = 0; i < edgeCount; i++) {
+            edgeOffsets[sources[i] + 1]++;
+        }
+        for (int i = 0; i < methodCount + classCount; i++) {
+            edgeOffsets[i + 1] += edgeOffsets[i];
+        }
+        edgeTargets = new int[edgeCount];
+        int[] next = Arrays.copyOf(edgeOffsets, methodCount + classCount);
+        for (int i = 0; i < edgeCount; i++) {
+            edgeTargets[next[sources[i]]++] = targets[i];
+        }
+    }
+
+    /**
+     * Returns the node of the referring method of a reference; references from synthetic methods,
+     * which are not collected as members, and from the class itself, such as its annotations,
+     * belong to the class node.
+     */
+    private int sourceNode(int classIndex, ClassInfo classInfo, int referrerMethodId) {
+        int methodIndex = classInfo.methods.indexOf(
+                SymbolTable.pairKey(symbols.getFirst(referrerMethodId), symbols.getSecond(referrerMethodId)));
+        return methodIndex >= 0 ? methodOffsets[classIndex] + methodIndex : classNode(classIndex);
+    }
+
+    /**
+     * Returns the node a method reference leads to: the resolved method for constructors, static and
+     * private methods, and a virtual call node for all others.
+     */
+    private int methodTarget(int ownerId, int nameId, int descriptorId) {
+        int ownerIndex = classIndex(ownerId);
+        if (ownerIndex < 0) {
+            return -1;
+        }
+        ClassInfo owner = classes.get(ownerIndex);
+        long methodKey = SymbolTable.pairKey(nameId, descriptorId);
+        long method = hierarchy.resolveMethod(owner, methodKey);
+        ClassInfo declaringClass = method != ClassHierarchy.NOT_FOUND
+                ? classTable.get(SymbolTable.pairFirst(method)) : null;
+        if (declaringClass != null) {
+            int access = declaringClass.methods.accessAt(SymbolTable.pairSecond(method));
+            if ((access & (Opcodes.ACC_STATIC | Opcodes.ACC_PRIVATE)) != 0 || symbols.get(nameId).equals(INIT)) {
+                return methodNode(method);
+            }
+        } else if (symbols.get(nameId).equals(INIT)) {
+            return classNode(ownerIndex);
+        }
+
+        return virtualNode(ownerIndex, methodKey, false);
+    }
+
+    /**
+     * Returns the virtual call node, or the dispatch node, of a method on a class, creating it if needed.
+     */
+    private int virtualNode(int classIndex, long methodKey, boolean dispatch) {
+        Integer keyId = methodKeyIds.computeIfAbsent(methodKey, key -> methodKeyIds.size());
+        return virtualNodes.computeIfAbsent(SymbolTable.pairKey(classIndex, keyId << 1 | (dispatch ? 1 : 0)), key -> {
+            if (virtualCount == virtualOwners.length) {
+                virtualOwners = Arrays.copyOf(virtualOwners, virtualCount * 2);
+                virtualKeys = Arrays.copyOf(virtualKeys, virtualCount * 2);
+                dispatchNodes = Arrays.copyOf(dispatchNodes, virtualCount * 2);
+            }
+            virtualOwners[virtualCount] = classIndex;
+            virtualKeys[virtualCount] = methodKey;
+            dispatchNodes[virtualCount] = dispatch;
+            return methodCount + classCount + virtualCount++;
+        });
+    }
+
+    private void addMethodRoot(int classIndex, String name, String descriptor) {
+        int methodIndex = classes.get(classIndex).methods.indexOf(classTable.memberKey(name, descriptor));
+        if (methodIndex >= 0) {
+            addRoot(methodOffsets[classIndex] + methodIndex);
+        }
+    }
+
+    private void addRoot(int node) {
+        if (rootCount == roots.length) {
+            roots = Arrays.copyOf(roots, rootCount * 2);
+        }
+        roots[rootCount++] = node;
+    }
+
+    private int methodNode(long method) {
+        return methodOffsets[classIndex(SymbolTable.pairFirst(method))] + SymbolTable.pairSecond(method);
+    }
+
+    private int classNode(int classIndex) {
+        return methodCount + classIndex;
+    }
+
+    private int classIndex(int nameId) {
+        return nameId >= 0 && nameId < classIndexes.length ? classIndexes[nameId] : -1;
+    }
+
+    private static Pattern compileGlob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                regex.append(".*");
+                i++;
+            } else if (c == '*') {
+                regex.append("[^.]*");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
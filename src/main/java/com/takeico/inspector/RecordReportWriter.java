@@ -0,0 +1,105 @@
+package com.takeico.inspector;
+
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Base class of the machine-readable report writers, which emit one record per class and per member.
+ * This class walks the methods and fields of a class with their reference state, looked up the same
+ * way as in the text report, and hands each of them to the subclass as soon as it is visited.
+ */
+abstract class RecordReportWriter implements ReportWriter {
+    protected final boolean reachability;
+
+    /**
+     * @param reachability Whether the records include the reachability of classes and members
+     */
+    protected RecordReportWriter(boolean reachability) {
+        this.reachability = reachability;
+    }
+
+    @Override
+    public void writeClass(ClassInfo classInfo, ClassTable classTable, Query query) throws IOException {
+        SymbolTable symbols = classTable.getSymbols();
+        // Reference state is kept on the class registered under this name
+        ClassInfo state = classTable.get(classInfo.nameId);
+
+        startClass(classInfo.className, (classInfo.access & Opcodes.ACC_INTERFACE) != 0,
+                classInfo.superNameId != SymbolTable.NONE ? classTable.getClassName(classInfo.superNameId) : null,
+                state.isReachable());
+
+        for (int i = 0; i < classInfo.methods.size(); i++) {
+            long methodKey = classInfo.methods.keyAt(i);
+            int methodIndex = state == classInfo ? i : state.methods.indexOf(methodKey);
+            // Skip methods that are not defined in the class holding the reference state
+            if (methodIndex < 0) {
+                continue;
+            }
+            boolean isReferenced = state.isMethodReferenced(methodIndex);
+            boolean isReachable = state.isMethodReachable(methodIndex);
+            if (!query.includesMember(symbols, methodKey, reachability ? isReachable : isReferenced)) {
+                continue;
+            }
+            writeMethod(classInfo.className, symbols.get(SymbolTable.pairFirst(methodKey)),
+                    symbols.get(SymbolTable.pairSecond(methodKey)), isReferenced, isReachable,
+                    referrerNames(isReferenced ? state.getMethodReferrers(methodIndex) : null, classTable));
+        }
+
+        for (int i = 0; i < classInfo.fields.size(); i++) {
+            long fieldKey = classInfo.fields.keyAt(i);
+            int fieldIndex = state == classInfo ? i : state.fields.indexOf(fieldKey);
+            boolean isReferenced = fieldIndex >= 0 && state.isFieldReferenced(fieldIndex);
+            boolean isReachable = fieldIndex >= 0 && state.isFieldReachable(fieldIndex);
+            if (!query.includesMember(symbols, fieldKey, reachability ? isReachable : isReferenced)) {
+                continue;
+            }
+            writeField(classInfo.className, symbols.get(SymbolTable.pairFirst(fieldKey)),
+                    symbols.get(SymbolTable.pairSecond(fieldKey)), isReferenced, isReachable,
+                    referrerNames(isReferenced ? state.getFieldReferrers(fieldIndex) : null, classTable));
+        }
+
+        endClass();
+    }
+
+    /**
+     * Starts the record of a class; its methods and then its fields follow.
+     *
+     * @param className      The dotted class name
+     * @param isInterface    Whether the class is an interface
+     * @param superclassName The dotted name of the superclass, or null
+     * @param reachable      Whether the class is reachable; only meaningful in reachability mode
+     */
+    protected abstract void startClass(String className, boolean isInterface, String superclassName,
+                                       boolean reachable) throws IOException;
+
+    /**
+     * Writes the record of a method.
+     *
+     * @param className  The dotted name of the declaring class
+     * @param name       The method name
+     * @param descriptor The method descriptor
+     * @param referenced Whether any class references the method
+     * @param reachable  Whether the method is reachable; only meaningful in reachability mode
+     * @param referrers  The dotted names of the referring classes in name order, empty if there are none
+     */
+    protected abstract void writeMethod(String className, String name, String descriptor, boolean referenced,
+                                        boolean reachable, List<String> referrers) throws IOException;
+
+    /**
+     * Writes the record of a field, like {@link #writeMethod}.
+     */
+    protected abstract void writeField(String className, String name, String descriptor, boolean referenced,
+                                       boolean reachable, List<String> referrers) throws IOException;
+
+    /**
+     * Ends the record of a class.
+     */
+    protected abstract void endClass() throws IOException;
+
+    private static List<String> referrerNames(long[] referrers, ClassTable classTable) {
+        return referrers != null ? classTable.getReferrerClassNames(referrers) : Collections.emptyList();
+    }
+}
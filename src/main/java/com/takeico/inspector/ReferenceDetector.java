@@ -0,0 +1,209 @@
+package com.takeico.inspector;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.TypePath;
+
+/**
+ * A ClassVisitor implementation that detects references to other classes, fields, and methods.
+ * The references are recorded as symbol ids in a {@link ClassReferences}; they are resolved
+ * against the class table later by a {@link ReferenceResolver}, so the detector can run in the
+ * same pass that collects the class table.
+ *
+ * Besides instructions and signatures, references are taken from the constants of the class:
+ * bootstrap methods and arguments of invokedynamic (e.g. the target of a lambda or a method
+ * reference), method handle, type and dynamic constants, caught and declared exception types, and
+ * annotations. Enum constants used in annotations of the class or of a field are attributed to the
+ * class itself, since there's no method referring to them; see {@link ClassReferences#CLASS_REFERRER}.
+ */
+class ReferenceDetector extends ClassVisitor {
+    private final SymbolTable symbols;
+    private final ClassReferences references = new ClassReferences();
+    private AnnotationVisitor classAnnotationVisitor;  // Created for the first annotation, see annotationVisitor
+
+    // Records the annotations of the fields; keeps no state, so it is shared by all fields
+    private final FieldVisitor fieldVisitor = new FieldVisitor(Opcodes.ASM9) {
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+            return visitClassAnnotation(descriptor);
+        }
+
+        @Override
+        public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor,
+                                                     boolean visible) {
+            return visitClassAnnotation(descriptor);
+        }
+    };
+
+    public ReferenceDetector(SymbolTable symbols) {
+        super(Opcodes.ASM9);
+        this.symbols = symbols;
+    }
+
+    /**
+     * Returns the references detected in the visited class.
+     */
+    public ClassReferences getReferences() {
+        references.trim();
+        return references;
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature,
+                      String superName, String[] interfaces) {
+        // Mark superclass as referenced
+        if (superName != null) {
+            addClassReference(superName);
+        }
+
+        // Mark interfaces as referenced
+        if (interfaces != null) {
+            for (String iface : interfaces) {
+                addClassReference(iface);
+            }
+        }
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+        return visitClassAnnotation(descriptor);
+    }
+
+    @Override
+    public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+        return visitClassAnnotation(descriptor);
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+        return fieldVisitor;
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String descriptor,
+                                    String signature, String[] exceptions) {
+        // Process parameter and return types
+        addDescriptorReferences(descriptor);
+
+        // Process declared exceptions
+        if (exceptions != null) {
+            for (String exception : exceptions) {
+                addClassReference(exception);
+            }
+        }
+
+        int methodId = symbols.internPair(symbols.intern(name), symbols.intern(descriptor));
+        return new MethodReferenceVisitor(this, methodId);
+    }
+
+    private AnnotationVisitor visitClassAnnotation(String descriptor) {
+        addDescriptorReferences(descriptor);
+        if (classAnnotationVisitor == null) {
+            int classReferrerId = symbols.internPair(symbols.intern(ClassReferences.CLASS_REFERRER),
+                    symbols.intern(ClassReferences.CLASS_REFERRER));
+            classAnnotationVisitor = annotationVisitor(classReferrerId);
+        }
+        return classAnnotationVisitor;
+    }
+
+    /**
+     * Returns a visitor recording the references in the values of an annotation: class literals,
+     * enum constants, and nested annotations. The visitor keeps no state, so it visits the nested
+     * annotations and arrays as well and can be reused for all annotations of the same referrer.
+     *
+     * @param referrerMethodId Pair id of the method the enum constants are attributed to
+     */
+    AnnotationVisitor annotationVisitor(int referrerMethodId) {
+        return new AnnotationVisitor(Opcodes.ASM9) {
+            @Override
+            public void visit(String name, Object value) {
+                if (value instanceof Type) {
+                    addConstantReference(value, referrerMethodId);
+                }
+            }
+
+            @Override
+            public void visitEnum(String name, String descriptor, String value) {
+                addFieldReference(descriptor.substring(1, descriptor.length() - 1), value, descriptor,
+                        referrerMethodId);
+            }
+
+            @Override
+            public AnnotationVisitor visitAnnotation(String name, String descriptor) {
+                addDescriptorReferences(descriptor);
+                return this;
+            }
+
+            @Override
+            public AnnotationVisitor visitArray(String name) {
+                return this;
+            }
+        };
+    }
+
+    public void addClassReference(String internalName) {
+        references.addClass(symbols.intern(internalName));
+    }
+
+    /**
+     * Marks the classes named in a field or method descriptor as referenced, including the element
+     * classes of array types.
+     */
+    public void addDescriptorReferences(String descriptor) {
+        for (int classId : symbols.classesIn(descriptor)) {
+            references.addClass(classId);
+        }
+    }
+
+    public void addFieldReference(String owner, String fieldName, String descriptor, int referrerMethodId) {
+        references.addField(symbols.intern(owner), symbols.intern(fieldName), symbols.intern(descriptor),
+                referrerMethodId);
+    }
+
+    public void addMethodReference(String owner, String methodName, String descriptor, int referrerMethodId) {
+        references.addMethod(symbols.intern(owner), symbols.intern(methodName), symbols.intern(descriptor),
+                referrerMethodId);
+    }
+
+    /**
+     * Records the field or method a method handle refers to, e.g. the target of a lambda.
+     */
+    public void addHandleReference(Handle handle, int referrerMethodId) {
+        if (handle.getTag() <= Opcodes.H_PUTSTATIC) {
+            addFieldReference(handle.getOwner(), handle.getName(), handle.getDesc(), referrerMethodId);
+        } else {
+            addMethodReference(handle.getOwner(), handle.getName(), handle.getDesc(), referrerMethodId);
+        }
+    }
+
+    /**
+     * Records the references of a loadable constant or bootstrap method argument: the class of a
+     * type constant, the classes of a method type, the target of a method handle, and the bootstrap
+     * method and arguments of a dynamic constant. Other constants don't refer to anything.
+     */
+    public void addConstantReference(Object constant, int referrerMethodId) {
+        if (constant instanceof Type) {
+            Type type = (Type) constant;
+            if (type.getSort() == Type.OBJECT) {
+                addClassReference(type.getInternalName());
+            } else {
+                addDescriptorReferences(type.getDescriptor());
+            }
+        } else if (constant instanceof Handle) {
+            addHandleReference((Handle) constant, referrerMethodId);
+        } else if (constant instanceof ConstantDynamic) {
+            ConstantDynamic dynamic = (ConstantDynamic) constant;
+            addDescriptorReferences(dynamic.getDescriptor());
+            addHandleReference(dynamic.getBootstrapMethod(), referrerMethodId);
+            for (int i = 0; i < dynamic.getBootstrapMethodArgumentCount(); i++) {
+                addConstantReference(dynamic.getBootstrapMethodArgument(i), referrerMethodId);
+            }
+        }
+    }
+}
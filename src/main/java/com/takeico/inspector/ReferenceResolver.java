@@ -0,0 +1,178 @@
+package com.takeico.inspector;
+
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Resolves the references detected in a class against a class table and records them in the
+ * reverse index of the referenced classes. References to classes that are not part of the
+ * analysis are dropped. Fields and methods are resolved through the {@link ClassHierarchy} of the
+ * table, like the JVM resolves them, so a member inherited from a superclass or superinterface is
+ * attributed to its declaration, or dropped like an external reference if it is declared by one of
+ * the {@link PlatformClasses}. Resolution only reads the table, so several resolvers can run in parallel.
+ * The references of a class can also be retracted again, as long as the table hasn't changed since
+ * they were resolved.
+ */
+class ReferenceResolver {
+    // Outcomes of a single reference
+    private static final int RESOLVED = 0;
+    private static final int EXTERNAL = 1;  // The named class is not part of the analysis
+    private static final int NOT_FOUND = 2;  // The member is not declared in the class or its supertypes
+
+    private final ClassTable classTable;
+    private final ClassHierarchy hierarchy;
+
+    public ReferenceResolver(ClassTable classTable) {
+        this.classTable = classTable;
+        this.hierarchy = new ClassHierarchy(classTable);
+    }
+
+    /**
+     * Resolves all references of the given class.
+     *
+     * @param referrerClassId Name id of the referring class
+     * @param references      The references detected in the referring class
+     */
+    public void resolve(int referrerClassId, ClassReferences references) {
+        apply(referrerClassId, references, false);
+    }
+
+    /**
+     * Removes all references of the given class from the reverse index. Since the referrers are
+     * keyed by the referring class, this must only be used for a class name that was read once.
+     *
+     * @param referrerClassId Name id of the referring class
+     * @param references      The references that were resolved for the referring class
+     */
+    public void retract(int referrerClassId, ClassReferences references) {
+        apply(referrerClassId, references, true);
+    }
+
+    /**
+     * Records the methods of a class that override a method of one of its platform supertypes as
+     * referenced by the overridden method, since the JDK may call them, e.g. {@code run()} of a
+     * subclass of {@code Thread}. Does nothing unless platform classes are enabled.
+     *
+     * @param classInfo A class registered in the table
+     */
+    public void resolveOverrides(ClassInfo classInfo) {
+        if (!classTable.hasPlatformClasses()) {
+            return;
+        }
+        ClassInfo[] platformSupertypes = hierarchy.getPlatformSupertypes(classInfo);
+        SymbolTable symbols = classTable.getSymbols();
+        for (int i = 0; i < classInfo.methods.size(); i++) {
+            long methodKey = classInfo.methods.keyAt(i);
+            if ((classInfo.methods.accessAt(i) & (Opcodes.ACC_STATIC | Opcodes.ACC_PRIVATE)) != 0
+                    || symbols.get(SymbolTable.pairFirst(methodKey)).equals("<init>")) {
+                continue;
+            }
+            for (ClassInfo supertype : platformSupertypes) {
+                int methodIndex = supertype.methods.indexOf(methodKey);
+                if (methodIndex >= 0 && (supertype.methods.accessAt(methodIndex)
+                        & (Opcodes.ACC_STATIC | Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL)) == 0) {
+                    classInfo.addMethodReferrer(i, supertype.nameId,
+                            symbols.internPair(SymbolTable.pairFirst(methodKey), SymbolTable.pairSecond(methodKey)));
+                    break;
+                }
+            }
+        }
+    }
+
+    private void apply(int referrerClassId, ClassReferences references, boolean retract) {
+        int[] data = references.data();
+        // Outcomes of the references, counted locally and added to the metrics once per class
+        int[] outcomes = new int[3];
+        int position = 0;
+        while (position < references.length()) {
+            int kind = data[position];
+            switch (kind) {
+                case ClassReferences.CLASS:
+                    outcomes[addClassReference(data[position + 1], referrerClassId, retract)]++;
+                    break;
+                case ClassReferences.FIELD:
+                    outcomes[addFieldReference(data[position + 1],
+                            SymbolTable.pairKey(data[position + 2], data[position + 3]),
+                            referrerClassId, data[position + 4], retract)]++;
+                    break;
+                case ClassReferences.METHOD:
+                    outcomes[addMethodReference(data[position + 1],
+                            SymbolTable.pairKey(data[position + 2], data[position + 3]),
+                            referrerClassId, data[position + 4], retract)]++;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown reference kind: " + kind);
+            }
+            position += ClassReferences.recordLength(kind);
+        }
+
+        if (!retract) {
+            Metrics.add(Metrics.Counter.REFERENCES, outcomes[RESOLVED] + outcomes[EXTERNAL] + outcomes[NOT_FOUND]);
+            Metrics.add(Metrics.Counter.RESOLVED_REFERENCES, outcomes[RESOLVED]);
+            Metrics.add(Metrics.Counter.EXTERNAL_REFERENCES, outcomes[EXTERNAL]);
+            Metrics.add(Metrics.Counter.UNRESOLVED_REFERENCES, outcomes[NOT_FOUND]);
+        }
+    }
+
+    private int addClassReference(int classId, int referrerClassId, boolean retract) {
+        ClassInfo info = classTable.get(classId);
+        if (info == null) {
+            return EXTERNAL;
+        }
+        if (retract) {
+            info.removeClassReferrer(referrerClassId);
+        } else {
+            info.addClassReferrer(referrerClassId);
+        }
+        return RESOLVED;
+    }
+
+    private int addFieldReference(int ownerId, long fieldKey, int referrerClassId, int referrerMethodId,
+                                  boolean retract) {
+        ClassInfo info = classTable.get(ownerId);
+        if (info == null) {
+            return EXTERNAL;
+        }
+        // Find the declaration in the class or its supertypes
+        long field = hierarchy.resolveField(info, fieldKey);
+        if (field == ClassHierarchy.NOT_FOUND) {
+            return NOT_FOUND;
+        }
+        ClassInfo declaringClass = classTable.get(SymbolTable.pairFirst(field));
+        if (declaringClass == null) {
+            // Inherited from a platform class
+            return EXTERNAL;
+        }
+        int fieldIndex = SymbolTable.pairSecond(field);
+        if (retract) {
+            declaringClass.removeFieldReferrer(fieldIndex, referrerClassId, referrerMethodId);
+        } else {
+            declaringClass.addFieldReferrer(fieldIndex, referrerClassId, referrerMethodId);
+        }
+        return RESOLVED;
+    }
+
+    private int addMethodReference(int ownerId, long methodKey, int referrerClassId, int referrerMethodId,
+                                   boolean retract) {
+        ClassInfo info = classTable.get(ownerId);
+        if (info == null) {
+            return EXTERNAL;
+        }
+        // Find the declaration in the class or its supertypes
+        long method = hierarchy.resolveMethod(info, methodKey);
+        if (method == ClassHierarchy.NOT_FOUND) {
+            return NOT_FOUND;
+        }
+        ClassInfo declaringClass = classTable.get(SymbolTable.pairFirst(method));
+        if (declaringClass == null) {
+            // Inherited from a platform class
+            return EXTERNAL;
+        }
+        int methodIndex = SymbolTable.pairSecond(method);
+        if (retract) {
+            declaringClass.removeMethodReferrer(methodIndex, referrerClassId, referrerMethodId);
+        } else {
+            declaringClass.addMethodReferrer(methodIndex, referrerClassId, referrerMethodId);
+        }
+        return RESOLVED;
+    }
+}
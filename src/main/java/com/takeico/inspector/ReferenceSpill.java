@@ -0,0 +1,234 @@
+package com.takeico.inspector;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the raw references of the collected classes within a memory budget. References are kept
+ * on the heap until the budget is used up; the references of the classes collected after that are
+ * written to a temporary file and read back from a memory mapping of the file whenever they are
+ * resolved, so that archives with more bytecode than fits in the heap can still be analyzed.
+ *
+ * The spill file is deleted when the spill is closed. References that are replaced, e.g. by
+ * {@link IncrementalAnalyzer}, are released: those on the heap return their bytes to the budget,
+ * and spilled ones stay in the file until it is compacted, which copies the references still in use
+ * to a new file once most of the file is released.
+ */
+class ReferenceSpill implements Closeable {
+    // Records never cross a segment, so that each can be read from a single mapping
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+    private final long budget;
+    private final Path directory;
+    private final AtomicLong heapBytes = new AtomicLong();
+    private FileChannel channel;
+    private long size;  // Bytes allocated in the file
+    private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private long spilledBytes;
+    private long releasedBytes;  // Bytes of released references in the file
+    private final Set<ClassReferences> spilled = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * @param budget    The maximum number of bytes of references kept on the heap
+     * @param directory The directory of the spill file, or null for the default temporary directory
+     * @throws IOException If the spill file can't be created
+     */
+    public ReferenceSpill(long budget, Path directory) throws IOException {
+        this.budget = budget;
+        this.directory = directory;
+        this.channel = createFile(directory);
+    }
+
+    private static FileChannel createFile(Path directory) throws IOException {
+        Path file = directory != null
+                ? Files.createTempFile(directory, "class-inspector-", ".spill")
+                : Files.createTempFile("class-inspector-", ".spill");
+        return FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    /**
+     * Accounts the references of a newly collected class against the budget and spills them
+     * if the budget is used up. Can be called from several threads at the same time.
+     */
+    public void offer(ClassReferences references) {
+        long bytes = (long) references.length() * Integer.BYTES;
+        if (heapBytes.addAndGet(bytes) > budget) {
+            heapBytes.addAndGet(-bytes);
+            references.spill(this);
+        }
+    }
+
+    /**
+     * Releases the references of a class that is no longer part of any analysis. Each offered
+     * references object may be released once.
+     */
+    public void release(ClassReferences references) {
+        long bytes = (long) references.length() * Integer.BYTES;
+        synchronized (this) {
+            if (spilled.remove(references)) {
+                releasedBytes += bytes;
+                return;
+            }
+        }
+        heapBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * Writes the reference records of a class to the spill file.
+     *
+     * @return The position of the records in the file
+     */
+    long write(ClassReferences references, int[] data, int length) {
+        int bytes = length * Integer.BYTES;
+        long position;
+        FileChannel file;
+        synchronized (this) {
+            position = allocate(size, bytes);
+            size = position + bytes;
+            spilledBytes += bytes;
+            spilled.add(references);
+            file = channel;
+        }
+        write(file, position, data, length);
+        return position;
+    }
+
+    /**
+     * Returns the position of records of the given size allocated at the end of a file of the given size.
+     */
+    private static long allocate(long size, int bytes) {
+        if ((size & (SEGMENT_SIZE - 1)) + bytes > SEGMENT_SIZE) {
+            // Start a new segment
+            return (size + SEGMENT_SIZE) & -SEGMENT_SIZE;
+        }
+        return size;
+    }
+
+    private static void write(FileChannel file, long position, int[] data, int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(length * Integer.BYTES).order(ByteOrder.nativeOrder());
+        buffer.asIntBuffer().put(data, 0, length);
+        try {
+            long filePosition = position;
+            while (buffer.hasRemaining()) {
+                filePosition += file.write(buffer, filePosition);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write the reference spill file", e);
+        }
+    }
+
+    /**
+     * Reads reference records back from the spill file into a new array.
+     */
+    int[] read(long position, int length) {
+        int[] data = new int[length];
+        IntBuffer records = segment(position, length * Integer.BYTES)
+                .position((int) (position & (SEGMENT_SIZE - 1)))
+                .slice()
+                .order(ByteOrder.nativeOrder())
+                .asIntBuffer();
+        records.get(data);
+        return data;
+    }
+
+    /**
+     * Returns a mapping of the segment containing the given records, mapping it again if the records
+     * were written after the current mapping was made.
+     */
+    private synchronized ByteBuffer segment(long position, int bytes) {
+        int index = (int) (position >>> SEGMENT_SHIFT);
+        long end = (position & (SEGMENT_SIZE - 1)) + bytes;
+        if (index >= segments.length) {
+            segments = Arrays.copyOf(segments, index + 1);
+        }
+        if (segments[index] == null || segments[index].capacity() < end) {
+            long start = (long) index << SEGMENT_SHIFT;
+            try {
+                segments[index] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(SEGMENT_SIZE, channel.size() - start));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot map the reference spill file", e);
+            }
+        }
+        return segments[index].duplicate();
+    }
+
+    /**
+     * Copies the spilled references still in use to a new spill file and deletes the old one, if
+     * released references take up more than half of the old file, so that the file of a long-running
+     * watch stays proportional to the references in use. No references may be read or written at the
+     * same time.
+     *
+     * @throws UncheckedIOException If the new spill file can't be written
+     */
+    public synchronized void compact() {
+        if (releasedBytes * 2 <= size) {
+            return;
+        }
+        FileChannel file;
+        try {
+            file = createFile(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create a new reference spill file", e);
+        }
+        long newSize = 0;
+        for (ClassReferences references : spilled) {
+            int[] data = references.data();
+            long position = allocate(newSize, references.length() * Integer.BYTES);
+            write(file, position, data, references.length());
+            references.moveSpill(position);
+            newSize = position + references.length() * Integer.BYTES;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Warning: Cannot delete the old spill file: " + e.getMessage());
+        }
+        channel = file;
+        segments = new MappedByteBuffer[0];
+        size = newSize;
+        releasedBytes = 0;
+    }
+
+    /**
+     * Discards all spilled references and starts a new budget, once the previous analysis isn't needed
+     * any more. References spilled before must not be read afterwards. The file is overwritten from the
+     * start rather than truncated, because it can't be truncated while a mapping of it may still exist.
+     */
+    public synchronized void reset() {
+        heapBytes.set(0);
+        segments = new MappedByteBuffer[0];
+        size = 0;
+        releasedBytes = 0;
+        spilled.clear();
+    }
+
+    /**
+     * Returns the total number of bytes of references written to the spill file.
+     */
+    public synchronized long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        segments = new MappedByteBuffer[0];
+        channel.close();
+    }
+}
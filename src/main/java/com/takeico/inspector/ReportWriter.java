@@ -0,0 +1,37 @@
+package com.takeico.inspector;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A sink for the inspection report. The report is streamed: each class is written as soon as
+ * its references are known, and implementations write straight to their output without
+ * building the whole report in memory.
+ */
+interface ReportWriter extends Closeable {
+
+    /**
+     * Starts the report for a JAR file.
+     */
+    void startJar(String jarPath) throws IOException;
+
+    /**
+     * Writes one class with its methods, fields and their reference state.
+     *
+     * @param classInfo  The class as collected from its class file
+     * @param classTable The class table holding the reference state of the analysis
+     * @param query      Selects the members to write; {@link Query#all()} for all of them
+     */
+    void writeClass(ClassInfo classInfo, ClassTable classTable, Query query) throws IOException;
+
+    /**
+     * Writes the overall statistics of a JAR file.
+     */
+    void writeStatistics(int totalClasses, int totalMethods, int totalReferencedMethods,
+                         int totalFields, int totalReferencedFields) throws IOException;
+
+    /**
+     * Flushes buffered output, e.g. before error messages are printed.
+     */
+    void flush() throws IOException;
+}
@@ -0,0 +1,89 @@
+package com.takeico.inspector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs the per-class passes of the inspector on a pool of worker threads.
+ * With a single thread every task runs on the calling thread, exactly as the sequential mode.
+ */
+class ScanExecutor implements AutoCloseable {
+    private final int threads;
+    private final ExecutorService pool;
+
+    public ScanExecutor(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1: " + threads);
+        }
+        this.threads = threads;
+        this.pool = threads > 1 ? Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "class-inspector-worker");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Runs the task for every index in [0, count) and waits until all of them have finished.
+     * Tasks are expected to handle their own errors; results written by a task are visible
+     * to the caller once this method returns.
+     *
+     * @param count Number of tasks
+     * @param task  The task to run for each index
+     */
+    public void forEach(int count, IntConsumer task) {
+        if (pool == null) {
+            for (int i = 0; i < count; i++) {
+                task.accept(i);
+            }
+            return;
+        }
+
+        // Hand out contiguous chunks so that each worker touches few shared cache lines
+        int chunks = Math.min(count, threads * 4);
+        List<Future<?>> futures = new ArrayList<>(chunks);
+        for (int c = 0; c < chunks; c++) {
+            int from = (int) ((long) count * c / chunks);
+            int to = (int) ((long) count * (c + 1) / chunks);
+            futures.add(pool.submit(() -> {
+                for (int i = from; i < to; i++) {
+                    task.accept(i);
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for workers", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.takeico.inspector;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns class names, member names and descriptors into dense int ids.
+ * Class names are interned in their internal form ("java/lang/Object"); the dotted form is only
+ * produced when a report is printed. Pairs of ids, such as a member name and its descriptor,
+ * can be interned as well to get a single id for a member.
+ *
+ * Lookups are lock-free and allocation-free, so the reference detection hot path can map the
+ * strings handed out by ASM to ids without creating garbage. Interning new symbols is thread-safe.
+ */
+class SymbolTable {
+    /** Returned by the lookup methods for symbols that have never been interned. */
+    static final int NONE = -1;
+
+    private static final int[] NO_CLASSES = new int[0];
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] symbols = new String[1024];
+    private volatile int size = 0;
+
+    private final ConcurrentHashMap<Long, Integer> pairIds = new ConcurrentHashMap<>();
+    private volatile long[] pairs = new long[1024];
+    private int pairCount = 0;
+
+    private final ConcurrentHashMap<String, int[]> descriptorClasses = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the id of the given symbol, interning it if necessary.
+     */
+    public int intern(String symbol) {
+        Integer id = ids.get(symbol);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(symbol);
+            if (id != null) {
+                return id;
+            }
+            if (size == symbols.length) {
+                symbols = Arrays.copyOf(symbols, size * 2);
+            }
+            // The array slot is written before the id is published through the map
+            symbols[size] = symbol;
+            ids.put(symbol, size);
+            return size++;
+        }
+    }
+
+    /**
+     * Returns the id of the given symbol, or {@link #NONE} if it has never been interned.
+     */
+    public int lookup(String symbol) {
+        Integer id = ids.get(symbol);
+        return id != null ? id : NONE;
+    }
+
+    /**
+     * Returns the symbol with the given id.
+     */
+    public String get(int id) {
+        return symbols[id];
+    }
+
+    /**
+     * Returns the number of interned symbols. Every id is less than this value.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the ids of the classes named in a field or method descriptor, including the element
+     * classes of array types, interning them if necessary. The ids are computed once per descriptor
+     * and shared, so the returned array must not be modified.
+     */
+    public int[] classesIn(String descriptor) {
+        int[] classIds = descriptorClasses.get(descriptor);
+        if (classIds != null) {
+            return classIds;
+        }
+        classIds = NO_CLASSES;
+        int count = 0;
+        int position = 0;
+        while (position < descriptor.length()) {
+            if (descriptor.charAt(position) == 'L') {
+                int end = descriptor.indexOf(';', position);
+                if (count == classIds.length) {
+                    classIds = Arrays.copyOf(classIds, Math.max(count * 2, 2));
+                }
+                classIds[count++] = intern(descriptor.substring(position + 1, end));
+                position = end + 1;
+            } else {
+                position++;
+            }
+        }
+        classIds = count == classIds.length ? classIds : Arrays.copyOf(classIds, count);
+        descriptorClasses.putIfAbsent(descriptor, classIds);
+        return classIds;
+    }
+
+    /**
+     * Returns the id of the pair (first, second), interning it if necessary.
+     */
+    public int internPair(int first, int second) {
+        Long key = pairKey(first, second);
+        Integer id = pairIds.get(key);
+        if (id != null) {
+            return id;
+        }
+        synchronized (pairIds) {
+            id = pairIds.get(key);
+            if (id != null) {
+                return id;
+            }
+            if (pairCount == pairs.length) {
+                pairs = Arrays.copyOf(pairs, pairCount * 2);
+            }
+            pairs[pairCount] = key;
+            pairIds.put(key, pairCount);
+            return pairCount++;
+        }
+    }
+
+    /**
+     * Returns the first id of the pair with the given pair id.
+     */
+    public int getFirst(int pairId) {
+        return (int) (pairs[pairId] >>> 32);
+    }
+
+    /**
+     * Returns the second id of the pair with the given pair id.
+     */
+    public int getSecond(int pairId) {
+        return (int) pairs[pairId];
+    }
+
+    /**
+     * Packs two symbol ids into a single key, e.g. a member name and its descriptor.
+     */
+    public static long pairKey(int first, int second) {
+        return ((long) first << 32) | (second & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the first id of a key built by {@link #pairKey(int, int)}.
+     */
+    public static int pairFirst(long key) {
+        return (int) (key >>> 32);
+    }
+
+    /**
+     * Returns the second id of a key built by {@link #pairKey(int, int)}.
+     */
+    public static int pairSecond(long key) {
+        return (int) key;
+    }
+}
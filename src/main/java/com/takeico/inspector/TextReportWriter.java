@@ -0,0 +1,308 @@
+package com.takeico.inspector;
+
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes the human-readable report. Names and types are written piece by piece from the
+ * symbol table straight into the buffered writer, without formatting intermediate lines.
+ */
+class TextReportWriter implements ReportWriter {
+    private static final String SEPARATOR = "--------------------------------------------------------------------------------";
+    private static final String STATISTICS_SEPARATOR = "================================================================================";
+
+    private final Writer out;
+    private final boolean reachability;
+    private final String lineSeparator = System.lineSeparator();
+
+    /**
+     * @param out The writer to write the report to; it should be buffered
+     */
+    public TextReportWriter(Writer out) {
+        this(out, false);
+    }
+
+    /**
+     * @param out          The writer to write the report to; it should be buffered
+     * @param reachability Whether to mark members as reachable instead of referenced; the referrers
+     *                     are still listed
+     */
+    public TextReportWriter(Writer out, boolean reachability) {
+        this.out = out;
+        this.reachability = reachability;
+    }
+
+    @Override
+    public void startJar(String jarPath) throws IOException {
+        out.write("Inspecting classes in ");
+        out.write(jarPath);
+        out.write(":");
+        out.write(lineSeparator);
+    }
+
+    @Override
+    public void writeClass(ClassInfo classInfo, ClassTable classTable, Query query) throws IOException {
+        SymbolTable symbols = classTable.getSymbols();
+        // Reference state is kept on the class registered under this name
+        ClassInfo state = classTable.get(classInfo.nameId);
+
+        out.write('\n');
+        out.write((classInfo.access & Opcodes.ACC_INTERFACE) != 0 ? "Interface: " : "Class: ");
+        out.write(classInfo.className);
+        if (reachability && !state.isReachable()) {
+            out.write(" (unreachable)");
+        }
+        out.write(lineSeparator);
+        out.write(SEPARATOR);
+        out.write(lineSeparator);
+
+        if (classInfo.superNameId != SymbolTable.NONE) {
+            out.write("  Superclass: ");
+            writeClassName(symbols.get(classInfo.superNameId));
+            out.write(lineSeparator);
+        }
+
+        // The summaries count all members, also those that the query leaves out
+        int referencedMethodCount = 0;
+        int unreferencedMethodCount = 0;
+        boolean methodsWritten = false;
+        for (int i = 0; i < classInfo.methods.size(); i++) {
+            long methodKey = classInfo.methods.keyAt(i);
+            int methodIndex = state == classInfo ? i : state.methods.indexOf(methodKey);
+            // Skip methods that are not defined in the class holding the reference state
+            if (methodIndex < 0) {
+                continue;
+            }
+
+            boolean isReferenced = state.isMethodReferenced(methodIndex);
+            boolean isLive = reachability ? state.isMethodReachable(methodIndex) : isReferenced;
+            if (isLive) {
+                referencedMethodCount++;
+            } else {
+                unreferencedMethodCount++;
+            }
+            if (!query.includesMember(symbols, methodKey, isLive)) {
+                continue;
+            }
+            if (!methodsWritten) {
+                out.write("  Methods:");
+                out.write(lineSeparator);
+                methodsWritten = true;
+            }
+
+            out.write(isLive ? "    ✓ " : "    ✗ ");
+            writeMethod(out, symbols, methodKey);
+            out.write(lineSeparator);
+
+            writeReferrers(isReferenced ? state.getMethodReferrers(methodIndex) : null, classTable);
+        }
+        if (methodsWritten) {
+            writeSummary(referencedMethodCount, unreferencedMethodCount, "methods");
+        }
+
+        int referencedFieldCount = 0;
+        int unreferencedFieldCount = 0;
+        boolean fieldsWritten = false;
+        for (int i = 0; i < classInfo.fields.size(); i++) {
+            long fieldKey = classInfo.fields.keyAt(i);
+            int fieldIndex = state == classInfo ? i : state.fields.indexOf(fieldKey);
+
+            boolean isReferenced = fieldIndex >= 0 && state.isFieldReferenced(fieldIndex);
+            boolean isLive = reachability ? fieldIndex >= 0 && state.isFieldReachable(fieldIndex) : isReferenced;
+            if (isLive) {
+                referencedFieldCount++;
+            } else {
+                unreferencedFieldCount++;
+            }
+            if (!query.includesMember(symbols, fieldKey, isLive)) {
+                continue;
+            }
+            if (!fieldsWritten) {
+                out.write("  Fields:");
+                out.write(lineSeparator);
+                fieldsWritten = true;
+            }
+
+            out.write(isLive ? "    ✓ " : "    ✗ ");
+            writeField(out, symbols, fieldKey);
+            out.write(lineSeparator);
+
+            writeReferrers(isReferenced ? state.getFieldReferrers(fieldIndex) : null, classTable);
+        }
+        if (fieldsWritten) {
+            writeSummary(referencedFieldCount, unreferencedFieldCount, "fields");
+        }
+    }
+
+    @Override
+    public void writeStatistics(int totalClasses, int totalMethods, int totalReferencedMethods,
+                                int totalFields, int totalReferencedFields) throws IOException {
+        out.write('\n');
+        out.write("Overall Statistics:");
+        out.write(lineSeparator);
+        out.write(STATISTICS_SEPARATOR);
+        out.write(lineSeparator);
+        out.write("Total classes: " + totalClasses);
+        out.write(lineSeparator);
+        String live = reachability ? " (Reachable: " : " (Referenced: ";
+        String dead = reachability ? ", Unreachable: " : ", Not referenced: ";
+        out.write("Total methods: " + totalMethods
+                + live + totalReferencedMethods
+                + dead + (totalMethods - totalReferencedMethods) + ")");
+        out.write(lineSeparator);
+        out.write("Total fields: " + totalFields
+                + live + totalReferencedFields
+                + dead + (totalFields - totalReferencedFields) + ")");
+        out.write(lineSeparator);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeReferrers(long[] referrers, ClassTable classTable) throws IOException {
+        if (referrers == null) {
+            out.write("      Not referenced by any class");
+            out.write(lineSeparator);
+            return;
+        }
+
+        // Look up the classes that reference this member in the reverse index
+        out.write("      Referenced by: ");
+        List<String> names = classTable.getReferrerClassNames(referrers);
+        for (int i = 0; i < names.size(); i++) {
+            if (i > 0) {
+                out.write(", ");
+            }
+            out.write(names.get(i));
+        }
+        out.write(lineSeparator);
+    }
+
+    private void writeSummary(int referencedCount, int unreferencedCount, String kind) throws IOException {
+        out.write("  Summary: ");
+        out.write(Integer.toString(referencedCount));
+        out.write(' ');
+        out.write(kind);
+        out.write(reachability ? " reachable, " : " referenced, ");
+        out.write(Integer.toString(unreferencedCount));
+        out.write(' ');
+        out.write(kind);
+        out.write(reachability ? " unreachable" : " not referenced");
+        out.write(lineSeparator);
+    }
+
+    /**
+     * Writes an internal class name in its dotted form.
+     */
+    private void writeClassName(String internalName) throws IOException {
+        int start = 0;
+        int slash;
+        while ((slash = internalName.indexOf('/', start)) >= 0) {
+            out.write(internalName, start, slash - start);
+            out.write('.');
+            start = slash + 1;
+        }
+        out.write(internalName, start, internalName.length() - start);
+    }
+
+    /**
+     * Writes a method as its name with the simple names of its parameter and return types,
+     * e.g. "run(int, String): void".
+     *
+     * @param methodKey The packed (name id, descriptor id) key of the method
+     */
+    static void writeMethod(Writer out, SymbolTable symbols, long methodKey) throws IOException {
+        out.write(symbols.get(SymbolTable.pairFirst(methodKey)));
+
+        // Format method parameters and return type
+        String descriptor = symbols.get(SymbolTable.pairSecond(methodKey));
+        out.write('(');
+        int position = 1;
+        while (descriptor.charAt(position) != ')') {
+            if (position > 1) {
+                out.write(", ");
+            }
+            position = writeSimpleTypeName(out, descriptor, position);
+        }
+        out.write("): ");
+        writeSimpleTypeName(out, descriptor, position + 1);
+    }
+
+    /**
+     * Writes a field as its name with the simple name of its type, e.g. "count: int".
+     *
+     * @param fieldKey The packed (name id, descriptor id) key of the field
+     */
+    static void writeField(Writer out, SymbolTable symbols, long fieldKey) throws IOException {
+        out.write(symbols.get(SymbolTable.pairFirst(fieldKey)));
+        out.write(": ");
+        writeSimpleTypeName(out, symbols.get(SymbolTable.pairSecond(fieldKey)), 0);
+    }
+
+    /**
+     * Writes the simple name of the type starting at the given position of a descriptor.
+     * Classes are written without their package, arrays with a single "[]" suffix.
+     *
+     * @param descriptor A field or method descriptor
+     * @param start      The position of the type in the descriptor
+     * @return The position following the type
+     */
+    private static int writeSimpleTypeName(Writer out, String descriptor, int start) throws IOException {
+        int position = start;
+        while (descriptor.charAt(position) == '[') {
+            position++;
+        }
+
+        int next;
+        if (descriptor.charAt(position) == 'L') {
+            int end = descriptor.indexOf(';', position);
+            int lastSlash = descriptor.lastIndexOf('/', end);
+            int nameStart = lastSlash > position ? lastSlash + 1 : position + 1;
+            out.write(descriptor, nameStart, end - nameStart);
+            next = end + 1;
+        } else {
+            out.write(getPrimitiveTypeName(descriptor.charAt(position)));
+            next = position + 1;
+        }
+
+        if (position > start) {
+            out.write("[]");
+        }
+        return next;
+    }
+
+    private static String getPrimitiveTypeName(char descriptor) {
+        switch (descriptor) {
+            case 'V':
+                return "void";
+            case 'Z':
+                return "boolean";
+            case 'C':
+                return "char";
+            case 'B':
+                return "byte";
+            case 'S':
+                return "short";
+            case 'I':
+                return "int";
+            case 'F':
+                return "float";
+            case 'J':
+                return "long";
+            case 'D':
+                return "double";
+            default:
+                throw new IllegalArgumentException("Invalid type descriptor: " + descriptor);
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.takeico.inspector;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the server through a local HTTP client: the token and Host checks, the shutdown, the
+ * answers to queries, and the cache of analyses.
+ */
+class InspectorServerTest {
+    private static final int MAX_ANALYSES = 2;
+
+    @TempDir
+    Path directory;
+
+    private ScanExecutor executor;
+    private InspectorServer server;
+    private HttpClient client;
+    private String token;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        executor = new ScanExecutor(2);
+        server = new InspectorServer(0, executor, null, MAX_ANALYSES, directory.resolve("tokens/server.token"));
+        server.start();
+        token = new String(Files.readAllBytes(server.getTokenFile()), StandardCharsets.US_ASCII).trim();
+        client = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+        executor.close();
+    }
+
+    @Test
+    void rejectsRequestsWithoutTheToken() throws Exception {
+        Path jar = writeJar("a.jar", "p/Alpha");
+
+        HttpResponse<String> response = send(request("/unused?jar=" + encode(jar)).GET());
+        assertEquals(401, response.statusCode());
+        assertEquals("Bearer", response.headers().firstValue("WWW-Authenticate").orElse(null));
+
+        response = send(request("/unused?jar=" + encode(jar)).header("Authorization", "Bearer " + token + "x").GET());
+        assertEquals(401, response.statusCode());
+        response = send(request("/unused?jar=" + encode(jar)).header("Authorization", token).GET());
+        assertEquals(401, response.statusCode());
+    }
+
+    @Test
+    void rejectsForeignHosts() throws IOException {
+        // The HTTP client doesn't let a request set its Host, which is what a DNS rebinding page does
+        Path jar = writeJar("a.jar", "p/Alpha");
+        try (Socket socket = new Socket()) {
+            socket.connect(server.getAddress());
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII);
+            out.write("GET /unused?jar=" + encode(jar) + " HTTP/1.1\r\n"
+                    + "Host: evil.example\r\n"
+                    + "Authorization: Bearer " + token + "\r\n"
+                    + "Connection: close\r\n\r\n");
+            out.flush();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.US_ASCII));
+            assertEquals("HTTP/1.1 403 Forbidden", in.readLine());
+            while (in.readLine() != null) {
+                // Read the whole response, so that the server doesn't write to a closed connection
+            }
+        }
+    }
+
+    @Test
+    void shutsDownOnPostOnly() throws Exception {
+        HttpResponse<String> response = send(authorized("/shutdown").GET());
+        assertEquals(405, response.statusCode());
+        assertEquals("POST", response.headers().firstValue("Allow").orElse(null));
+
+        response = send(authorized("/shutdown").POST(HttpRequest.BodyPublishers.noBody()));
+        assertEquals(200, response.statusCode());
+        server.awaitShutdown();
+
+        Path tokenFile = server.getTokenFile();
+        server.close();
+        assertFalse(Files.exists(tokenFile));
+    }
+
+    @Test
+    void answersReferrersAndUnusedMembers() throws Exception {
+        Path jar = writeJar("a.jar", "p/Alpha");
+
+        HttpResponse<String> response = send(authorized("/referrers?jar=" + encode(jar) + "&class=p.Alpha").GET());
+        assertEquals(200, response.statusCode());
+        assertEquals("p.Alpha#<init>()V\tp.Caller#call()V\n"
+                + "p.Alpha#run()V\tp.Caller#call()V\n"
+                + "p.Alpha#count:I\tp.Alpha#run()V\n", response.body());
+
+        response = send(authorized("/referrers?jar=" + encode(jar) + "&class=p.Alpha&member=run").GET());
+        assertEquals("p.Alpha#run()V\tp.Caller#call()V\n", response.body());
+
+        response = send(authorized("/referrers?jar=" + encode(jar) + "&class=p.Missing").GET());
+        assertEquals(404, response.statusCode());
+
+        response = send(authorized("/unused?jar=" + encode(jar)).GET());
+        assertEquals(200, response.statusCode());
+        assertEquals("p.Alpha#unused()V\n"
+                + "p.Caller#<init>()V\n"
+                + "p.Caller#call()V\n", response.body());
+
+        response = send(authorized("/unused?jar=" + encode(jar) + "&package=p&class=p.Alpha").GET());
+        assertEquals("p.Alpha#unused()V\n", response.body());
+    }
+
+    @Test
+    void reanalyzesJarFilesWhoseModificationTimeChanged() throws Exception {
+        Path jar = writeJar("a.jar", "p/Alpha");
+        assertTrue(unused(jar).startsWith("p.Alpha#unused()V\n"));
+
+        FileTime modified = Files.getLastModifiedTime(jar);
+        replaceJar(jar, "p/Omega");
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(modified.toMillis() + 10_000));
+        assertEquals("p.Caller#<init>()V\n"
+                + "p.Caller#call()V\n"
+                + "p.Omega#unused()V\n", unused(jar));
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedAnalysis() throws Exception {
+        Path a = writeJar("a.jar", "p/Alpha");
+        Path b = writeJar("b.jar", "p/Alpha");
+        Path c = writeJar("c.jar", "p/Alpha");
+        unused(a);
+        unused(b);
+
+        // Unchanged size and modification time: the cached analyses still answer
+        replaceJar(a, "p/Omega");
+        replaceJar(b, "p/Omega");
+        assertTrue(unused(b).contains("p.Alpha#unused()V"));
+        assertTrue(unused(a).contains("p.Alpha#unused()V"));
+
+        // a was analyzed first but used last, so the third analysis evicts b
+        unused(c);
+        assertTrue(unused(a).contains("p.Alpha#unused()V"));
+        assertTrue(unused(b).contains("p.Omega#unused()V"));
+    }
+
+    private String unused(Path jar) throws Exception {
+        HttpResponse<String> response = send(authorized("/unused?jar=" + encode(jar)).GET());
+        assertEquals(200, response.statusCode(), response.body());
+        return response.body();
+    }
+
+    private HttpRequest.Builder request(String pathAndQuery) {
+        InetSocketAddress address = server.getAddress();
+        return HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + address.getPort() + pathAndQuery));
+    }
+
+    private HttpRequest.Builder authorized(String pathAndQuery) {
+        return request(pathAndQuery).header("Authorization", "Bearer " + token);
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws Exception {
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+    }
+
+    private static String encode(Path path) {
+        return URLEncoder.encode(path.toString(), StandardCharsets.UTF_8);
+    }
+
+    private Path writeJar(String name, String className) throws IOException {
+        Path jar = directory.resolve(name);
+        Files.write(jar, jarBytes(className));
+        return jar;
+    }
+
+    /**
+     * Rewrites a JAR file in place with another class of a name of the same length, keeping its
+     * file key, size, and modification time.
+     */
+    private static void replaceJar(Path jar, String className) throws IOException {
+        FileTime modified = Files.getLastModifiedTime(jar);
+        byte[] bytes = jarBytes(className);
+        assertEquals(Files.size(jar), bytes.length);
+        try (OutputStream out = Files.newOutputStream(jar, StandardOpenOption.WRITE)) {
+            out.write(bytes);
+        }
+        Files.setLastModifiedTime(jar, modified);
+    }
+
+    /**
+     * Returns a JAR file with the given class, which has a field read by one of its methods and
+     * an unreferenced method, and a class {@code p.Caller} calling it. The entries are stored
+     * uncompressed, so the size of the JAR file only depends on the length of the class name.
+     */
+    private static byte[] jarBytes(String className) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JarOutputStream jar = new JarOutputStream(bytes)) {
+            store(jar, className, target(className));
+            store(jar, "p/Caller", caller(className));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void store(JarOutputStream jar, String internalName, byte[] bytes) throws IOException {
+        JarEntry entry = new JarEntry(internalName + ".class");
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(bytes.length);
+        entry.setCrc(crc.getValue());
+        entry.setTime(0);
+        jar.putNextEntry(entry);
+        jar.write(bytes);
+        jar.closeEntry();
+    }
+
+    private static byte[] target(String name) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V11, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null);
+        cw.visitField(Opcodes.ACC_PRIVATE, "count", "I", null, null).visitEnd();
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "run", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitFieldInsn(Opcodes.GETFIELD, name, "count", "I");
+        mv.visitInsn(Opcodes.POP);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "unused", "()V", null, null);
+        mv.visitCode();
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static byte[] caller(String target) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V11, Opcodes.ACC_PUBLIC, "p/Caller", null, "java/lang/Object", null);
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "call", "()V", null, null);
+        mv.visitCode();
+        mv.visitTypeInsn(Opcodes.NEW, target);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, target, "<init>", "()V", false);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, target, "run", "()V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+}
@@ -0,0 +1,279 @@
+package com.takeico.inspector;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Tests that the reports don't depend on the number of threads, and that the text report keeps the
+ * format of the report written line by line before the streaming report writer.
+ */
+class ReportTest {
+    private static final String[] FORMATS = {"text", "jsonl", "json", "binary"};
+    private static final int THREADS = 8;
+
+    @TempDir
+    static Path directory;
+
+    private static Path syntheticJar;
+    private static Path fixtureJar;
+
+    @BeforeAll
+    static void generateJars() throws IOException {
+        syntheticJar = directory.resolve("synthetic.jar");
+        SyntheticJar.generate(syntheticJar, 2000);
+        fixtureJar = directory.resolve("fixture.jar");
+        writeFixture(fixtureJar);
+    }
+
+    @Test
+    void reportsAreIndependentOfThreads() throws IOException {
+        for (String format : FORMATS) {
+            assertArrayEquals(report(syntheticJar, Query.all(), format, 1),
+                    report(syntheticJar, Query.all(), format, THREADS), format);
+        }
+    }
+
+    @Test
+    void filteredReportsAreIndependentOfThreads() throws IOException {
+        Query query = Query.all().inPackage("synthetic.api").inPackage("synthetic.p3").unreferencedOnly();
+        for (String format : FORMATS) {
+            assertArrayEquals(report(syntheticJar, query, format, 1),
+                    report(syntheticJar, query, format, THREADS), format);
+        }
+    }
+
+    @Test
+    void textReportMatchesGoldenFile() throws IOException {
+        // Written by the sequential report of commit 260081e, the last one printing line by line
+        String expected;
+        try (InputStream in = ReportTest.class.getResourceAsStream("fixture-report.txt")) {
+            assertNotNull(in, "fixture-report.txt");
+            expected = new String(readAll(in), StandardCharsets.UTF_8).replace("\n", System.lineSeparator());
+        }
+        for (int threads : new int[] {1, THREADS}) {
+            assertEquals(expected, new String(report(fixtureJar, Query.all(), "text", threads), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static byte[] report(Path jar, Query query, String format, int threads) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Inspector.writeReport(jar, query, format, out, threads);
+        return out.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int n; (n = in.read(buffer)) > 0; ) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes a small application covering the parts of the text report: an interface, an abstract
+     * base class, a class calling into both, and members that are referenced by several classes,
+     * only by their own class, or not at all. All references name the class declaring the member,
+     * so that the report doesn't depend on how the hierarchy resolves inherited members.
+     */
+    private static void writeFixture(Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file);
+             JarOutputStream jar = new JarOutputStream(out)) {
+            write(jar, "fixture/api/Greeter", greeter());
+            write(jar, "fixture/base/Base", base());
+            write(jar, "fixture/app/Impl", impl());
+            write(jar, "fixture/app/Main", main());
+            write(jar, "fixture/app/Unused", unused());
+        }
+    }
+
+    private static void write(JarOutputStream jar, String internalName, byte[] bytes) throws IOException {
+        jar.putNextEntry(new JarEntry(internalName + ".class"));
+        jar.write(bytes);
+        jar.closeEntry();
+    }
+
+    private static byte[] greeter() {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT | Opcodes.ACC_INTERFACE,
+                "fixture/api/Greeter", null, "java/lang/Object", null);
+        cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "greet", "(Ljava/lang/String;)Ljava/lang/String;",
+                null, null).visitEnd();
+        cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "farewell", "()V", null, null).visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static byte[] base() {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "fixture/base/Base", null,
+                "java/lang/Object", null);
+        cw.visitField(Opcodes.ACC_PROTECTED, "count", "I", null, null).visitEnd();
+        cw.visitField(Opcodes.ACC_PROTECTED, "label", "Ljava/lang/String;", null, null).visitEnd();
+
+        MethodVisitor mv = constructor(cw, "java/lang/Object");
+        mv.visitInsn(Opcodes.RETURN);
+        end(mv);
+
+        mv = cw.visitMethod(Opcodes.ACC_PROTECTED, "touch", "()I", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitFieldInsn(Opcodes.GETFIELD, "fixture/base/Base", "count", "I");
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitInsn(Opcodes.IADD);
+        mv.visitFieldInsn(Opcodes.PUTFIELD, "fixture/base/Base", "count", "I");
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitFieldInsn(Opcodes.GETFIELD, "fixture/base/Base", "count", "I");
+        mv.visitInsn(Opcodes.IRETURN);
+        end(mv);
+
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "reset", "(J[Ljava/lang/Object;)V", null, null);
+        mv.visitCode();
+        mv.visitInsn(Opcodes.RETURN);
+        end(mv);
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static byte[] impl() {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V11, Opcodes.ACC_PUBLIC, "fixture/app/Impl", null, "fixture/base/Base",
+                new String[] {"fixture/api/Greeter"});
+        cw.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "PREFIX", "Ljava/lang/String;",
+                null, null).visitEnd();
+        cw.visitField(Opcodes.ACC_PRIVATE, "unusedFlag", "Z", null, null).visitEnd();
+        cw.visitField(Opcodes.ACC_PRIVATE, "names", "[[Ljava/lang/String;", null, null).visitEnd();
+
+        MethodVisitor mv = constructor(cw, "fixture/base/Base");
+        mv.visitInsn(Opcodes.RETURN);
+        end(mv);
+
+        mv = cw.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+        mv.visitCode();
+        mv.visitLdcInsn("Hello, ");
+        mv.visitFieldInsn(Opcodes.PUTSTATIC, "fixture/app/Impl", "PREFIX", "Ljava/lang/String;");
+        mv.visitInsn(Opcodes.RETURN);
+        end(mv);
+
+        // PREFIX + name, and the inherited counter through the base class
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "greet", "(Ljava/lang/String;)Ljava/lang/String;", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "fixture/base/Base", "touch", "()I", false);
+        mv.visitInsn(Opcodes.POP);
+        mv.visitFieldInsn(Opcodes.GETSTATIC, "fixture/app/Impl", "PREFIX", "Ljava/lang/String;");
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/String", "concat",
+                "(Ljava/lang/String;)Ljava/lang/String;", false);
+        mv.visitInsn(Opcodes.ARETURN);
+        end(mv);
+
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "farewell", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitInsn(Opcodes.ACONST_NULL);
+        mv.visitFieldInsn(Opcodes.PUTFIELD, "fixture/base/Base", "label", "Ljava/lang/String;");
+        mv.visitInsn(Opcodes.RETURN);
+        end(mv);
+
+        mv = cw.visitMethod(Opcodes.ACC_PRIVATE, "unusedHelper", "(IDLjava/util/List;)[I", null, null);
+        mv.visitCode();
+        mv.visitInsn(Opcodes.ACONST_NULL);
+        mv.visitInsn(Opcodes.ARETURN);
+        end(mv);
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static byte[] main() {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, "fixture/app/Main", null,
+                "java/lang/Object", null);
+
+        MethodVisitor mv = constructor(cw, "java/lang/Object");
+        mv.visitInsn(Opcodes.RETURN);
+        end(mv);
+
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "main", "([Ljava/lang/String;)V", null, null);
+        mv.visitCode();
+        mv.visitTypeInsn(Opcodes.NEW, "fixture/app/Impl");
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "fixture/app/Impl", "<init>", "()V", false);
+        mv.visitVarInsn(Opcodes.ASTORE, 1);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitLdcInsn("world");
+        mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, "fixture/api/Greeter", "greet",
+                "(Ljava/lang/String;)Ljava/lang/String;", true);
+        mv.visitInsn(Opcodes.POP);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "fixture/app/Impl", "greet",
+                "(Ljava/lang/String;)Ljava/lang/String;", false);
+        mv.visitInsn(Opcodes.POP);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "fixture/app/Impl", "farewell", "()V", false);
+        mv.visitFieldInsn(Opcodes.GETSTATIC, "fixture/app/Impl", "PREFIX", "Ljava/lang/String;");
+        mv.visitInsn(Opcodes.POP);
+        mv.visitInsn(Opcodes.RETURN);
+        end(mv);
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static byte[] unused() {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V11, Opcodes.ACC_PUBLIC, "fixture/app/Unused", null, "java/lang/Object", null);
+        cw.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "counter", "J", null, null).visitEnd();
+
+        MethodVisitor mv = constructor(cw, "java/lang/Object");
+        mv.visitInsn(Opcodes.RETURN);
+        end(mv);
+
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "increment", "()J", null, null);
+        mv.visitCode();
+        mv.visitFieldInsn(Opcodes.GETSTATIC, "fixture/app/Unused", "counter", "J");
+        mv.visitInsn(Opcodes.LCONST_1);
+        mv.visitInsn(Opcodes.LADD);
+        mv.visitInsn(Opcodes.DUP2);
+        mv.visitFieldInsn(Opcodes.PUTSTATIC, "fixture/app/Unused", "counter", "J");
+        mv.visitInsn(Opcodes.LRETURN);
+        end(mv);
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static MethodVisitor constructor(ClassWriter cw, String superName) {
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+        return mv;
+    }
+
+    private static void end(MethodVisitor mv) {
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+}
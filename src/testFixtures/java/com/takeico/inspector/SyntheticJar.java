@@ -0,0 +1,198 @@
+package com.takeico.inspector;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Generates JAR files of synthetic classes for the benchmarks and the tests.
+ *
+ * The classes are spread over packages of 100 classes and are shaped like ordinary application code:
+ * each class extends one of a few base classes, implements one of a few interfaces, declares fields
+ * and methods, and its methods read and write fields, create objects, and call methods of its own
+ * class, of its supertypes, and of other classes, so that all three phases have realistic work to do.
+ */
+final class SyntheticJar {
+    private static final int CLASSES_PER_PACKAGE = 100;
+    private static final int BASE_CLASSES = 10;
+    private static final int INTERFACES = 20;
+    private static final int FIELDS = 5;
+    private static final int METHODS = 8;
+
+    private SyntheticJar() {
+    }
+
+    /**
+     * Writes a JAR file with the given number of application classes, plus their base classes and interfaces.
+     *
+     * @param file       The JAR file to write
+     * @param classCount The number of application classes
+     * @throws IOException If the file can't be written
+     */
+    static void generate(Path file, int classCount) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file);
+             JarOutputStream jar = new JarOutputStream(new BufferedOutputStream(out, 1 << 16))) {
+            for (int i = 0; i < INTERFACES; i++) {
+                write(jar, interfaceName(i), generateInterface(i));
+            }
+            for (int i = 0; i < BASE_CLASSES; i++) {
+                write(jar, baseName(i), generateBase(i));
+            }
+            for (int i = 0; i < classCount; i++) {
+                write(jar, className(i), generateClass(i, classCount));
+            }
+        }
+    }
+
+    private static void write(JarOutputStream jar, String internalName, byte[] bytes) throws IOException {
+        jar.putNextEntry(new JarEntry(internalName + ".class"));
+        jar.write(bytes);
+        jar.closeEntry();
+    }
+
+    private static String className(int i) {
+        return "synthetic/p" + i / CLASSES_PER_PACKAGE + "/Class" + i;
+    }
+
+    private static String baseName(int i) {
+        return "synthetic/base/Base" + i;
+    }
+
+    private static String interfaceName(int i) {
+        return "synthetic/api/Service" + i;
+    }
+
+    private static byte[] generateInterface(int i) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT | Opcodes.ACC_INTERFACE,
+                interfaceName(i), null, "java/lang/Object", null);
+        cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "handle", "(I)I", null, null).visitEnd();
+
+        // A default method that calls the abstract one
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "handleTwice", "(I)I", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitVarInsn(Opcodes.ILOAD, 1);
+        mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, interfaceName(i), "handle", "(I)I", true);
+        mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, interfaceName(i), "handle", "(I)I", true);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static byte[] generateBase(int i) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, baseName(i), null, "java/lang/Object", null);
+        cw.visitField(Opcodes.ACC_PROTECTED, "counter", "J", null, null).visitEnd();
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(Opcodes.ACC_PROTECTED, "count", "()J", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitFieldInsn(Opcodes.GETFIELD, baseName(i), "counter", "J");
+        mv.visitInsn(Opcodes.LCONST_1);
+        mv.visitInsn(Opcodes.LADD);
+        mv.visitFieldInsn(Opcodes.PUTFIELD, baseName(i), "counter", "J");
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitFieldInsn(Opcodes.GETFIELD, baseName(i), "counter", "J");
+        mv.visitInsn(Opcodes.LRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static byte[] generateClass(int i, int classCount) {
+        String name = className(i);
+        String base = baseName(i % BASE_CLASSES);
+        String service = interfaceName(i % INTERFACES);
+        String next = className((i + 1) % classCount);
+        String other = className((int) ((i * 7919L + 13) % classCount));
+
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V11, Opcodes.ACC_PUBLIC, name, null, base, new String[] {service});
+        for (int f = 0; f < FIELDS; f++) {
+            cw.visitField(Opcodes.ACC_PRIVATE, "field" + f, f % 2 == 0 ? "I" : "Ljava/lang/String;", null, null)
+                    .visitEnd();
+        }
+        cw.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "INSTANCES", "I", null, null).visitEnd();
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, base, "<init>", "()V", false);
+        mv.visitFieldInsn(Opcodes.GETSTATIC, name, "INSTANCES", "I");
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitInsn(Opcodes.IADD);
+        mv.visitFieldInsn(Opcodes.PUTSTATIC, name, "INSTANCES", "I");
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "handle", "(I)I", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitFieldInsn(Opcodes.GETFIELD, name, "field0", "I");
+        mv.visitVarInsn(Opcodes.ILOAD, 1);
+        mv.visitInsn(Opcodes.IADD);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        for (int m = 0; m < METHODS; m++) {
+            mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "method" + m, "(ILjava/lang/String;)Ljava/lang/String;",
+                    null, null);
+            mv.visitCode();
+            // this.field<m> = argument
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitVarInsn(Opcodes.ALOAD, 2);
+            mv.visitFieldInsn(Opcodes.PUTFIELD, name, "field" + (m % 2 == 0 ? 1 : 3), "Ljava/lang/String;");
+            // Inherited method of the base class, default method of the interface
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, name, "count", "()J", false);
+            mv.visitInsn(Opcodes.POP2);
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitVarInsn(Opcodes.ILOAD, 1);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, name, "handleTwice", "(I)I", false);
+            mv.visitInsn(Opcodes.POP);
+            // Call into another class
+            mv.visitTypeInsn(Opcodes.NEW, m % 2 == 0 ? next : other);
+            mv.visitInsn(Opcodes.DUP);
+            mv.visitMethodInsn(Opcodes.INVOKESPECIAL, m % 2 == 0 ? next : other, "<init>", "()V", false);
+            mv.visitVarInsn(Opcodes.ILOAD, 1);
+            mv.visitVarInsn(Opcodes.ALOAD, 2);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, m % 2 == 0 ? next : other, "method" + (m + 1) % METHODS,
+                    "(ILjava/lang/String;)Ljava/lang/String;", false);
+            // String concatenation through a JDK class
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/String", "valueOf",
+                    "(Ljava/lang/Object;)Ljava/lang/String;", false);
+            mv.visitInsn(Opcodes.ARETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+}